@@ -71,6 +71,7 @@ public @interface ContentType {
    public static final String BINARY = "application/octet-stream";
    public static final String CSS = "text/css";
    public static final String CSV = "text/csv";
+   public static final String EVENT_STREAM = "text/event-stream";
    public static final String GIF = "image/gif";
    public static final String HTML = "text/html";
    public static final String ICO = "image/x-icon";
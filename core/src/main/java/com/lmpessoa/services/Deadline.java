@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import com.lmpessoa.services.hosting.IDeadline;
+
+/**
+ * Indicates the maximum time the engine will wait for a method to respond to a request.
+ *
+ * <p>
+ * By default, requests are given as much time as set for all requests in the application settings
+ * (no limit unless otherwise set). Methods, or entire classes, marked with this annotation are given
+ * the number of seconds provided instead. A value of zero means requests to that method are never
+ * limited.
+ * </p>
+ *
+ * <p>
+ * When the deadline of a request expires, the thread responding to the request is interrupted and
+ * the user agent receives the status 504 (Gateway Timeout) regardless of what the method returns
+ * after that. Methods may also check the time remaining for the request through an
+ * {@link IDeadline} before calling slow services.
+ * </p>
+ *
+ * @see IDeadline
+ */
+@Retention(RUNTIME)
+@Target({ TYPE, METHOD })
+public @interface Deadline {
+
+   /**
+    * Returns the maximum number of seconds a request may take to be responded.
+    *
+    * @return the maximum number of seconds a request may take to be responded.
+    */
+   int value();
+}
@@ -29,6 +29,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -78,6 +79,7 @@ public final class HttpInputStream extends InputStream implements AutoCloseable
 
    private boolean downloadable = false;
    private ZonedDateTime date = null;
+   private File file = null;
 
    /**
     * Creates a new {@code HttpInputStream} with the given context information.
@@ -201,6 +203,7 @@ public final class HttpInputStream extends InputStream implements AutoCloseable
    public HttpInputStream(File file, Charset charset) throws FileNotFoundException {
       this(new FileInputStream(file), contentTypeOf(file), charset, file.getName()); // NOSONAR
       setDate(Instant.ofEpochMilli(file.lastModified()));
+      this.file = file;
    }
 
    /**
@@ -251,6 +254,68 @@ public final class HttpInputStream extends InputStream implements AutoCloseable
       this.date = instant != null ? ZonedDateTime.ofInstant(instant, ZoneId.systemDefault()) : null;
    }
 
+   /**
+    * Returns the number of bytes left to be read from this stream, if known.
+    *
+    * <p>
+    * The length of the contents of this stream is only known if it was created from an array of
+    * bytes or a file (or another stream of known length). The contents of streams of unknown length
+    * are sent to HTTP/1.1 user agents using chunked transfer encoding.
+    * </p>
+    *
+    * @return the number of bytes left to be read from this stream, or {@code -1} if unknown.
+    */
+   public long getContentLength() {
+      try {
+         if (stream instanceof ByteArrayInputStream) {
+            return stream.available();
+         } else if (stream instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) stream).getChannel();
+            return channel.size() - channel.position();
+         } else if (stream instanceof HttpInputStream) {
+            return ((HttpInputStream) stream).getContentLength();
+         }
+      } catch (IOException e) {
+         // Length cannot be determined; treat as unknown
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the file from which the contents of this stream are read, if any.
+    *
+    * @return the file from which the contents of this stream are read, or {@code null} if this
+    *         stream was not created from a file.
+    */
+   public File getFile() {
+      if (file == null && stream instanceof HttpInputStream) {
+         return ((HttpInputStream) stream).getFile();
+      }
+      return file;
+   }
+
+   /**
+    * Returns the file channel from which the contents of this stream are read, if any.
+    *
+    * <p>
+    * Streams created from a file (or from a {@link FileInputStream}) are backed by a file channel,
+    * which allows the application server to send their contents to the user agent directly from
+    * the file system without copying them through the application. Reading from the returned
+    * channel also advances the position of this stream.
+    * </p>
+    *
+    * @return the file channel from which the contents of this stream are read, or {@code null} if
+    *         this stream is not backed by a file.
+    */
+   public FileChannel getChannel() {
+      if (stream instanceof FileInputStream) {
+         return ((FileInputStream) stream).getChannel();
+      } else if (stream instanceof HttpInputStream) {
+         return ((HttpInputStream) stream).getChannel();
+      }
+      return null;
+   }
+
    @Override
    public int available() throws IOException {
       return stream.available();
@@ -276,6 +341,11 @@ public final class HttpInputStream extends InputStream implements AutoCloseable
       return stream.read();
    }
 
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      return stream.read(b, off, len);
+   }
+
    @Override
    public synchronized void reset() throws IOException {
       stream.reset();
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completes stages with the results of tasks that can only be waited on.
+ *
+ * <p>
+ * Tasks are checked by a single shared timer instead of holding a thread blocked for each of them.
+ * Checks start right away and become less frequent the longer a task takes to complete.
+ * </p>
+ */
+final class CompletionPoller {
+
+   private static final long MIN_POLL_INTERVAL = 10;
+   private static final long MAX_POLL_INTERVAL = 250;
+
+   private static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1,
+            task -> {
+               Thread result = new Thread(task, "completion-poller");
+               result.setDaemon(true);
+               return result;
+            });
+
+   private CompletionPoller() {
+      // Nothing to be done here
+   }
+
+   /**
+    * Returns a stage which completes when the given task completes.
+    *
+    * <p>
+    * Cancelling the returned stage only stops checking the task and does not cancel the task.
+    * </p>
+    *
+    * @param job the task whose completion is to be returned.
+    * @return a stage which completes when the given task completes.
+    */
+   static CompletionStage<?> completionOf(Future<?> job) {
+      CompletableFuture<Object> result = new CompletableFuture<>();
+      poll(job, result, MIN_POLL_INTERVAL);
+      return result;
+   }
+
+   private static void poll(Future<?> job, CompletableFuture<Object> result, long interval) {
+      if (result.isDone()) {
+         return;
+      } else if (!job.isDone()) {
+         long next = Math.min(interval * 2, MAX_POLL_INTERVAL);
+         timer.schedule(() -> poll(job, result, next), interval, TimeUnit.MILLISECONDS);
+         return;
+      }
+      try {
+         result.complete(job.get());
+      } catch (CancellationException e) {
+         result.completeExceptionally(e);
+      } catch (ExecutionException e) {
+         result.completeExceptionally(e.getCause());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         result.completeExceptionally(e);
+      }
+   }
+}
@@ -25,6 +25,7 @@ package com.lmpessoa.services.concurrent;
 import static com.lmpessoa.services.services.Reuse.ALWAYS;
 
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 import com.lmpessoa.services.services.Service;
@@ -62,6 +63,59 @@ public interface IExecutionService {
     */
    Future<?> get(String jobId);
 
+   /**
+    * Returns a stage which completes when the submitted task with the given ID completes.
+    *
+    * <p>
+    * The returned stage completes normally with the result of the task or exceptionally if the
+    * task fails or is cancelled. Unlike waiting on the result returned by {@link #get(String)},
+    * actions can be chained to this stage without blocking the calling thread.
+    * </p>
+    *
+    * <p>
+    * By default, unless the result of the task is itself a stage, the task is checked periodically
+    * by a shared timer until it completes. Execution services should override this method to
+    * complete the stage as soon as the task completes.
+    * </p>
+    *
+    * @param jobId the ID of the task whose completion is to be returned.
+    * @return a stage which completes when the task with the given ID completes, or {@code null} if
+    *         no such task exists.
+    */
+   default CompletionStage<?> getCompletion(String jobId) {
+      Future<?> job = get(jobId);
+      if (job == null) {
+         return null;
+      } else if (job instanceof CompletionStage) {
+         return (CompletionStage<?>) job;
+      }
+      return CompletionPoller.completionOf(job);
+   }
+
+   /**
+    * Reports the progress of the task running on the calling thread.
+    *
+    * <p>
+    * Tasks may call this method as often as they wish to let whoever is watching them know how much
+    * of their work is already done. The progress of a task is only kept while it is running and is
+    * included whenever its status is returned. Calls made from threads which are not running a task
+    * of this execution service are ignored.
+    * </p>
+    *
+    * <p>
+    * Execution services which do not track the progress of their tasks may ignore every report,
+    * which is what this method does by default.
+    * </p>
+    *
+    * @param progress the fraction of the work of the task already done, from 0 to 1.
+    * @throws IllegalArgumentException if the given progress is not between 0 and 1.
+    */
+   default void reportProgress(double progress) {
+      if (!(progress >= 0 && progress <= 1)) {
+         throw new IllegalArgumentException();
+      }
+   }
+
    /**
     * Returns the set of task results retained by the execution service.
     *
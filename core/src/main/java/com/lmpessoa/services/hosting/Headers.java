@@ -24,8 +24,9 @@ package com.lmpessoa.services.hosting;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -84,14 +85,21 @@ public final class Headers {
    public static final String LAST_MODIFIED = "Last-Modified";
    public static final String LOCATION = "Location";
    public static final String P3P = "P3P";
+   public static final String PREFER = "Prefer";
    public static final String RANGE = "Range";
+   public static final String REFERER = "Referer";
+   public static final String RETRY_AFTER = "Retry-After";
    public static final String SERVER = "Server";
    public static final String SET_COOKIE = "Set-Cookie";
    public static final String USER_AGENT = "User-Agent";
    public static final String TE = "TE";
+   public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+   public static final String VARY = "Vary";
    public static final String WARNING = "Warning";
    public static final String WWW_AUTHENTICATE = "WWW-Authenticate";
 
+   private static final Map<String, String> KNOWN_HEADERS = listKnownHeaders();
+
    /**
     * Splits an HTTP header value in a component map.
     *
@@ -148,29 +156,64 @@ public final class Headers {
    public static String normalise(String headerName) {
       Objects.requireNonNull(headerName);
       headerName = headerName.trim();
-      if (!headerName.matches("[a-zA-Z][a-zA-Z0-9-]*")) {
+      if (!isValidName(headerName)) {
          throw new BadRequestException(null, null,
                   CoreMessage.ILLEGAL_HEADER_NAME.with(headerName));
       }
+      String known = KNOWN_HEADERS.get(headerName.toLowerCase(Locale.ROOT));
+      if (known != null) {
+         return known;
+      }
+      StringBuilder result = new StringBuilder(headerName.length());
+      boolean startOfWord = true;
+      for (int i = 0; i < headerName.length(); ++i) {
+         char ch = headerName.charAt(i);
+         if (ch == '-') {
+            startOfWord = true;
+         } else if (startOfWord) {
+            if (result.length() > 0) {
+               result.append('-');
+            }
+            result.append(Character.toUpperCase(ch));
+            startOfWord = false;
+         } else {
+            result.append(Character.toLowerCase(ch));
+         }
+      }
+      return result.toString();
+   }
+
+   private static boolean isValidName(String headerName) {
+      if (headerName.isEmpty() || !isLetter(headerName.charAt(0))) {
+         return false;
+      }
+      for (int i = 1; i < headerName.length(); ++i) {
+         char ch = headerName.charAt(i);
+         if (!isLetter(ch) && !(ch >= '0' && ch <= '9') && ch != '-') {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isLetter(char ch) {
+      return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z';
+   }
+
+   private static Map<String, String> listKnownHeaders() {
+      Map<String, String> result = new HashMap<>();
       for (Field f : Headers.class.getDeclaredFields()) {
-         if (Modifier.isPublic(f.getModifiers()) && Modifier.isStatic(f.getModifiers())) {
+         if (Modifier.isPublic(f.getModifiers()) && Modifier.isStatic(f.getModifiers())
+                  && f.getType() == String.class) {
             try {
                String value = (String) f.get(null);
-               if (headerName.equalsIgnoreCase(value)) {
-                  return value;
-               }
+               result.put(value.toLowerCase(Locale.ROOT), value);
             } catch (IllegalArgumentException | IllegalAccessException e) {
                // Since we're inside the class itself, these won't happen
             }
          }
       }
-      String[] parts = headerName.split("-");
-      parts = Arrays.stream(parts)
-               .filter(s -> !s.isEmpty())
-               .map(String::toLowerCase)
-               .map(s -> Character.toUpperCase(s.charAt(0)) + s.substring(1))
-               .toArray(String[]::new);
-      return String.join("-", parts);
+      return Collections.unmodifiableMap(result);
    }
 
    private static int skipString(int pos, String str) {
@@ -24,6 +24,7 @@ package com.lmpessoa.services.hosting;
 
 import static com.lmpessoa.services.services.Reuse.ALWAYS;
 
+import java.util.Collections;
 import java.util.Map;
 
 import com.lmpessoa.services.services.HealthStatus;
@@ -81,4 +82,19 @@ public interface IApplicationInfo {
     * @return the amount of memory used by the application in bytes.
     */
    long getUsedMemory();
+
+   /**
+    * Returns the number of connections closed for taking too long on each phase of a request.
+    *
+    * <p>
+    * Phases are identified by the names {@code header}, {@code body}, {@code idle} and
+    * {@code write}. Applications which do not count these return an empty map, which is what this
+    * method does by default.
+    * </p>
+    *
+    * @return the number of connections closed for taking too long, keyed by the name of the phase.
+    */
+   default Map<String, Long> getConnectionTimeouts() {
+      return Collections.emptyMap();
+   }
 }
@@ -66,6 +66,13 @@ public interface IApplicationOptions {
     * {@code void}) the caller of the application will always receive a no content response
     * ({@code 204}).
     * </p>
+    * <p>
+    * Handlers always receive the actual result of the next handler. When that result is not
+    * available yet (i.e. a resource method returned a {@code CompletionStage} or a {@code Future}),
+    * the call to the next handler does not return; instead, handlers are invoked again, possibly by
+    * another thread, once the result is available. Handlers should thus not rely on anything they
+    * do before calling the next handler being done only once.
+    * </p>
     *
     * @param handlerClass the class to be
     * @throws IllegalArgumentException if the given class does not represent a concrete class, does
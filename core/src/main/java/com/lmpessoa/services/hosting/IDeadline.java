@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.hosting;
+
+import static com.lmpessoa.services.services.Reuse.REQUEST;
+
+import com.lmpessoa.services.Deadline;
+import com.lmpessoa.services.GatewayTimeoutException;
+import com.lmpessoa.services.services.Service;
+
+/**
+ * Provides information about the deadline of the current request.
+ *
+ * <p>
+ * Each request may be limited to a maximum time to be responded, either by the application
+ * settings or through the {@link Deadline} annotation. Methods which call other services may use
+ * this information to avoid starting work which cannot be completed in time or to limit the time
+ * waiting for such services.
+ * </p>
+ */
+@Service(reuse = REQUEST)
+public interface IDeadline {
+
+   /**
+    * Returns whether the current request has a deadline.
+    *
+    * @return {@code true} if the current request has a deadline, {@code false} otherwise.
+    */
+   boolean isLimited();
+
+   /**
+    * Returns the time remaining before the deadline of the current request expires.
+    *
+    * @return the number of milliseconds remaining before the deadline of the current request
+    *         expires, or {@link Long#MAX_VALUE} if the request has no deadline.
+    */
+   long getRemainingTime();
+
+   /**
+    * Returns whether the deadline of the current request has already expired.
+    *
+    * @return {@code true} if the deadline of the current request has expired, {@code false}
+    *         otherwise.
+    */
+   boolean isExpired();
+
+   /**
+    * Ensures the deadline of the current request has not expired yet.
+    *
+    * @throws GatewayTimeoutException if the deadline of the current request has expired.
+    */
+   default void check() {
+      if (isExpired()) {
+         throw new GatewayTimeoutException();
+      }
+   }
+}
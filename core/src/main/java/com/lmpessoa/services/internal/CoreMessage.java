@@ -73,6 +73,10 @@ public final class CoreMessage {
             .get("com.lmpessoa.services.internal.hosting.async.matcherconfig");
    public static final Localized.Message ILLEGAL_HEADER_LINE = MESSAGES
             .get("com.lmpessoa.services.internal.hosting.illegalheader");
+   public static final Localized.Message ILLEGAL_REQUEST_LINE = MESSAGES
+            .get("com.lmpessoa.services.internal.hosting.illegalrequest");
+   public static final Localized.Message ILLEGAL_CHUNK = MESSAGES
+            .get("com.lmpessoa.services.internal.hosting.illegalchunk");
    public static final Localized.Message NEXT_RESPONDER_INVOKED = MESSAGES
             .get("com.lmpessoa.services.internal.hosting.responderinvoked");
    public static final Localized.Message PATH_MISSING = MESSAGES
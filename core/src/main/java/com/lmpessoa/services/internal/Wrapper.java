@@ -29,6 +29,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -38,6 +39,7 @@ import com.lmpessoa.services.concurrent.IExecutionService;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.IApplicationInfo;
 import com.lmpessoa.services.hosting.IApplicationOptions;
+import com.lmpessoa.services.hosting.IDeadline;
 import com.lmpessoa.services.hosting.ValuesMap;
 import com.lmpessoa.services.internal.routing.RouteEntry;
 import com.lmpessoa.services.internal.services.NoSingleMethodException;
@@ -183,6 +185,16 @@ public final class Wrapper {
             return original.get(jobId);
          }
 
+         @Override
+         public CompletionStage<?> getCompletion(String jobId) {
+            return original.getCompletion(jobId);
+         }
+
+         @Override
+         public void reportProgress(double progress) {
+            original.reportProgress(progress);
+         }
+
          @Override
          public Set<String> keySet() {
             return original.keySet();
@@ -195,6 +207,27 @@ public final class Wrapper {
       };
    }
 
+   public static IDeadline wrap(IDeadline original) {
+      Objects.requireNonNull(original);
+      return new IDeadline() {
+
+         @Override
+         public boolean isLimited() {
+            return original.isLimited();
+         }
+
+         @Override
+         public long getRemainingTime() {
+            return original.getRemainingTime();
+         }
+
+         @Override
+         public boolean isExpired() {
+            return original.isExpired();
+         }
+      };
+   }
+
    public static HttpRequest wrap(HttpRequest original) {
       Objects.requireNonNull(original);
       return new HttpRequest() {
@@ -341,6 +374,11 @@ public final class Wrapper {
          public long getUsedMemory() {
             return original.getUsedMemory();
          }
+
+         @Override
+         public Map<String, Long> getConnectionTimeouts() {
+            return original.getConnectionTimeouts();
+         }
       };
    }
 
@@ -22,58 +22,137 @@
  */
 package com.lmpessoa.services.internal.concurrent;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.InvocationTargetException;
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import com.lmpessoa.services.concurrent.IExecutionService;
+import com.lmpessoa.services.internal.concurrent.ResultStore.StoredResult;
 import com.lmpessoa.services.internal.hosting.InternalServerError;
 import com.lmpessoa.services.logging.ILogger;
 
 public final class ExecutionService implements IExecutionService {
 
+   private static final byte[] RESULT_PREFIX = "{\"status\":\"DONE\",\"result\":"
+            .getBytes(StandardCharsets.UTF_8);
+   private static final byte[] RESULT_SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
    private final Map<String, AtomicLong> prefixes = new ConcurrentHashMap<>();
    private final Map<String, Task<?>> tasks = new ConcurrentHashMap<>();
+   private final ThreadLocal<Task<?>> currentTask = new ThreadLocal<>();
+   private final Queue<Task<?>> completedTasks = new ConcurrentLinkedQueue<>();
    private final AtomicBoolean shutdown = new AtomicBoolean(false);
-   private final Queue<Task<?>> queue = new LinkedBlockingQueue<>();
-   private final List<Worker> workers = new ArrayList<>();
+   private final LinkedTransferQueue<Task<?>> queue = new LinkedTransferQueue<>();
+   private final AtomicInteger workerCount = new AtomicInteger(0);
+   private final AtomicInteger activeCount = new AtomicInteger(0);
+   private final Object termination = new Object();
+   private final Task<?> stop = new Task<>(() -> null);
+   private final boolean virtualThreads;
    private final int maxWorkerCount;
    private final ILogger log;
 
-   private long resultRetentionTimeout = TimeUnit.HOURS.toNanos(3);
-   private long keepAliveTime = TimeUnit.MINUTES.toNanos(1);
+   private volatile long resultRetentionTimeout = TimeUnit.HOURS.toNanos(3);
+   private volatile long keepAliveTime = TimeUnit.MINUTES.toNanos(1);
+   private volatile int maxQueueSize = 0;
+   private volatile ResultStore resultStore = ResultStore.MEMORY;
 
    public ExecutionService(int maxConcurrentJobs, ILogger log) {
+      this(maxConcurrentJobs, log, false);
+   }
+
+   public ExecutionService(int maxConcurrentJobs, ILogger log, boolean useVirtualThreads) {
       this.maxWorkerCount = maxConcurrentJobs > 0 ? maxConcurrentJobs : 0;
+      this.virtualThreads = useVirtualThreads && VirtualThreads.isSupported();
       this.log = log;
    }
 
+   public static boolean isVirtualThreadSupported() {
+      return VirtualThreads.isSupported();
+   }
+
+   public static boolean isVirtualThread(Thread thread) {
+      return VirtualThreads.isVirtual(thread);
+   }
+
    @Override
    public Future<?> get(String jobId) {
       purgeExpired();
       return tasks.get(jobId);
    }
 
+   @Override
+   public CompletionStage<?> getCompletion(String jobId) {
+      Task<?> task = (Task<?>) get(jobId);
+      return task != null ? task.getCompletion() : null;
+   }
+
+   public CompletionStage<Void> whenDone(String jobId) {
+      Task<?> task = (Task<?>) get(jobId);
+      // Unlike the completion of the job, this never reads a stored result back into memory
+      return task != null ? task.completion.handle((value, error) -> null) : null;
+   }
+
+   @Override
+   public void reportProgress(double progress) {
+      if (!(progress >= 0 && progress <= 1)) {
+         throw new IllegalArgumentException();
+      }
+      Task<?> task = currentTask.get();
+      if (task != null) {
+         task.progress(progress);
+      }
+   }
+
+   public boolean watch(String jobId, JobListener listener) {
+      Objects.requireNonNull(listener);
+      Task<?> task = (Task<?>) get(jobId);
+      if (task == null) {
+         return false;
+      }
+      task.watch(listener);
+      return true;
+   }
+
+   public InputStream openResult(String jobId) throws IOException {
+      Task<?> task = (Task<?>) get(jobId);
+      StoredResult stored = task != null && task.isDone() ? task.stored : null;
+      if (stored == null) {
+         return null;
+      }
+      // Same as serialising the task when its result is kept in memory
+      return new SequenceInputStream(new ByteArrayInputStream(RESULT_PREFIX),
+               new SequenceInputStream(stored.open(), new ByteArrayInputStream(RESULT_SUFFIX)));
+   }
+
    @Override
    public Set<String> keySet() {
       purgeExpired();
@@ -85,27 +164,57 @@ public final class ExecutionService implements IExecutionService {
       return shutdown.get();
    }
 
+   public boolean usesVirtualThreads() {
+      return virtualThreads;
+   }
+
    public boolean isTerminated() {
-      return shutdown.get() && workers.isEmpty();
+      return shutdown.get() && workerCount.get() == 0;
    }
 
    public void shutdown() {
       shutdown(false);
    }
 
+   public void drain() {
+      if (!shutdown.getAndSet(true)) {
+         stopIdleWorkers();
+      }
+   }
+
+   public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long end = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (termination) {
+         while (workerCount.get() > 0) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+               return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(termination, remaining);
+         }
+      }
+      return true;
+   }
+
+   public int getActiveCount() {
+      return activeCount.get();
+   }
+
+   public Set<String> getUnfinishedJobs() {
+      return tasks.entrySet()
+               .stream()
+               .filter(e -> !e.getValue().isDone())
+               .map(Entry::getKey)
+               .collect(Collectors.toSet());
+   }
+
    public void shutdown(boolean mayInterruptRunning) {
-      if (shutdown.get()) {
+      if (shutdown.getAndSet(true)) {
          return;
       }
-      shutdown.set(true);
-      tasks.values().stream().filter(j -> j.status == Status.QUEUED).forEach(
-               j -> j.status = Status.CANCELLED);
-      if (mayInterruptRunning) {
-         tasks.values().stream().filter(j -> j.status == Status.RUNNING).forEach(j -> {
-            j.status = Status.INTERRUPTED;
-            j.worker.interrupt();
-         });
-      }
+      // Queued tasks are always cancelled; running ones only if they may be interrupted
+      tasks.values().forEach(j -> j.cancel(mayInterruptRunning));
+      stopIdleWorkers();
    }
 
    public String submit(Runnable task) {
@@ -120,9 +229,10 @@ public final class ExecutionService implements IExecutionService {
       if (shutdown.get()) {
          throw new RejectedExecutionException();
       }
+      purgeExpired();
       Task<?> rtask = new Task<>(task);
       String id = store(rtask);
-      executeOrQueue(rtask);
+      executeOrQueue(id, rtask);
       return id;
    }
 
@@ -130,9 +240,10 @@ public final class ExecutionService implements IExecutionService {
       if (shutdown.get()) {
          throw new RejectedExecutionException();
       }
+      purgeExpired();
       Task<?> rtask = new Task<>(task);
       String id = store(rtask, prefix);
-      executeOrQueue(rtask);
+      executeOrQueue(id, rtask);
       return id;
    }
 
@@ -147,6 +258,25 @@ public final class ExecutionService implements IExecutionService {
       keepAliveTime = unit.toNanos(timeout);
    }
 
+   public int getMaxQueueSize() {
+      return maxQueueSize;
+   }
+
+   public void setMaxQueueSize(int size) {
+      if (size < 0) {
+         throw new IllegalArgumentException();
+      }
+      maxQueueSize = size;
+   }
+
+   public ResultStore getResultStore() {
+      return resultStore;
+   }
+
+   public void setResultStore(ResultStore store) {
+      resultStore = Objects.requireNonNull(store);
+   }
+
    public long getResultRetentionTimeout(TimeUnit unit) {
       return unit.convert(resultRetentionTimeout, TimeUnit.NANOSECONDS);
    }
@@ -164,37 +294,82 @@ public final class ExecutionService implements IExecutionService {
          do {
             key = UUID.randomUUID().toString();
          } while (tasks.containsKey(key));
+         task.id = key;
          tasks.put(key, task);
       }
       return key;
    }
 
    private String store(Task<?> task, String prefix) {
-      if (!prefixes.containsKey(prefix)) {
-         prefixes.put(prefix, new AtomicLong(0));
-      }
-      String key = String.format("%s-%d", prefix, prefixes.get(prefix).incrementAndGet());
+      AtomicLong counter = prefixes.computeIfAbsent(prefix, p -> new AtomicLong(0));
+      String key = String.format("%s-%d", prefix, counter.incrementAndGet());
+      task.id = key;
       tasks.put(key, task);
       return key;
    }
 
-   private void executeOrQueue(Task<?> task) {
-      if (workers.stream().anyMatch(w -> w.task == null)
-               || maxWorkerCount > 0 && workers.size() >= maxWorkerCount) {
-         queue.add(task);
-      } else {
-         Worker worker = new Worker(task);
-         workers.add(worker);
-         worker.start();
+   private void executeOrQueue(String id, Task<?> task) {
+      activeCount.incrementAndGet();
+      // Virtual threads are never pooled thus there are no idle workers to pick the task
+      if (!virtualThreads && queue.tryTransfer(task)) {
+         return;
+      }
+      if (tryAddWorker()) {
+         new Worker(task).start();
+         return;
+      }
+      // Only bounded queues need to be measured, which keeps the cost of size() bounded too
+      int limit = maxQueueSize;
+      if (limit > 0 && queue.size() >= limit) {
+         // Tasks that cannot be queued are forgotten as if they were never submitted
+         activeCount.decrementAndGet();
+         tasks.remove(id);
+         throw new RejectedExecutionException();
+      }
+      queue.add(task);
+      // Every worker might have left after we found there were too many of them
+      if (workerCount.get() == 0 && tryAddWorker()) {
+         new Worker(null).start();
+      }
+   }
+
+   private boolean tryAddWorker() {
+      while (true) {
+         int count = workerCount.get();
+         if (maxWorkerCount > 0 && count >= maxWorkerCount) {
+            return false;
+         }
+         if (workerCount.compareAndSet(count, count + 1)) {
+            return true;
+         }
       }
    }
 
+   private boolean hasQueuedTasks() {
+      for (Task<?> task : queue) {
+         if (task != stop) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void stopIdleWorkers() {
+      // Queued after every accepted task; each worker passes it on to the next one as it leaves
+      queue.add(stop);
+   }
+
    private void purgeExpired() {
-      Instant limit = Instant.now().minusNanos(resultRetentionTimeout);
-      tasks.entrySet().stream().filter(e -> {
-         Instant completed = e.getValue().completed;
-         return completed != null && completed.isBefore(limit);
-      }).forEach(e -> tasks.remove(e.getKey()));
+      // Tasks are queued as they complete thus only the oldest ones need to be checked
+      long now = System.nanoTime();
+      Task<?> task;
+      while ((task = completedTasks.peek()) != null
+               && now - task.completed >= resultRetentionTimeout) {
+         if (completedTasks.remove(task)) {
+            tasks.remove(task.id, task);
+            task.release();
+         }
+      }
    }
 
    private enum Status {
@@ -204,16 +379,21 @@ public final class ExecutionService implements IExecutionService {
    private final class Task<T> implements Future<T> {
 
       // Fields are marked transient so they do not get serialised
+      private final transient CompletableFuture<T> completion = new CompletableFuture<>();
       private final transient Callable<T> job;
+      private transient String id = "worker";
       private transient Worker worker = null;
       private transient Throwable exception = null;
-      private transient Instant completed;
+      private transient StoredResult stored = null;
+      private transient List<JobListener> listeners = null;
+      private transient long completed;
 
       // Used only by serialisation to JSON/XML
       @SuppressWarnings("unused")
       private String error = null;
 
-      private Status status = Status.QUEUED;
+      private volatile Status status = Status.QUEUED;
+      private volatile Double progress = null;
       private T result = null;
 
       public Task(Callable<T> job) {
@@ -222,52 +402,205 @@ public final class ExecutionService implements IExecutionService {
 
       @Override
       public boolean cancel(boolean mayInterruptIfRunning) {
-         switch (status) {
-            case QUEUED:
-               queue.remove(this);
-               status = Status.CANCELLED;
-               return true;
-            case RUNNING:
-               if (!mayInterruptIfRunning) {
-                  return false;
-               }
+         synchronized (this) {
+            if (status == Status.RUNNING && mayInterruptIfRunning) {
+               // The worker is only released by the task while holding the same lock
                worker.interrupt();
-               status = Status.INTERRUPTED;
-               return true;
-            default:
+            } else if (status != Status.QUEUED) {
                return false;
+            }
+            if (status == Status.QUEUED && queue.remove(this)) {
+               activeCount.decrementAndGet();
+            }
+            complete(status == Status.QUEUED ? Status.CANCELLED : Status.INTERRUPTED);
          }
+         completion.completeExceptionally(new CancellationException());
+         return true;
       }
 
       @Override
       public boolean isCancelled() {
-         return status == Status.CANCELLED || status == Status.INTERRUPTED;
+         Status current = status;
+         return current == Status.CANCELLED || current == Status.INTERRUPTED;
       }
 
       @Override
       public boolean isDone() {
-         return status != Status.QUEUED && status != Status.RUNNING;
+         Status current = status;
+         return current != Status.QUEUED && current != Status.RUNNING;
       }
 
       @Override
       public T get() throws InterruptedException, ExecutionException {
          try {
-            return get(1, TimeUnit.MINUTES);
-         } catch (TimeoutException e) {
-            // No application might be running for 49 days straight so ignore
+            completion.get();
+         } catch (ExecutionException | CancellationException e) {
+            // Reported below according to the status of the task
          }
-         return null;
+         return report();
       }
 
       @Override
       public T get(long timeout, TimeUnit unit)
          throws InterruptedException, ExecutionException, TimeoutException {
-         Instant end = Instant.now().plusNanos(unit.toNanos(timeout));
-         while (!isDone()) {
-            if (end.isBefore(Instant.now())) {
-               throw new TimeoutException();
+         try {
+            completion.get(timeout, unit);
+         } catch (ExecutionException | CancellationException e) {
+            // Reported below according to the status of the task
+         }
+         return report();
+      }
+
+      CompletionStage<T> getCompletion() {
+         // Callers must not be able to complete the task themselves
+         return completion.thenApply(value -> {
+            if (stored == null) {
+               return value;
+            }
+            try {
+               return getStoredResult();
+            } catch (IOException e) {
+               throw new CompletionException(e);
+            }
+         });
+      }
+
+      synchronized void watch(JobListener listener) {
+         // Listeners learn the current state of the job first; changes follow in order
+         listener.statusChanged(id, status.name(), isDone());
+         if (!isDone()) {
+            if (progress != null) {
+               listener.progressChanged(id, progress);
+            }
+            if (listeners == null) {
+               listeners = new ArrayList<>(2);
+            }
+            listeners.add(listener);
+         }
+      }
+
+      synchronized void progress(double value) {
+         if (status == Status.RUNNING) {
+            progress = value;
+            if (listeners != null) {
+               for (JobListener listener : listeners) {
+                  listener.progressChanged(id, value);
+               }
+            }
+         }
+      }
+
+      void release() {
+         if (stored != null) {
+            stored.release();
+         }
+      }
+
+      void run(Worker worker) {
+         synchronized (this) {
+            if (status != Status.QUEUED) {
+               // Cancelled while still in the queue (i.e. when the service was shut down)
+               return;
+            }
+            this.worker = worker;
+            status = Status.RUNNING;
+            notifyListeners();
+         }
+         currentTask.set(this);
+         try {
+            T value = job.call();
+            StoredResult handle = store(value);
+            synchronized (this) {
+               if (status == Status.RUNNING) {
+                  if (handle != null) {
+                     stored = handle;
+                  } else {
+                     result = value;
+                  }
+                  handle = null;
+                  complete(Status.DONE);
+               }
+            }
+            if (handle != null) {
+               // Interrupted while the result was being stored
+               handle.release();
+            }
+         } catch (InterruptedException e) {
+            synchronized (this) {
+               if (status == Status.RUNNING) {
+                  complete(Status.INTERRUPTED);
+               }
+            }
+            log.warning(e);
+         } catch (Throwable t) {
+            Throwable cause = t;
+            while (cause instanceof InvocationTargetException
+                     || cause instanceof InternalServerError) {
+               cause = cause.getCause();
+            }
+            synchronized (this) {
+               if (status == Status.RUNNING) {
+                  exception = cause;
+                  error = t.getMessage();
+                  complete(Status.FAILED);
+               }
+            }
+            log.error(t);
+         } finally {
+            currentTask.remove();
+            synchronized (this) {
+               this.worker = null;
             }
          }
+         switch (status) {
+            case DONE:
+               completion.complete(result);
+               break;
+            case FAILED:
+               completion.completeExceptionally(exception);
+               break;
+            default:
+               completion.completeExceptionally(new CancellationException());
+               break;
+         }
+      }
+
+      private void complete(Status finalStatus) {
+         completed = System.nanoTime();
+         progress = null;
+         // Written last so everything above is visible to whoever sees the task is done
+         status = finalStatus;
+         completedTasks.add(this);
+         notifyListeners();
+      }
+
+      private void notifyListeners() {
+         if (listeners != null) {
+            boolean done = isDone();
+            for (JobListener listener : listeners) {
+               listener.statusChanged(id, status.name(), done);
+            }
+            if (done) {
+               listeners = null;
+            }
+         }
+      }
+
+      private StoredResult store(T value) {
+         try {
+            return resultStore.store(value);
+         } catch (IOException e) {
+            log.warning(e);
+            return null;
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      private T getStoredResult() throws IOException {
+         return (T) stored.get();
+      }
+
+      private T report() throws InterruptedException, ExecutionException {
          switch (status) {
             case FAILED:
                throw new ExecutionException(exception);
@@ -276,80 +609,78 @@ public final class ExecutionService implements IExecutionService {
             case INTERRUPTED:
                throw new InterruptedException();
             default:
-               return result;
+               break;
          }
-      }
-
-      void run() {
-         if (completed == null) {
-            try {
-               status = Status.RUNNING;
-               result = job.call();
-               status = Status.DONE;
-            } catch (InterruptedException e) {
-               status = Status.INTERRUPTED;
-               log.warning(e);
-               Thread.currentThread().interrupt();
-            } catch (Throwable t) {
-               exception = t;
-               while (exception instanceof InvocationTargetException
-                        || exception instanceof InternalServerError) {
-                  exception = exception.getCause();
-               }
-               status = Status.FAILED;
-               error = t.getMessage();
-               log.error(t);
-            } finally {
-               completed = Instant.now();
-            }
+         if (stored == null) {
+            return result;
+         }
+         try {
+            return getStoredResult();
+         } catch (IOException e) {
+            throw new ExecutionException(e);
          }
       }
    }
 
-   private final class Worker extends Thread {
+   private final class Worker implements Runnable {
 
-      private Task<?> task;
+      private final Thread thread;
+      private final Task<?> firstTask;
 
       public Worker(Task<?> firstTask) {
-         this.task = firstTask;
+         this.thread = virtualThreads ? VirtualThreads.newThread(this) : new Thread(this);
+         this.firstTask = firstTask;
       }
 
       @Override
       public void run() {
-         while (task != null) {
-            setName(getIdOf(task));
-            task.worker = this;
-            task.run();
-            task.worker = null;
-            task = timedPoll();
-         }
-         workers.remove(this);
-      }
-
-      private Task<?> timedPoll() {
-         Instant end = Instant.now().plusNanos(keepAliveTime);
-         while (end.isAfter(Instant.now())) {
-            Task<?> result = queue.poll();
-            if (result != null) {
-               return result;
+         Task<?> task = firstTask != null ? firstTask : queue.poll();
+         while (true) {
+            while (task != null) {
+               if (task == stop) {
+                  // Passed on to the next worker behind any task accepted while shutting down
+                  task = queue.poll();
+                  queue.add(stop);
+                  continue;
+               }
+               thread.setName(task.id);
+               try {
+                  task.run(this);
+               } finally {
+                  activeCount.decrementAndGet();
+               }
+               // Interrupting a task must not cut the wait for the next one short
+               Thread.interrupted();
+               task = virtualThreads ? queue.poll() : timedPoll();
             }
-            try {
-               Thread.sleep(60);
-            } catch (InterruptedException e) {
-               Thread.currentThread().interrupt();
-               return null;
+            if (workerCount.decrementAndGet() == 0) {
+               synchronized (termination) {
+                  termination.notifyAll();
+               }
             }
+            // A task might have been queued right after this worker stopped waiting for one
+            if (!hasQueuedTasks() || !tryAddWorker()) {
+               return;
+            }
+            task = queue.poll();
          }
-         return null;
       }
 
-      private String getIdOf(Task<?> task) {
-         Optional<String> id = tasks.entrySet()
-                  .stream()
-                  .filter(e -> e.getValue() == task)
-                  .map(Entry::getKey)
-                  .findFirst();
-         return id.orElse("worker");
+      void start() {
+         thread.start();
+      }
+
+      void interrupt() {
+         thread.interrupt();
+      }
+
+      private Task<?> timedPoll() {
+         try {
+            return queue.poll(keepAliveTime, TimeUnit.NANOSECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+         }
       }
    }
 }
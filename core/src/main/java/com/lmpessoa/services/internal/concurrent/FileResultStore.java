@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.lmpessoa.services.ContentType;
+import com.lmpessoa.services.HttpInputStream;
+import com.lmpessoa.services.Redirect;
+import com.lmpessoa.services.internal.serializing.Serializer;
+
+/**
+ * Moves large results of asynchronous jobs to files on disk.
+ *
+ * <p>
+ * Results are serialised as JSON once, when they are stored. Results whose serialised form is not
+ * larger than a given threshold are kept in memory; larger ones are appended to a segment file and
+ * later read back from it. Segment files are only ever appended to and are deleted once every
+ * result in them is released. Since results are released roughly in the same order they are
+ * stored, segments are freed in order too.
+ * </p>
+ *
+ * <p>
+ * Since results are stored already serialised, results moved to disk are only ever sent as JSON;
+ * requests for the status of their jobs which do not accept JSON are answered with the status 406
+ * (Not Acceptable).
+ * </p>
+ *
+ * <p>
+ * Segment files are temporary and are deleted when the store is closed.
+ * </p>
+ */
+public final class FileResultStore implements ResultStore {
+
+   private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+   private static final String[] JSON = { ContentType.JSON };
+   private static final Locale[] NO_LOCALES = new Locale[0];
+
+   private final List<Segment> segments = new ArrayList<>();
+   private final File directory;
+   private final long segmentSize;
+   private final int threshold;
+
+   private Segment current = null;
+   private boolean closed = false;
+
+   /**
+    * Creates a new result store.
+    *
+    * @param directory the directory where segment files are to be created.
+    * @param threshold the length in bytes above which results are moved to disk.
+    */
+   public FileResultStore(File directory, int threshold) {
+      this(directory, threshold, DEFAULT_SEGMENT_SIZE);
+   }
+
+   FileResultStore(File directory, int threshold, long segmentSize) {
+      this.directory = Objects.requireNonNull(directory);
+      this.threshold = threshold;
+      this.segmentSize = segmentSize;
+   }
+
+   @Override
+   public StoredResult store(Object value) throws IOException {
+      if (isSmall(value)) {
+         return null;
+      }
+      HttpInputStream json;
+      try {
+         json = Serializer.fromObject(value, JSON, NO_LOCALES);
+      } catch (RuntimeException e) {
+         // Results which cannot be serialised can only be kept in memory
+         return null;
+      }
+      long length = json.getContentLength();
+      if (length <= threshold) {
+         return null;
+      }
+      Region result = allocate(length, value.getClass());
+      try {
+         result.write(json);
+      } catch (IOException e) {
+         result.release();
+         throw e;
+      }
+      return result;
+   }
+
+   @Override
+   public synchronized void close() throws IOException {
+      closed = true;
+      current = null;
+      for (Segment segment : new ArrayList<>(segments)) {
+         segment.delete();
+      }
+   }
+
+   /**
+    * Returns the number of segment files currently held by this store.
+    *
+    * @return the number of segment files currently held by this store.
+    */
+   synchronized int getSegmentCount() {
+      return segments.size();
+   }
+
+   private boolean isSmall(Object value) {
+      // Avoids serialising results which are known to be small beforehand
+      if (value == null || value instanceof Number || value instanceof Boolean
+               || value instanceof Character || value instanceof Enum || value instanceof URL
+               || value instanceof URI || value instanceof Redirect) {
+         return true;
+      }
+      // Each character takes at most six characters when escaped in JSON
+      return value instanceof CharSequence
+               && ((CharSequence) value).length() * 6L + 2 <= threshold;
+   }
+
+   private synchronized Region allocate(long length, Class<?> type) throws IOException {
+      if (closed) {
+         throw new IOException("Result store is closed");
+      }
+      if (current == null || current.size > 0 && current.size + length > segmentSize) {
+         Segment previous = current;
+         current = new Segment();
+         segments.add(current);
+         if (previous != null) {
+            // The store no longer appends to the previous segment
+            previous.release();
+         }
+      }
+      // Space is reserved here so the result can be written without holding the lock
+      Region result = new Region(current, current.size, length, type);
+      current.size += length;
+      current.refs.incrementAndGet();
+      return result;
+   }
+
+   private final class Segment {
+
+      // The store holds a reference to its current segment
+      private final AtomicInteger refs = new AtomicInteger(1);
+      private final FileChannel channel;
+      private final File file;
+
+      private long size = 0;
+
+      Segment() throws IOException {
+         if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+         }
+         file = File.createTempFile("results-", ".dat", directory);
+         file.deleteOnExit();
+         channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                  StandardOpenOption.WRITE);
+      }
+
+      boolean retain() {
+         int count;
+         do {
+            count = refs.get();
+            if (count == 0) {
+               return false;
+            }
+         } while (!refs.compareAndSet(count, count + 1));
+         return true;
+      }
+
+      void release() {
+         if (refs.decrementAndGet() == 0) {
+            delete();
+         }
+      }
+
+      void delete() {
+         synchronized (FileResultStore.this) {
+            segments.remove(this);
+         }
+         try {
+            channel.close();
+         } catch (IOException e) {
+            // The file is deleted anyway
+         }
+         if (!file.delete()) {
+            file.deleteOnExit();
+         }
+      }
+   }
+
+   private final class Region implements StoredResult {
+
+      private final AtomicBoolean released = new AtomicBoolean(false);
+      private final Segment segment;
+      private final Class<?> type;
+      private final long offset;
+      private final long length;
+
+      Region(Segment segment, long offset, long length, Class<?> type) {
+         this.segment = segment;
+         this.offset = offset;
+         this.length = length;
+         this.type = type;
+      }
+
+      @Override
+      public Object get() throws IOException {
+         if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Stored result is too large to be read back");
+         }
+         byte[] content = new byte[(int) length];
+         try (InputStream input = open()) {
+            int total = 0;
+            int read;
+            while (total < content.length
+                     && (read = input.read(content, total, content.length - total)) != -1) {
+               total += read;
+            }
+         }
+         try {
+            return Serializer.toObject(content, ContentType.JSON, type);
+         } catch (RuntimeException e) {
+            throw new IOException("Stored result cannot be read back", e);
+         }
+      }
+
+      @Override
+      public InputStream open() throws IOException {
+         if (released.get() || !segment.retain()) {
+            throw new IOException("Stored result was released");
+         }
+         return new RegionInputStream(segment, offset, length);
+      }
+
+      @Override
+      public long length() {
+         return length;
+      }
+
+      @Override
+      public void release() {
+         if (released.compareAndSet(false, true)) {
+            segment.release();
+         }
+      }
+
+      void write(InputStream content) throws IOException {
+         byte[] buffer = new byte[8192];
+         long position = offset;
+         long end = offset + length;
+         int read;
+         while (position < end && (read = content.read(buffer, 0,
+                  (int) Math.min(buffer.length, end - position))) != -1) {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+            while (chunk.hasRemaining()) {
+               position += segment.channel.write(chunk, position);
+            }
+         }
+      }
+   }
+
+   private static final class RegionInputStream extends InputStream {
+
+      private final Segment segment;
+      private final long end;
+
+      private boolean closed = false;
+      private long position;
+
+      RegionInputStream(Segment segment, long offset, long length) {
+         this.segment = segment;
+         this.position = offset;
+         this.end = offset + length;
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] single = new byte[1];
+         return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (closed) {
+            throw new IOException("Stream is closed");
+         }
+         if (position >= end) {
+            return -1;
+         }
+         int count = (int) Math.min(len, end - position);
+         int read = segment.channel.read(ByteBuffer.wrap(b, off, count), position);
+         if (read > 0) {
+            position += read;
+         }
+         return read;
+      }
+
+      @Override
+      public int available() {
+         return closed ? 0 : (int) Math.min(Integer.MAX_VALUE, end - position);
+      }
+
+      @Override
+      public void close() {
+         if (!closed) {
+            closed = true;
+            segment.release();
+         }
+      }
+   }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.concurrent;
+
+/**
+ * Receives the changes of a job as they happen.
+ *
+ * <p>
+ * Listeners are called by whichever thread changes the job while it holds a lock on the job, thus
+ * they must return quickly and must never wait for the job themselves. Listeners are forgotten once
+ * the job is done.
+ * </p>
+ */
+public interface JobListener {
+
+   /**
+    * Called when the status of the job changes.
+    *
+    * @param jobId the ID of the job whose status changed.
+    * @param status the new status of the job.
+    * @param done whether the job is done and no further changes will follow.
+    */
+   void statusChanged(String jobId, String status, boolean done);
+
+   /**
+    * Called when the job reports its progress.
+    *
+    * @param jobId the ID of the job which reported its progress.
+    * @param progress the fraction of the work of the job already done, from 0 to 1.
+    */
+   void progressChanged(String jobId, double progress);
+}
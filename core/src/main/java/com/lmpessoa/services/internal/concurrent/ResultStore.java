@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the results of asynchronous jobs while they are retained by an execution service.
+ *
+ * <p>
+ * Results are retained for a long time after their jobs complete. A result store may move results
+ * out of the heap during that time, thus bounding the memory used by retained results regardless of
+ * how many of them there are. Results which are not moved by the store are kept in memory by the
+ * execution service itself.
+ * </p>
+ */
+@FunctionalInterface
+public interface ResultStore {
+
+   /**
+    * A store which keeps every result in memory.
+    */
+   ResultStore MEMORY = value -> null;
+
+   /**
+    * Stores the result of a job.
+    *
+    * @param value the result of the job.
+    * @return a handle to the stored result, or {@code null} if the result is to be kept in memory.
+    * @throws IOException if an I/O error occurs while storing the result.
+    */
+   StoredResult store(Object value) throws IOException;
+
+   /**
+    * Releases all resources held by this store, including every result stored in it.
+    *
+    * @throws IOException if an I/O error occurs while releasing the resources of this store.
+    */
+   default void close() throws IOException {
+      // Nothing is held by stores that keep results in memory
+   }
+
+   /**
+    * Represents a result moved out of the heap by a result store.
+    */
+   interface StoredResult {
+
+      /**
+       * Reads the stored result back into memory.
+       *
+       * @return an equivalent to the stored result.
+       * @throws IOException if an I/O error occurs while reading the stored result.
+       */
+      Object get() throws IOException;
+
+      /**
+       * Opens a stream with the stored result serialised as JSON.
+       *
+       * <p>
+       * The stored result remains readable through this stream until it is closed, even if the
+       * result is released in the meantime.
+       * </p>
+       *
+       * @return a stream with the stored result serialised as JSON.
+       * @throws IOException if an I/O error occurs while opening the stored result.
+       */
+      InputStream open() throws IOException;
+
+      /**
+       * Returns the length of the stored result serialised as JSON.
+       *
+       * @return the length of the stored result serialised as JSON in bytes.
+       */
+      long length();
+
+      /**
+       * Releases the stored result once it is no longer retained.
+       */
+      void release();
+   }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates virtual threads when the runtime supports them.
+ *
+ * <p>
+ * Virtual threads were introduced in Java 21. Since this library must still run on earlier
+ * versions of Java, virtual threads are created through reflection and only if the runtime
+ * supports them.
+ * </p>
+ */
+final class VirtualThreads {
+
+   private static final Method OF_VIRTUAL;
+   private static final Method UNSTARTED;
+   private static final Method IS_VIRTUAL;
+
+   static {
+      Method ofVirtual = null;
+      Method unstarted = null;
+      Method isVirtual = null;
+      try {
+         ofVirtual = Thread.class.getMethod("ofVirtual");
+         unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted",
+                  Runnable.class);
+         isVirtual = Thread.class.getMethod("isVirtual");
+         // Virtual threads may be present as a preview feature that is not enabled
+         unstarted.invoke(ofVirtual.invoke(null), (Runnable) () -> {
+            // Never started
+         });
+      } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+               | InvocationTargetException | RuntimeException e) {
+         ofVirtual = null;
+         unstarted = null;
+         isVirtual = null;
+      }
+      OF_VIRTUAL = ofVirtual;
+      UNSTARTED = unstarted;
+      IS_VIRTUAL = isVirtual;
+   }
+
+   private VirtualThreads() {
+      // Nothing to be done here
+   }
+
+   /**
+    * Returns whether the runtime supports virtual threads.
+    *
+    * @return {@code true} if the runtime supports virtual threads, {@code false} otherwise.
+    */
+   static boolean isSupported() {
+      return UNSTARTED != null;
+   }
+
+   /**
+    * Returns whether the given thread is a virtual thread.
+    *
+    * @param thread the thread to be checked.
+    * @return {@code true} if the given thread is a virtual thread, {@code false} otherwise.
+    */
+   static boolean isVirtual(Thread thread) {
+      if (IS_VIRTUAL == null) {
+         return false;
+      }
+      try {
+         return (Boolean) IS_VIRTUAL.invoke(thread);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Creates a new virtual thread that runs the given task.
+    *
+    * <p>
+    * The returned thread is not started.
+    * </p>
+    *
+    * @param task the task to be run by the new thread.
+    * @return a new virtual thread that runs the given task.
+    * @throws UnsupportedOperationException if the runtime does not support virtual threads.
+    */
+   static Thread newThread(Runnable task) {
+      if (!isSupported()) {
+         throw new UnsupportedOperationException();
+      }
+      try {
+         return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+         throw new UnsupportedOperationException(e);
+      }
+   }
+}
@@ -22,41 +22,86 @@
  */
 package com.lmpessoa.services.internal.hosting;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.lmpessoa.services.hosting.IHostEnvironment;
 import com.lmpessoa.services.hosting.NextResponder;
 import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.logging.AccessLog;
 import com.lmpessoa.services.internal.logging.Logger;
 import com.lmpessoa.services.internal.routing.RouteTable;
 import com.lmpessoa.services.internal.services.ServiceMap;
 
 class ApplicationContext implements Runnable {
 
+   private static final long MIN_ACCEPT_BACKOFF = 10;
+   private static final long MAX_ACCEPT_BACKOFF = 1000;
+
    private final ApplicationServerImpl server;
    private final RouteTable routes;
    private final String name;
    private final int port;
 
-   private ServerSocket socket;
+   private final AtomicInteger nextSelector = new AtomicInteger();
+   private final Object drainMonitor = new Object();
+
+   private volatile ConnectionSelector[] selectors;
+   private volatile Acceptor[] acceptors;
+   private volatile boolean draining = false;
+   private volatile boolean stopped = false;
+   private volatile long stopTime;
+   private volatile TlsContext tls;
+   private ScheduledThreadPoolExecutor resumeTimer;
 
    @Override
    public void run() {
       Thread.currentThread().setName(name + "-context");
-      try (ServerSocket serverSocket = new ServerSocket(port, 0,
-               InetAddress.getLoopbackAddress())) {
-         socket = serverSocket;
-         socket.setSoTimeout(1);
-         while (socket != null && !socket.isClosed()) {
-            acceptClientToHandle();
+      List<Closeable> resources = new ArrayList<>();
+      try {
+         // Fails before accepting any connection if TLS is required but cannot be set up
+         tls = server.getSettings().getTlsContext();
+         Acceptor[] current = openAcceptors(resources);
+         startSelectors();
+         acceptors = current;
+         for (int i = 1; i < current.length; ++i) {
+            new Thread(current[i], String.format("%s-accept-%d", name, i + 1)).start();
          }
+         current[0].run();
       } catch (IOException e) {
          getLogger().error(e);
+      } finally {
+         stop();
+         // Stops accepting connections before draining the ones already accepted
+         Collections.reverse(resources);
+         for (Closeable resource : resources) {
+            close(resource);
+         }
+         drainSelectors();
+         stopSelectors();
+         getLogger().debug("Connection buffers: " + getBufferPool());
+         synchronized (this) {
+            if (resumeTimer != null) {
+               resumeTimer.shutdownNow();
+            }
+         }
       }
    }
 
@@ -73,7 +118,16 @@ class ApplicationContext implements Runnable {
    }
 
    void stop() {
-      socket = null;
+      if (!stopped) {
+         stopTime = System.nanoTime();
+      }
+      stopped = true;
+      Acceptor[] current = acceptors;
+      if (current != null) {
+         for (Acceptor acceptor : current) {
+            acceptor.selector.wakeup();
+         }
+      }
    }
 
    Class<?> getStartupClass() {
@@ -96,10 +150,168 @@ class ApplicationContext implements Runnable {
       return server.getSettings().getMainExecutor();
    }
 
+   /**
+    * Returns the executor that responds to requests for the given path.
+    *
+    * @param path the path of the request.
+    * @return the reserved executor if the given path is reserved, or the main executor otherwise.
+    */
+   ExecutionService getExecutorFor(String path) {
+      return isReservedPath(path) ? getReservedExecutor() : getExecutor();
+   }
+
+   /**
+    * Returns whether this context is shutting down.
+    *
+    * <p>
+    * While a context is shutting down, requests in progress are allowed to finish but connections
+    * are not kept alive anymore.
+    * </p>
+    *
+    * @return {@code true} if this context is shutting down, {@code false} otherwise.
+    */
+   boolean isDraining() {
+      return draining;
+   }
+
+   /**
+    * Returns the value of the system timer when this context was asked to stop.
+    *
+    * @return the value of the system timer when this context was asked to stop, in nanoseconds.
+    */
+   long getStopTime() {
+      return stopTime;
+   }
+
+   /**
+    * Notifies this context that the number of requests in progress on a selector has changed.
+    */
+   void activeCountChanged() {
+      synchronized (drainMonitor) {
+         drainMonitor.notifyAll();
+      }
+   }
+
+   ExecutionService getReservedExecutor() {
+      return server.getSettings().getReservedExecutor();
+   }
+
+   int getMaxQueueWait() {
+      return server.getSettings().getMaxQueueWait();
+   }
+
+   /**
+    * Returns whether requests to the given path are served by the reserved executor.
+    *
+    * <p>
+    * Requests to the health path and to the feedback path of asynchronous jobs are never queued
+    * behind regular requests nor rejected due to load, so the application can still be monitored
+    * while under heavy load.
+    * </p>
+    *
+    * @param path the path of the request.
+    * @return {@code true} if requests to the given path are served by the reserved executor,
+    *         {@code false} otherwise.
+    */
+   boolean isReservedPath(String path) {
+      if (path == null) {
+         return false;
+      }
+      ApplicationOptions options = server.getOptions();
+      String feedbackPath = options.getFeedbakcPath();
+      return path.equals(options.getHealthPath())
+               || feedbackPath != null && path.startsWith(feedbackPath);
+   }
+
    int getTimeout() {
       return server.getSettings().getRequestTimeout();
    }
 
+   int getRequestDeadline() {
+      return server.getSettings().getRequestDeadline();
+   }
+
+   /**
+    * Returns the timer used to interrupt requests whose deadline expired.
+    *
+    * <p>
+    * Deadlines are usually disarmed long before they expire, just like the timeouts of connections,
+    * thus they share the timer wheel of the connection reaper.
+    * </p>
+    *
+    * @return the timer used to interrupt requests whose deadline expired, or {@code null} if
+    *         connections are not watched or their reaper was already stopped.
+    */
+   TimerWheel getDeadlineTimer() {
+      ConnectionReaper reaper = getConnectionReaper();
+      return reaper != null ? reaper.getWheel() : null;
+   }
+
+   /**
+    * Returns the timer used to resume suspended requests and event streams.
+    *
+    * <p>
+    * Suspended requests check for their results within a few milliseconds, which is much finer
+    * than the ticks of the timer wheel used for deadlines, thus they have a timer of their own. The
+    * timer is only created when the first request is suspended.
+    * </p>
+    *
+    * @return the timer used to resume suspended requests and event streams.
+    */
+   synchronized ScheduledExecutorService getResumeTimer() {
+      if (resumeTimer == null) {
+         resumeTimer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread result = new Thread(task, name + "-resume");
+            result.setDaemon(true);
+            return result;
+         });
+         resumeTimer.setRemoveOnCancelPolicy(true);
+      }
+      return resumeTimer;
+   }
+
+   int getMaxHeaderSize() {
+      return server.getSettings().getMaxHeaderSize();
+   }
+
+   int getContentMemoryLimit() {
+      return server.getSettings().getContentMemoryLimit();
+   }
+
+   int getKeepAliveTimeout() {
+      return server.getSettings().getKeepAliveTimeout();
+   }
+
+   int getMaxKeepAliveRequests() {
+      return server.getSettings().getMaxKeepAliveRequests();
+   }
+
+   ResponseCompressor getCompressor() {
+      return server.getSettings().getCompressor();
+   }
+
+   AccessLog getAccessLog() {
+      return server.getSettings().getAccessLog();
+   }
+
+   BufferPool getBufferPool() {
+      return server.getSettings().getBufferPool();
+   }
+
+   /**
+    * Returns the context used to secure connections accepted by this application context.
+    *
+    * @return the context used to secure connections, or {@code null} if connections are not
+    *         secured.
+    */
+   TlsContext getTlsContext() {
+      return tls;
+   }
+
+   ConnectionReaper getConnectionReaper() {
+      return server.getSettings().getConnectionReaper();
+   }
+
    NextResponder getFirstResponder() {
       return server.getOptions().getFirstResponder();
    }
@@ -116,15 +328,235 @@ class ApplicationContext implements Runnable {
       return name;
    }
 
-   private void acceptClientToHandle() {
+   private void startSelectors() throws IOException {
+      int count = Math.max(1, server.getSettings().getIoThreadCount());
+      ConnectionSelector[] result = new ConnectionSelector[count];
+      for (int i = 0; i < count; ++i) {
+         result[i] = new ConnectionSelector(this, String.format("%s-io-%d", name, i + 1));
+         new Thread(result[i]).start();
+      }
+      selectors = result;
+   }
+
+   private void drainSelectors() {
+      ConnectionSelector[] current = selectors;
+      if (current == null) {
+         return;
+      }
+      draining = true;
+      for (ConnectionSelector selector : current) {
+         selector.drain();
+      }
+      long grace = TimeUnit.SECONDS.toNanos(server.getSettings().getShutdownGracePeriod());
+      long deadline = stopTime + grace;
+      long lastReport = 0;
+      int active;
+      try {
+         while ((active = countActive(current)) != 0) {
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+               getLogger().warning("Grace period expired; closing connections still in use");
+               return;
+            }
+            if (active > 0
+                     && (lastReport == 0 || now - lastReport >= TimeUnit.SECONDS.toNanos(1))) {
+               getLogger().info("Waiting for %d request(s) to complete", active);
+               lastReport = now;
+            }
+            long wait = Math.min(TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1, 1000);
+            synchronized (drainMonitor) {
+               drainMonitor.wait(wait);
+            }
+         }
+         getLogger().info("All requests in progress were completed");
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private static int countActive(ConnectionSelector[] selectors) {
+      int result = 0;
+      for (ConnectionSelector selector : selectors) {
+         int count = selector.getActiveCount();
+         if (count < 0) {
+            // Not all selectors have counted their connections yet
+            return -1;
+         }
+         result += count;
+      }
+      return result;
+   }
+
+   private void stopSelectors() {
+      ConnectionSelector[] current = selectors;
+      if (current != null) {
+         for (ConnectionSelector selector : current) {
+            selector.stop();
+         }
+      }
+   }
+
+   /**
+    * Opens the channels and selectors used to accept connections.
+    *
+    * <p>
+    * If more than one acceptor is required and the runtime supports the {@code SO_REUSEPORT}
+    * option, each acceptor binds its own channels to the same addresses and the operating system
+    * distributes incoming connections among them. Otherwise all acceptors share the same channels.
+    * </p>
+    */
+   private Acceptor[] openAcceptors(List<Closeable> resources) throws IOException {
+      ApplicationSettings settings = server.getSettings();
+      InetAddress[] addresses = settings.getBindAddresses();
+      int backlog = settings.getAcceptQueueSize();
+      int count = Math.max(1, settings.getAcceptorCount());
+      SocketOption<Boolean> reusePort = count > 1 ? getReusePortOption() : null;
+      Acceptor[] result = new Acceptor[count];
+      List<ServerSocketChannel> shared = null;
+      for (int i = 0; i < count; ++i) {
+         List<ServerSocketChannel> channels = shared;
+         if (channels == null) {
+            channels = new ArrayList<>();
+            for (InetAddress address : addresses) {
+               ServerSocketChannel channel = ServerSocketChannel.open();
+               resources.add(channel);
+               if (reusePort != null) {
+                  channel.setOption(reusePort, true);
+               }
+               channel.bind(new InetSocketAddress(address, port), backlog);
+               channel.configureBlocking(false);
+               channels.add(channel);
+            }
+            if (reusePort == null) {
+               shared = channels;
+            }
+         }
+         Selector selector = Selector.open();
+         resources.add(selector);
+         for (ServerSocketChannel channel : channels) {
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+         }
+         result[i] = new Acceptor(selector);
+      }
+      return result;
+   }
+
+   private void acceptClientsToHandle(ServerSocketChannel serverChannel) throws IOException {
+      SocketChannel client;
+      while ((client = serverChannel.accept()) != null) {
+         try {
+            client.configureBlocking(false);
+         } catch (IOException e) {
+            // Only this client is lost; others may still be accepted
+            getLogger().debug(e);
+            close(client);
+            continue;
+         }
+         ConnectionSelector[] current = selectors;
+         int next = nextSelector.getAndIncrement() & Integer.MAX_VALUE;
+         current[next % current.length].register(client);
+      }
+   }
+
+   private void close(Closeable resource) {
       try {
-         Socket client = socket.accept();
-         ApplicationRequestJob job = new ApplicationRequestJob(this, client);
-         getExecutor().submit(job, "request");
-      } catch (SocketTimeoutException e) {
-         // just ignore
+         resource.close();
       } catch (IOException e) {
-         getLogger().error(e);
+         getLogger().debug(e);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static SocketOption<Boolean> getReusePortOption() {
+      try {
+         // SO_REUSEPORT is only available since Java 9
+         Object option = StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+         try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            if (probe.supportedOptions().contains(option)) {
+               return (SocketOption<Boolean>) option;
+            }
+         }
+      } catch (NoSuchFieldException | IllegalAccessException | IOException e) {
+         // Not supported; acceptors share the same channels
+      }
+      return null;
+   }
+
+   /**
+    * Accepts connections from the channels registered with a selector.
+    *
+    * <p>
+    * Errors while accepting connections (like running out of file descriptors) usually persist for
+    * a while and the pending connection keeps the channel ready to be accepted. Thus after such an
+    * error the acceptor stops accepting connections for a while, doubling that time while errors
+    * persist, instead of failing again right away.
+    * </p>
+    */
+   private final class Acceptor implements Runnable {
+
+      private final Selector selector;
+
+      private boolean paused = false;
+      private long backoff = 0;
+      private long resumeAt;
+
+      Acceptor(Selector selector) {
+         this.selector = selector;
+      }
+
+      @Override
+      public void run() {
+         try {
+            while (!stopped) {
+               if (paused) {
+                  long wait = TimeUnit.NANOSECONDS.toMillis(resumeAt - System.nanoTime());
+                  if (wait > 0) {
+                     selector.select(wait);
+                     continue;
+                  }
+                  setInterestOps(SelectionKey.OP_ACCEPT);
+                  paused = false;
+               }
+               selector.select();
+               boolean failed = false;
+               for (SelectionKey key : selector.selectedKeys()) {
+                  if (key.isValid() && key.isAcceptable()) {
+                     failed |= !accept((ServerSocketChannel) key.channel());
+                  }
+               }
+               selector.selectedKeys().clear();
+               if (failed) {
+                  backoff = Math.min(Math.max(MIN_ACCEPT_BACKOFF, backoff * 2), MAX_ACCEPT_BACKOFF);
+                  resumeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+                  setInterestOps(0);
+                  paused = true;
+               } else {
+                  backoff = 0;
+               }
+            }
+         } catch (IOException | ClosedSelectorException e) {
+            if (!stopped) {
+               getLogger().error(e);
+            }
+         }
+      }
+
+      private boolean accept(ServerSocketChannel channel) {
+         try {
+            acceptClientsToHandle(channel);
+            return true;
+         } catch (IOException e) {
+            getLogger().error(e);
+            return false;
+         }
+      }
+
+      private void setInterestOps(int ops) {
+         for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+               key.interestOps(ops);
+            }
+         }
       }
    }
 }
@@ -84,4 +84,10 @@ final class ApplicationInfo implements IApplicationInfo {
       Runtime runtime = Runtime.getRuntime();
       return runtime.totalMemory() - runtime.freeMemory();
    }
+
+   @Override
+   public Map<String, Long> getConnectionTimeouts() {
+      ConnectionReaper reaper = settings.getConnectionReaper();
+      return reaper != null ? reaper.getTimeoutCounts() : Collections.emptyMap();
+   }
 }
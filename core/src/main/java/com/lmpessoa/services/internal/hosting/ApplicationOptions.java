@@ -261,6 +261,10 @@ public final class ApplicationOptions implements IApplicationOptions {
       policies.put(policyName, policy);
    }
 
+   boolean isApplicationResponder(Class<?> responderClass) {
+      return responders.contains(responderClass);
+   }
+
    NextResponder getFirstResponder() {
       List<Class<?>> result = new ArrayList<>();
       result.add(SerializerResponder.class);
@@ -26,18 +26,29 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import com.lmpessoa.services.ContentType;
+import com.lmpessoa.services.Deadline;
+import com.lmpessoa.services.GatewayTimeoutException;
 import com.lmpessoa.services.HttpInputStream;
 import com.lmpessoa.services.hosting.ConnectionInfo;
 import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.HttpResponse;
+import com.lmpessoa.services.hosting.IDeadline;
 import com.lmpessoa.services.hosting.NextResponder;
 import com.lmpessoa.services.hosting.ValuesMap;
 import com.lmpessoa.services.internal.Wrapper;
+import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.hosting.ConnectionReaper.Phase;
+import com.lmpessoa.services.internal.logging.AccessLog;
+import com.lmpessoa.services.internal.logging.AccessLogEntry;
 import com.lmpessoa.services.internal.routing.RouteTable;
 import com.lmpessoa.services.internal.services.ServiceMap;
 import com.lmpessoa.services.logging.ILogger;
+import com.lmpessoa.services.routing.HttpMethod;
 import com.lmpessoa.services.routing.IRouteTable;
 import com.lmpessoa.services.routing.RouteMatch;
 import com.lmpessoa.services.security.IIdentity;
@@ -45,59 +56,472 @@ import com.lmpessoa.services.security.ITokenManager;
 
 final class ApplicationRequestJob implements Runnable {
 
-   private static final String CRLF = "\r\n";
+   private static final String HTTP_1_1 = "HTTP/1.1";
 
+   private final ResponseHeadEncoder head = new ResponseHeadEncoder();
    private final ApplicationContext context;
-   private final Socket client;
+   private final ClientConnection client;
    private final ILogger log;
 
+   private ExecutionService executor = null;
+   private SuspendedResponse suspended = null;
+   private EventStream streaming = null;
+   private boolean sheddable = false;
+   private Exchange pending = null;
+   private long queueDeadline;
+
    @Override
    public void run() {
-      try (Socket socket = this.client) {
-         HttpRequest request = new HttpRequestImpl(socket.getInputStream(), context.getTimeout());
+      boolean keepAlive = false;
+      boolean dispatched = false;
+      try {
+         if (pending != null) {
+            keepAlive = resumeRequest();
+         } else if (sheddable && System.nanoTime() - queueDeadline > 0) {
+            rejectRequest(new ServiceUnavailableException(getRetryAfter()));
+            return;
+         } else {
+            keepAlive = respondToRequest();
+         }
+         while (keepAlive && pending == null && client.hasPendingRequest()) {
+            if (executor != null && executor != context.getExecutorFor(client.getRequestPath())) {
+               // Pipelined requests must go through the same lane as any other request
+               dispatch();
+               dispatched = true;
+               return;
+            }
+            keepAlive = respondToRequest();
+         }
+      } catch (Exception e) {
+         keepAlive = false;
+         pending = null;
+         if (streaming != null) {
+            // Whoever sends events must know the user agent will not get them
+            streaming.close();
+            streaming = null;
+         }
+         log.debug(e);
+      } finally {
+         if (pending != null) {
+            suspend();
+         } else if (!dispatched) {
+            releaseConnection(keepAlive);
+         }
+      }
+   }
+
+   ApplicationRequestJob(ApplicationContext context, Socket client) {
+      this(context, new SocketConnection(client, context));
+   }
+
+   ApplicationRequestJob(ApplicationContext context, ClientConnection client) {
+      this.log = context.getLogger();
+      this.context = context;
+      this.client = client;
+   }
+
+   /**
+    * Submits this job to the executor that responds to the request waiting on its connection.
+    *
+    * <p>
+    * Requests for reserved paths are submitted to the reserved executor and are never shed. Other
+    * requests are submitted to the main executor and, if it is overloaded, are immediately
+    * responded with the status 503 (Service Unavailable) and their connection is closed.
+    * </p>
+    *
+    * @throws RejectedExecutionException if the executor was shut down.
+    */
+   void dispatch() {
+      String path = client.getRequestPath();
+      executor = context.getExecutorFor(path);
+      sheddable = false;
+      int maxQueueWait = context.getMaxQueueWait();
+      if (maxQueueWait > 0 && !context.isReservedPath(path)) {
+         shedAfter(maxQueueWait);
+      }
+      try {
+         executor.submit(this, "request");
+      } catch (RejectedExecutionException e) {
+         if (executor.isShutdown() || context.isReservedPath(path)) {
+            throw e;
+         }
+         // Overloaded; tell the user agent right away instead of leaving it waiting
+         sendNow(new ServiceUnavailableException(getRetryAfter()));
+         releaseConnection(false);
+      }
+   }
+
+   /**
+    * Limits the time this job may wait to be started.
+    *
+    * <p>
+    * If the job is not started within the given time it responds to its request with the status
+    * 503 (Service Unavailable) instead, since the user agent is likely to have given up waiting.
+    * </p>
+    *
+    * @param maxQueueWait the maximum time this job may wait to be started, in milliseconds.
+    */
+   void shedAfter(int maxQueueWait) {
+      this.queueDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxQueueWait);
+      this.sheddable = true;
+   }
+
+   /**
+    * Returns the number of seconds a user agent is advised to wait before retrying a request
+    * rejected due to load.
+    *
+    * @return the number of seconds to wait before retrying a rejected request.
+    */
+   int getRetryAfter() {
+      return (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(context.getMaxQueueWait() + 999L));
+   }
+
+   /**
+    * Returns the bytes of a response with no content for the given error.
+    *
+    * <p>
+    * Responses created by this method always close the connection since they are used when the
+    * request could not be read or served.
+    * </p>
+    *
+    * @param error the error to be sent to the user agent.
+    * @return the bytes of the response for the given error.
+    */
+   static byte[] getErrorResponse(HttpException error) {
+      ResponseHeadEncoder response = new ResponseHeadEncoder();
+      response.status(error);
+      ValuesMap headers = error.getHeaders();
+      if (headers != null) {
+         for (String headerName : headers.keySet()) {
+            for (String value : headers.getAll(headerName)) {
+               response.header(headerName, value);
+            }
+         }
+      }
+      response.header(Headers.CONTENT_LENGTH, 0);
+      response.header(Headers.CONNECTION, "close");
+      response.end();
+      return response.toByteArray();
+   }
+
+   private boolean respondToRequest() throws IOException {
+      long startTime = System.currentTimeMillis();
+      long start = System.nanoTime();
+      HttpRequestImpl request;
+      try {
+         request = client.readRequest();
+      } catch (HttpException e) {
+         // The end of a malformed request cannot be known thus the connection is not reused
+         rejectRequest(e);
+         return false;
+      }
+      boolean keepAlive = isKeepAlive(request, client.countRequest());
 
-         String host = request.getHeaders().get(Headers.HOST);
-         if (host == null) {
-            host = String.format("localhost:%d", context.getPort());
+      String host = request.getHeaders().get(Headers.HOST);
+      if (host == null) {
+         host = "localhost:" + context.getPort();
+      }
+      if (client.isSecure()) {
+         // Tells the connection info the request was received through a secure connection
+         host = "https://" + host;
+      }
+      ConnectionInfo connection = new ConnectionInfo(client.getSocket(), host);
+      Exchange exchange = new Exchange(request, connection, keepAlive, startTime, start);
+
+      HttpResponse result;
+      try {
+         result = resolveRequest(request, connection);
+         request.detachContent(result instanceof SuspendedResponse);
+      } catch (RuntimeException | IOException e) {
+         releaseContent(exchange);
+         throw e;
+      }
+      return respondWith(exchange, result);
+   }
+
+   private boolean resumeRequest() throws IOException {
+      if (streaming != null) {
+         return continueEventStream();
+      }
+      Exchange exchange = pending;
+      SuspendedResponse response = suspended;
+      pending = null;
+      suspended = null;
+      Object result;
+      // Responders of the application may still read the content body when they run again
+      exchange.request.bindContent();
+      try {
+         result = response.getResult();
+      } catch (RuntimeException e) {
+         releaseContent(exchange);
+         throw e;
+      } finally {
+         RequestBody.unbind();
+      }
+      if (!(result instanceof HttpResponse)) {
+         releaseContent(exchange);
+         InternalServerError e = new InternalServerError("Unrecognised result type");
+         e.setConnectionInfo(exchange.connection);
+         throw e;
+      }
+      return respondWith(exchange, (HttpResponse) result);
+   }
+
+   private boolean respondWith(Exchange exchange, HttpResponse result) throws IOException {
+      if (result instanceof SuspendedResponse) {
+         // The connection is parked until the response is known and sent by another run of this job
+         suspended = (SuspendedResponse) result;
+         pending = exchange;
+         return exchange.keepAlive;
+      }
+      try {
+         if (result instanceof EventStream) {
+            return startEventStream(exchange, (EventStream) result);
          }
-         ConnectionInfo connection = new ConnectionInfo(socket, host);
+         return sendResponse(exchange, result);
+      } finally {
+         // Whatever is left of the content body is no longer needed once the response is sent
+         releaseContent(exchange);
+      }
+   }
 
-         HttpResponse result = resolveRequest(request, connection);
-         result.setConnectionInfo(connection);
+   private boolean sendResponse(Exchange exchange, HttpResponse result) throws IOException {
+      long handled = System.nanoTime();
+      HttpRequestImpl request = exchange.request;
+      ConnectionInfo connection = exchange.connection;
+      boolean keepAlive = exchange.keepAlive;
+      result.setConnectionInfo(connection);
 
+      AccessLog accessLog = context.getAccessLog();
+      if (accessLog == null) {
          log.info("\"%s\" %d %d \"%s\"", request, result.getStatusCode(),
                   result.getContentBody() != null ? result.getContentBody().available() : 0,
                   request.getHeaders().get(Headers.USER_AGENT));
+      }
+
+      HttpInputStream resultStream = result.getContentBody();
+      ResponseCompressor compressor = context.getCompressor();
+      String encoding = compressor != null ? compressor.negotiate(request, resultStream) : null;
+      boolean compressible = compressor != null && compressor.isCompressible(resultStream);
+      try (HttpInputStream originalStream = resultStream;
+               HttpInputStream contentStream = encoding != null
+                        ? compressor.compress(resultStream, encoding)
+                        : resultStream) {
+         long contentLength = contentStream != null ? contentStream.getContentLength() : 0;
+         boolean chunked = contentLength < 0 && HTTP_1_1.equals(request.getProtocol());
+         if (contentLength < 0 && !chunked || context.isDraining()) {
+            // The end of content of unknown length can only be signalled by closing the connection
+            // and connections are not reused once the application starts shutting down
+            keepAlive = false;
+         }
+         head.reset();
+         head.status(result);
+         processHeaders(result, contentStream, chunked);
+         if (encoding != null) {
+            head.header(Headers.CONTENT_ENCODING, encoding);
+         }
+         if (compressible) {
+            head.header(Headers.VARY, Headers.ACCEPT_ENCODING);
+         }
+         if (!keepAlive) {
+            head.header(Headers.CONNECTION, "close");
+         } else if (!HTTP_1_1.equals(request.getProtocol())) {
+            head.header(Headers.CONNECTION, "keep-alive");
+         }
+         head.end();
 
-         try (HttpInputStream contentStream = result.getContentBody()) {
-            StringBuilder response = new StringBuilder();
-            response.append("HTTP/1.1 ");
-            response.append(result.getStatusCode());
-            response.append(' ');
-            response.append(result.getStatusLabel());
-            response.append(CRLF);
-            processHeaders(result, contentStream, response);
-
-            OutputStream output = socket.getOutputStream();
-            output.write(response.toString().getBytes());
-            if (contentStream != null && contentStream.available() > 0) {
-               output.write(CRLF.getBytes());
+         OutputStream output = client.getOutputStream();
+         client.watch(Phase.WRITE);
+         head.writeTo(output);
+         long sent = 0;
+         if (contentStream != null && request.getMethod() != HttpMethod.HEAD) {
+            if (chunked) {
+               ChunkedOutputStream chunks = new ChunkedOutputStream(output);
+               contentStream.sendTo(chunks);
+               chunks.finish();
+               sent = chunks.getWrittenCount();
+            } else if (contentStream.getChannel() != null) {
+               client.sendFile(contentStream.getChannel(), contentLength);
+               sent = contentLength;
+            } else if (contentLength != 0) {
                contentStream.sendTo(output);
+               sent = contentLength;
             }
-            output.flush();
          }
-      } catch (Exception e) {
+         output.flush();
+         client.unwatch();
+         logAccess(exchange, result, sent, handled);
+      }
+      return keepAlive;
+   }
+
+   private boolean startEventStream(Exchange exchange, EventStream stream) throws IOException {
+      long handled = System.nanoTime();
+      if (context.getAccessLog() == null) {
+         log.info("\"%s\" %d %d \"%s\"", exchange.request, stream.getStatusCode(), 0,
+                  exchange.request.getHeaders().get(Headers.USER_AGENT));
+      }
+      // The length of a stream of events is only known when it ends
+      boolean chunked = HTTP_1_1.equals(exchange.request.getProtocol());
+      exchange.keepAlive = exchange.keepAlive && chunked && !context.isDraining();
+      head.reset();
+      head.status(stream);
+      head.date(DateClock.now());
+      head.header(Headers.CACHE_CONTROL, "no-cache");
+      head.header(Headers.CONTENT_TYPE, ContentType.EVENT_STREAM);
+      if (chunked) {
+         head.header(Headers.TRANSFER_ENCODING, "chunked");
+      }
+      if (!exchange.keepAlive) {
+         head.header(Headers.CONNECTION, "close");
+      }
+      head.end();
+
+      OutputStream output = client.getOutputStream();
+      client.watch(Phase.WRITE);
+      head.writeTo(output);
+      output.flush();
+      client.unwatch();
+      exchange.content = chunked ? new ChunkedOutputStream(output) : output;
+      exchange.handled = handled;
+      // The connection is parked between events, which are written by other runs of this job
+      streaming = stream;
+      pending = exchange;
+      return exchange.keepAlive;
+   }
+
+   private boolean continueEventStream() throws IOException {
+      Exchange exchange = pending;
+      EventStream stream = streaming;
+      pending = null;
+      client.watch(Phase.WRITE);
+      exchange.sent += stream.writeTo(exchange.content);
+      exchange.content.flush();
+      client.unwatch();
+      if (!stream.isFinished()) {
+         pending = exchange;
+         return exchange.keepAlive;
+      }
+      streaming = null;
+      if (exchange.content instanceof ChunkedOutputStream) {
+         client.watch(Phase.WRITE);
+         ((ChunkedOutputStream) exchange.content).finish();
+         client.unwatch();
+      }
+      logAccess(exchange, stream, exchange.sent, exchange.handled);
+      return exchange.keepAlive;
+   }
+
+   private void logAccess(Exchange exchange, HttpResponse result, long sent, long handled) {
+      AccessLog accessLog = context.getAccessLog();
+      if (accessLog != null) {
+         accessLog.log(new AccessLogEntry(exchange.startTime,
+                  exchange.connection.getRemoteAddress(), exchange.request,
+                  result.getStatusCode(), sent, handled - exchange.start,
+                  System.nanoTime() - exchange.start));
+      }
+   }
+
+   private void rejectRequest(HttpException error) throws IOException {
+      log.debug(error);
+      OutputStream output = client.getOutputStream();
+      client.watch(Phase.WRITE);
+      output.write(getErrorResponse(error));
+      output.flush();
+      client.unwatch();
+   }
+
+   private boolean isKeepAlive(HttpRequest request, int requestCount) {
+      if (context.isDraining() || context.getKeepAliveTimeout() <= 0
+               || requestCount >= context.getMaxKeepAliveRequests()) {
+         return false;
+      }
+      String[] values = request.getHeaders().getAll(Headers.CONNECTION);
+      if (values != null) {
+         for (String value : values) {
+            for (String token : value.split(",")) {
+               if ("close".equalsIgnoreCase(token.trim())) {
+                  return false;
+               } else if ("keep-alive".equalsIgnoreCase(token.trim())) {
+                  return true;
+               }
+            }
+         }
+      }
+      return HTTP_1_1.equals(request.getProtocol());
+   }
+
+   private void suspend() {
+      if (streaming != null) {
+         // Idle streams are probed as often as idle connections are reaped
+         int interval = context.getKeepAliveTimeout();
+         if (interval <= 0) {
+            interval = context.getTimeout();
+         }
+         long heartbeat = TimeUnit.SECONDS.toMillis(Math.max(1, interval));
+         streaming.resume(context.getResumeTimer(), heartbeat, this::resume);
+         return;
+      }
+      try {
+         long timeout = TimeUnit.SECONDS.toMillis(context.getTimeout());
+         suspended.resume(context.getResumeTimer(), timeout, this::resume);
+      } catch (RejectedExecutionException e) {
+         // The application is shutting down
          log.debug(e);
+         releaseContent(pending);
+         releaseConnection(false);
       }
    }
 
-   ApplicationRequestJob(ApplicationContext context, Socket client) {
-      this.log = context.getLogger();
-      this.context = context;
-      this.client = client;
+   private void resume() {
+      // Requests are resumed on the same executor they were dispatched to
+      ExecutionService executor = context.getExecutorFor(pending.request.getPath());
+      try {
+         executor.submit(this, "request");
+      } catch (RejectedExecutionException e) {
+         log.debug(e);
+         if (streaming != null) {
+            streaming.close();
+         } else {
+            releaseContent(pending);
+            if (!executor.isShutdown()) {
+               // Overloaded; tell the user agent instead of leaving it without a response
+               sendNow(new ServiceUnavailableException(getRetryAfter()));
+            }
+         }
+         releaseConnection(false);
+      }
+   }
+
+   private void sendNow(HttpException error) {
+      try {
+         client.sendNow(getErrorResponse(error));
+      } catch (IOException e) {
+         log.debug(e);
+      }
    }
 
-   private HttpResponse resolveRequest(HttpRequest request, ConnectionInfo connection) {
+   private void releaseContent(Exchange exchange) {
+      try {
+         exchange.request.releaseContent();
+      } catch (IOException e) {
+         log.debug(e);
+      }
+   }
+
+   private void releaseConnection(boolean keepAlive) {
+      try {
+         if (keepAlive) {
+            client.release();
+         } else {
+            client.close();
+         }
+      } catch (IOException e) {
+         log.debug(e);
+      }
+   }
+
+   private HttpResponse resolveRequest(HttpRequestImpl request, ConnectionInfo connection) {
       final ServiceMap services = context.getServices();
       services.putRequestValue(ConnectionInfo.class, Objects.requireNonNull(connection));
       services.putRequestValue(HttpRequest.class, Wrapper.wrap(request));
@@ -111,8 +535,26 @@ final class ApplicationRequestJob implements Runnable {
          identity = tokenManager.get(request);
       }
       services.putRequestValue(IIdentity.class, identity);
+      RequestDeadline deadline = new RequestDeadline(getDeadlineFor(route),
+               context::getDeadlineTimer);
+      services.putRequestValue(IDeadline.class, Wrapper.wrap(deadline));
       NextResponder chain = context.getFirstResponder();
-      Object result = chain.invoke();
+      Object result;
+      deadline.arm();
+      request.bindContent();
+      try {
+         result = chain.invoke();
+      } finally {
+         RequestBody.unbind();
+         deadline.disarm();
+      }
+      if (deadline.isExpired() && !(result instanceof GatewayTimeoutException)) {
+         log.debug("Request deadline expired: " + request);
+         if (result instanceof HttpResponse) {
+            closeQuietly(((HttpResponse) result).getContentBody());
+         }
+         result = new GatewayTimeoutException();
+      }
       if (result instanceof HttpResponse) {
          return (HttpResponse) result;
       } else {
@@ -122,51 +564,108 @@ final class ApplicationRequestJob implements Runnable {
       }
    }
 
-   private void processHeaders(HttpResponse result, HttpInputStream content, StringBuilder response)
-      throws IOException {
+   private int getDeadlineFor(RouteMatch route) {
+      if (route != null && !(route instanceof HttpException) && route.getMethod() != null) {
+         Deadline deadline = route.getMethod().getAnnotation(Deadline.class);
+         if (deadline == null && route.getResourceClass() != null) {
+            deadline = route.getResourceClass().getAnnotation(Deadline.class);
+         }
+         if (deadline != null) {
+            return deadline.value();
+         }
+      }
+      return context.getRequestDeadline();
+   }
+
+   private void closeQuietly(AutoCloseable closeable) {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         } catch (Exception e) {
+            log.debug(e);
+         }
+      }
+   }
+
+   private void processHeaders(HttpResponse result, HttpInputStream content, boolean chunked) {
       final ValuesMap headers = result.getHeaders();
       if (headers != null) {
          for (String headerName : headers.keySet()) {
             switch (headerName) {
+               case Headers.CONNECTION:
                case Headers.CONTENT_TYPE:
                case Headers.CONTENT_DISPOSITION:
                case Headers.CONTENT_ENCODING:
                case Headers.CONTENT_LENGTH:
+               case Headers.TRANSFER_ENCODING:
                   continue;
+               case Headers.DATE:
+                  for (String value : headers.getAll(headerName)) {
+                     head.date(value);
+                  }
+                  break;
                default:
                   String[] headerValues = headers.getAll(headerName);
                   for (String value : headerValues) {
-                     response.append(String.format("%s: %s%s", headerName, value, CRLF));
+                     head.header(headerName, value);
                   }
                   break;
             }
          }
       }
       if (content != null) {
-         response.append(Headers.CONTENT_TYPE);
-         response.append(": ");
-         response.append(content.getType());
+         head.name(Headers.CONTENT_TYPE);
+         head.value(content.getType());
          if (content.getEncoding() != null) {
-            response.append("; charset=\"");
-            response.append(content.getEncoding().name().toLowerCase());
-            response.append('"');
+            head.value("; charset=\"");
+            head.value(content.getEncoding().name().toLowerCase());
+            head.value("\"");
          }
-         response.append(CRLF);
+         head.endHeader();
 
-         response.append(Headers.CONTENT_LENGTH);
-         response.append(": ");
-         response.append(content.available());
-         response.append(CRLF);
+         long contentLength = content.getContentLength();
+         if (contentLength >= 0) {
+            head.header(Headers.CONTENT_LENGTH, contentLength);
+         } else if (chunked) {
+            head.header(Headers.TRANSFER_ENCODING, "chunked");
+         }
 
          if (content.getFilename() != null) {
-            response.append(Headers.CONTENT_DISPOSITION);
-            response.append(": ");
-            response.append(content.isDownloadable() ? "attachment" : "inline");
-            response.append("; filename=\"");
-            response.append(content.getFilename());
-            response.append('"');
-            response.append(CRLF);
+            head.name(Headers.CONTENT_DISPOSITION);
+            head.value(content.isDownloadable() ? "attachment" : "inline");
+            head.value("; filename=\"");
+            head.value(content.getFilename());
+            head.value("\"");
+            head.endHeader();
          }
+      } else if (mayHaveContent(result.getStatusCode())) {
+         head.header(Headers.CONTENT_LENGTH, 0);
+      }
+   }
+
+   private static boolean mayHaveContent(int statusCode) {
+      return statusCode >= 200 && statusCode != 204 && statusCode != 304;
+   }
+
+   private static final class Exchange {
+
+      private final HttpRequestImpl request;
+      private final ConnectionInfo connection;
+      private final long startTime;
+      private final long start;
+
+      private OutputStream content = null;
+      private boolean keepAlive;
+      private long handled;
+      private long sent = 0;
+
+      Exchange(HttpRequestImpl request, ConnectionInfo connection, boolean keepAlive,
+         long startTime, long start) {
+         this.request = request;
+         this.connection = connection;
+         this.keepAlive = keepAlive;
+         this.startTime = startTime;
+         this.start = start;
       }
    }
 }
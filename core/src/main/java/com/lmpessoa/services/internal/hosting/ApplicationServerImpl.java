@@ -22,6 +22,7 @@
  */
 package com.lmpessoa.services.internal.hosting;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
@@ -30,6 +31,7 @@ import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
@@ -39,6 +41,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -49,9 +52,12 @@ import com.lmpessoa.services.hosting.ConnectionInfo;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.IApplicationInfo;
 import com.lmpessoa.services.hosting.IApplicationOptions;
+import com.lmpessoa.services.hosting.IDeadline;
 import com.lmpessoa.services.hosting.IHostEnvironment;
 import com.lmpessoa.services.internal.ClassUtils;
 import com.lmpessoa.services.internal.Wrapper;
+import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.logging.AccessLog;
 import com.lmpessoa.services.internal.routing.RouteEntry;
 import com.lmpessoa.services.internal.routing.RouteTable;
 import com.lmpessoa.services.internal.serializing.Serializer;
@@ -123,7 +129,8 @@ public final class ApplicationServerImpl {
                         method.getDeclaringClass().getName(), method.getName(), paramTypes);
             }
          }
-         context = new ApplicationContext(this, settings.getHttpPort(), "http", routes);
+         String scheme = settings.isTlsEnabled() ? "https" : "http";
+         context = new ApplicationContext(this, settings.getHttpPort(), scheme, routes);
       }
       return context;
    }
@@ -224,6 +231,7 @@ public final class ApplicationServerImpl {
          services.putSupplier(HttpRequest.class, () -> null);
          services.putSupplier(RouteMatch.class, () -> null);
          services.putSupplier(IIdentity.class, () -> null);
+         services.putSupplier(IDeadline.class, () -> null);
       });
       logStartupMessage(settings.getStartupClass(), settings.getApplicationName());
    }
@@ -240,9 +248,13 @@ public final class ApplicationServerImpl {
          settings.getLogger().warning(e);
          Thread.currentThread().interrupt();
       }
-      settings.getMainExecutor().shutdown();
-      settings.getJobExecutor().shutdown();
+      shutdownExecutors();
       try {
+         AccessLog accessLog = settings.getAccessLog();
+         if (accessLog != null) {
+            accessLog.close();
+         }
+         settings.stopConnectionReaper();
          settings.getLogger().join();
       } catch (InterruptedException e) {
          settings.getLogger().warning(e);
@@ -254,6 +266,77 @@ public final class ApplicationServerImpl {
       }
    }
 
+   private void shutdownExecutors() {
+      ExecutionService mainExec = settings.getMainExecutor();
+      ExecutionService jobExec = settings.getJobExecutor();
+      if (mainExec != jobExec) {
+         // Requests in progress were already drained by the context
+         mainExec.shutdown(true);
+      }
+      long grace = TimeUnit.SECONDS.toNanos(settings.getShutdownGracePeriod());
+      long deadline = getContext().getStopTime() + grace;
+      AsyncShutdownPolicy policy = settings.getAsyncShutdownPolicy();
+      try {
+         switch (policy) {
+            case RECORD:
+               recordUnfinishedJobs(jobExec.getUnfinishedJobs());
+               jobExec.shutdown(true);
+               break;
+            case CANCEL:
+               jobExec.shutdown(true);
+               break;
+            case FINISH:
+            default:
+               jobExec.drain();
+               awaitJobs(jobExec, deadline);
+               break;
+         }
+         if (!jobExec.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+                  TimeUnit.NANOSECONDS)) {
+            settings.getLogger().warning("Grace period expired; interrupting %d async job(s)",
+                     jobExec.getActiveCount());
+            jobExec.shutdown(true);
+         }
+      } catch (InterruptedException e) {
+         settings.getLogger().warning(e);
+         Thread.currentThread().interrupt();
+      }
+      settings.getReservedExecutor().shutdown(true);
+      try {
+         // Results still retained will not be polled for anymore
+         jobExec.getResultStore().close();
+      } catch (IOException e) {
+         settings.getLogger().warning(e);
+      }
+   }
+
+   private void awaitJobs(ExecutionService executor, long deadline) throws InterruptedException {
+      int active;
+      while ((active = executor.getActiveCount()) > 0) {
+         long remaining = deadline - System.nanoTime();
+         if (remaining <= 0) {
+            return;
+         }
+         settings.getLogger().info("Waiting for %d async job(s) to finish", active);
+         executor.awaitTermination(Math.min(remaining, TimeUnit.SECONDS.toNanos(1)),
+                  TimeUnit.NANOSECONDS);
+      }
+   }
+
+   private void recordUnfinishedJobs(Collection<String> jobIds) {
+      if (jobIds.isEmpty()) {
+         return;
+      }
+      File file = settings.getUnfinishedJobsFile();
+      try {
+         Files.write(file.toPath(), jobIds, StandardCharsets.UTF_8);
+         settings.getLogger().info("Cancelled %d unfinished async job(s); identifiers saved to %s",
+                  jobIds.size(), file.getAbsolutePath());
+      } catch (IOException e) {
+         settings.getLogger().error(e);
+      }
+   }
+
    private void logStartupMessage(Class<?> startupClass, String appName) {
       StringBuilder message = new StringBuilder();
       message.append("Starting application");
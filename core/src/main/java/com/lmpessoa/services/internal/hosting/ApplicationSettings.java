@@ -23,9 +23,13 @@
 package com.lmpessoa.services.internal.hosting;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,11 +41,17 @@ import java.util.Map;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import javax.net.ssl.SSLContext;
+
 import com.lmpessoa.services.hosting.ConnectionInfo;
 import com.lmpessoa.services.hosting.IHostEnvironment;
 import com.lmpessoa.services.internal.ClassUtils;
 import com.lmpessoa.services.internal.Property;
 import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.concurrent.FileResultStore;
+import com.lmpessoa.services.internal.concurrent.ResultStore;
+import com.lmpessoa.services.internal.logging.AccessLog;
+import com.lmpessoa.services.internal.logging.AccessLogFormat;
 import com.lmpessoa.services.internal.logging.ConsoleHandler;
 import com.lmpessoa.services.internal.logging.FileHandler;
 import com.lmpessoa.services.internal.logging.Logger;
@@ -65,6 +75,12 @@ class ApplicationSettings {
 
    private ExecutionService mainExec;
    private ExecutionService jobExec;
+   private ExecutionService reservedExec;
+   private ResponseCompressor compressor;
+   private BufferPool bufferPool;
+   private ConnectionReaper reaper;
+   private AccessLog accessLog;
+   private volatile boolean accessLogChecked = false;
    private IHostEnvironment env;
    private Logger log;
 
@@ -117,26 +133,115 @@ class ApplicationSettings {
       return env;
    }
 
-   ExecutionService getMainExecutor() {
+   synchronized ExecutionService getMainExecutor() {
       if (mainExec == null) {
          int limit = getProperty("limits.requests").getIntValueOrDefault(0);
-         mainExec = new ExecutionService(limit, getLogger());
+         mainExec = new ExecutionService(limit, getLogger(), useVirtualThreads());
+         mainExec.setMaxQueueSize(getMaxQueueSize());
       }
       return mainExec;
    }
 
-   ExecutionService getJobExecutor() {
+   synchronized ExecutionService getReservedExecutor() {
+      if (reservedExec == null) {
+         reservedExec = new ExecutionService(0, getLogger(), useVirtualThreads());
+      }
+      return reservedExec;
+   }
+
+   synchronized ExecutionService getJobExecutor() {
       if (jobExec == null) {
          Property prop = getProperty("limits.async");
          if (!prop.isEmpty() && prop.getIntValueOrDefault(0) > 0) {
-            jobExec = new ExecutionService(prop.getIntValue(), getLogger());
+            jobExec = new ExecutionService(prop.getIntValue(), getLogger(), useVirtualThreads());
          } else {
             jobExec = getMainExecutor();
          }
+         jobExec.setResultStore(createResultStore());
       }
       return jobExec;
    }
 
+   boolean useVirtualThreads() {
+      String mode = getProperty("server.execution").getValueOrDefault("pool");
+      if (!"virtual".equalsIgnoreCase(mode)) {
+         return false;
+      }
+      if (!ExecutionService.isVirtualThreadSupported()) {
+         getLogger().warning("Virtual threads are not supported by this runtime; using a pool");
+         return false;
+      }
+      return true;
+   }
+
+   synchronized ResponseCompressor getCompressor() {
+      if (compressor == null) {
+         int threshold = getProperty("server.compression.threshold").getIntValueOrDefault(1024);
+         compressor = new ResponseCompressor(threshold);
+      }
+      return compressor;
+   }
+
+   AccessLog getAccessLog() {
+      if (!accessLogChecked) {
+         createAccessLog();
+      }
+      return accessLog;
+   }
+
+   synchronized BufferPool getBufferPool() {
+      if (bufferPool == null) {
+         bufferPool = new BufferPool(getProperty("server.buffers").getIntValueOrDefault(512));
+      }
+      return bufferPool;
+   }
+
+   synchronized ConnectionReaper getConnectionReaper() {
+      if (reaper == null) {
+         int timeout = getRequestTimeout();
+         reaper = new ConnectionReaper(
+                  getProperty("server.timeout.header").getIntValueOrDefault(30),
+                  getProperty("server.timeout.body").getIntValueOrDefault(timeout),
+                  getKeepAliveTimeout(),
+                  getProperty("server.timeout.write").getIntValueOrDefault(timeout));
+      }
+      return reaper;
+   }
+
+   synchronized void stopConnectionReaper() throws InterruptedException {
+      // Connections may never have been watched
+      if (reaper != null) {
+         reaper.stop();
+      }
+   }
+
+   boolean isTlsEnabled() {
+      return getProperty("server.tls.keystore").getValue() != null;
+   }
+
+   TlsContext getTlsContext() throws IOException {
+      String keyStore = getProperty("server.tls.keystore").getValue();
+      if (keyStore == null) {
+         return null;
+      }
+      String password = getProperty("server.tls.password").getValueOrDefault("");
+      String keyPassword = getProperty("server.tls.keypass").getValue();
+      try {
+         SSLContext context = TlsContext.createContext(new File(keyStore),
+                  getProperty("server.tls.type").getValue(), password.toCharArray(),
+                  keyPassword != null ? keyPassword.toCharArray() : null);
+         TlsContext result = new TlsContext(context,
+                  getListProperty("server.tls.protocols", "TLSv1.3, TLSv1.2"),
+                  getListProperty("server.tls.ciphers", null));
+         result.setSessionCache(
+                  getProperty("server.tls.sessions.size").getIntValueOrDefault(20480),
+                  getProperty("server.tls.sessions.timeout").getIntValueOrDefault(86400));
+         return result;
+      } catch (GeneralSecurityException | IllegalArgumentException e) {
+         throw new IOException("Could not set up TLS: " + e.getMessage(), e);
+      }
+   }
+
    IValidationService getValidationService() {
       return ValidationService.instance();
    }
@@ -165,10 +270,133 @@ class ApplicationSettings {
       return getProperty("server.port").getIntValueOrDefault(5617);
    }
 
+   InetAddress[] getBindAddresses() {
+      String value = getProperty("server.address").getValue();
+      List<InetAddress> result = new ArrayList<>();
+      if (value != null) {
+         for (String address : value.split(",")) {
+            address = address.trim();
+            try {
+               if ("*".equals(address)) {
+                  result.add(InetAddress.getByAddress(new byte[4]));
+               } else if (!address.isEmpty()) {
+                  result.add(InetAddress.getByName(address));
+               }
+            } catch (UnknownHostException e) {
+               getLogger().error(e);
+            }
+         }
+      }
+      if (result.isEmpty()) {
+         result.add(InetAddress.getLoopbackAddress());
+      }
+      return result.toArray(new InetAddress[0]);
+   }
+
+   int getAcceptQueueSize() {
+      return getProperty("server.backlog").getIntValueOrDefault(1024);
+   }
+
+   int getAcceptorCount() {
+      return getProperty("server.acceptors").getIntValueOrDefault(1);
+   }
+
+   int getMaxQueueSize() {
+      return Math.max(0, getProperty("limits.queue.size").getIntValueOrDefault(0));
+   }
+
+   int getMaxQueueWait() {
+      return getProperty("limits.queue.wait").getIntValueOrDefault(0);
+   }
+
+   int getShutdownGracePeriod() {
+      return getProperty("shutdown.grace").getIntValueOrDefault(30);
+   }
+
+   AsyncShutdownPolicy getAsyncShutdownPolicy() {
+      String value = getProperty("shutdown.async").getValueOrDefault("finish");
+      try {
+         return AsyncShutdownPolicy.valueOf(value.trim().toUpperCase());
+      } catch (IllegalArgumentException e) {
+         getLogger().warning("Unknown shutdown policy for async jobs '%s'; using 'finish'", value);
+         return AsyncShutdownPolicy.FINISH;
+      }
+   }
+
+   File getUnfinishedJobsFile() {
+      return new File(getProperty("shutdown.file").getValueOrDefault("unfinished-jobs.txt"));
+   }
+
+   int getIoThreadCount() {
+      int defaultCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      return getProperty("server.threads").getIntValueOrDefault(defaultCount);
+   }
+
    int getRequestTimeout() {
       return getProperty("limits.timeout").getIntValueOrDefault(115);
    }
 
+   int getRequestDeadline() {
+      return getProperty("limits.deadline").getIntValueOrDefault(0);
+   }
+
+   int getMaxHeaderSize() {
+      return getProperty("limits.header")
+               .getIntValueOrDefault(HttpRequestParser.DEFAULT_MAX_HEAD_SIZE);
+   }
+
+   int getContentMemoryLimit() {
+      return getProperty("limits.memory")
+               .getIntValueOrDefault(HttpRequestParser.DEFAULT_MEMORY_LIMIT);
+   }
+
+   int getKeepAliveTimeout() {
+      return getProperty("server.keepalive.timeout").getIntValueOrDefault(15);
+   }
+
+   int getMaxKeepAliveRequests() {
+      return getProperty("server.keepalive.requests").getIntValueOrDefault(100);
+   }
+
+   private synchronized void createAccessLog() {
+      if (!accessLogChecked) {
+         String filename = getProperty("access.file").getValue();
+         if (filename != null) {
+            String value = getProperty("access.format").getValueOrDefault("combined");
+            AccessLogFormat format;
+            try {
+               format = AccessLogFormat.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+               getLogger().warning("Unknown access log format '%s'; using 'combined'", value);
+               format = AccessLogFormat.COMBINED;
+            }
+            int capacity = getProperty("access.buffer").getIntValueOrDefault(8192);
+            accessLog = new AccessLog(new File(filename), format, capacity);
+         }
+         accessLogChecked = true;
+      }
+   }
+
+   private ResultStore createResultStore() {
+      String path = getProperty("async.results.path").getValue();
+      if (path == null) {
+         return ResultStore.MEMORY;
+      }
+      int threshold = getProperty("async.results.threshold").getIntValueOrDefault(65536);
+      return new FileResultStore(new File(path), threshold);
+   }
+
+   private String[] getListProperty(String propertyName, String defaultValue) {
+      String value = getProperty(propertyName).getValueOrDefault(defaultValue);
+      if (value == null) {
+         return null;
+      }
+      return Arrays.stream(value.split(","))
+               .map(String::trim)
+               .filter(s -> !s.isEmpty())
+               .toArray(String[]::new);
+   }
+
    private Property getProperty(String propertyName) {
       return settings != null ? settings.get(propertyName) : Property.EMPTY;
    }
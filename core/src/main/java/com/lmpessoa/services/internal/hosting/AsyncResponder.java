@@ -24,21 +24,36 @@ package com.lmpessoa.services.internal.hosting;
 
 import static com.lmpessoa.services.routing.HttpMethod.DELETE;
 import static com.lmpessoa.services.routing.HttpMethod.GET;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.lmpessoa.services.ContentType;
 import com.lmpessoa.services.ForbiddenException;
+import com.lmpessoa.services.HttpInputStream;
 import com.lmpessoa.services.MethodNotAllowedException;
+import com.lmpessoa.services.NotAcceptableException;
 import com.lmpessoa.services.NotFoundException;
 import com.lmpessoa.services.UnauthorizedException;
 import com.lmpessoa.services.concurrent.Async;
@@ -47,20 +62,31 @@ import com.lmpessoa.services.concurrent.AsyncRequest;
 import com.lmpessoa.services.concurrent.IAsyncRequestMatcher;
 import com.lmpessoa.services.concurrent.NotAsync;
 import com.lmpessoa.services.hosting.ConnectionInfo;
+import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.NextResponder;
+import com.lmpessoa.services.hosting.ValuesMap;
 import com.lmpessoa.services.internal.concurrent.DefaultRequestMatcher;
 import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.concurrent.JobListener;
 import com.lmpessoa.services.internal.concurrent.RejectRequestMatcher;
+import com.lmpessoa.services.internal.serializing.Serializer;
 import com.lmpessoa.services.routing.HttpMethod;
 import com.lmpessoa.services.routing.RouteMatch;
 import com.lmpessoa.services.security.IIdentity;
 
 final class AsyncResponder {
 
+   private static final String JOB = "job";
+   private static final String PROGRESS_EVENT = "progress";
+   private static final String STATUS_EVENT = "status";
+   private static final String WAIT = "wait";
+   private static final long MAX_WAIT = 60;
+
    private static ExecutionService executor;
 
-   private final Map<UUID, AsyncRequest> routes = new HashMap<>();
+   // Jobs are also forgotten by the thread sending status events
+   private final Map<UUID, AsyncRequest> routes = new ConcurrentHashMap<>();
    private final ApplicationOptions options;
    private final NextResponder next;
 
@@ -78,6 +104,9 @@ final class AsyncResponder {
       if (executor != null) {
          final String feedbackPath = options.getFeedbakcPath();
          if (request.getPath().startsWith(feedbackPath)) {
+            if (acceptsEventStream(request)) {
+               return respondToEventStream(request, feedbackPath, connect);
+            }
             return respondToStatusRequest(request, feedbackPath, identity, connect);
          }
          if (route != null && !(route instanceof HttpException)) {
@@ -140,6 +169,12 @@ final class AsyncResponder {
       } else {
          job = route::invoke;
       }
+      RequestBody body = RequestBody.current();
+      if (job != null && body != null) {
+         // The job may still read the content body after the request is over
+         body.retain();
+         job = closeAfter(job, body);
+      }
       UUID id = UUID.fromString(executor.submit(job));
       routes.put(id, new AsyncRequestImpl(identity, route));
       return RedirectImpl.accepted(asyncPath + id);
@@ -161,8 +196,29 @@ final class AsyncResponder {
       if (result == null) {
          throw new NotFoundException();
       }
+      long wait = method == GET && !result.isDone() ? getWaitTime(request) : 0;
+      CompletionStage<?> done = wait > 0 ? executor.whenDone(id.toString()) : null;
+      if (done != null) {
+         // Parks the request until the job is done instead of having the user agent poll again
+         return new SuspendedResponse(done, wait,
+                  () -> respondToStatusRequest(id, request, identity, connect));
+      }
+      return respondToStatusRequest(id, request, identity, connect);
+   }
+
+   private Object respondToStatusRequest(UUID id, HttpRequest request, IIdentity identity,
+      ConnectionInfo connect) {
+      HttpMethod method = request.getMethod();
+      Future<?> result = executor.get(id.toString());
+      if (result == null) {
+         throw new NotFoundException();
+      }
       if (result.isDone()) {
          routes.remove(id);
+         HttpInputStream stored = openStoredResult(id, request);
+         if (stored != null) {
+            return stored;
+         }
          try {
             Object obj = result.get();
             if (obj instanceof RedirectImpl) {
@@ -177,7 +233,8 @@ final class AsyncResponder {
             Thread.currentThread().interrupt();
          }
       } else if (method == DELETE) {
-         IIdentity requester = routes.get(id).getIdentity();
+         AsyncRequest queued = routes.get(id);
+         IIdentity requester = queued != null ? queued.getIdentity() : null;
          if (requester != null) {
             if (identity == null) {
                throw new UnauthorizedException();
@@ -191,6 +248,161 @@ final class AsyncResponder {
       return result;
    }
 
+   private Object respondToEventStream(HttpRequest request, String asyncPath,
+      ConnectionInfo connect) {
+      if (request.getMethod() != GET) {
+         throw new MethodNotAllowedException();
+      }
+      // A single stream may watch the job in its path and any number of jobs in its query
+      Set<UUID> ids = new LinkedHashSet<>();
+      String path = request.getPath().substring(asyncPath.length());
+      String[] query = request.getQuery() != null ? request.getQuery().getAll(JOB) : null;
+      try {
+         if (!path.isEmpty()) {
+            ids.add(UUID.fromString(path));
+         }
+         if (query != null) {
+            for (String id : query) {
+               ids.add(UUID.fromString(id));
+            }
+         }
+      } catch (IllegalArgumentException e) {
+         throw new NotFoundException();
+      }
+      if (ids.isEmpty() || ids.stream().anyMatch(id -> executor.get(id.toString()) == null)) {
+         throw new NotFoundException();
+      }
+      EventStream stream = new EventStream();
+      AtomicInteger remaining = new AtomicInteger(ids.size());
+      JobListener listener = new JobListener() {
+
+         @Override
+         public void statusChanged(String jobId, String status, boolean done) {
+            stream.send(STATUS_EVENT, () -> getStatusEvent(jobId, status, done, connect));
+            if (done && remaining.decrementAndGet() == 0) {
+               stream.close();
+            }
+         }
+
+         @Override
+         public void progressChanged(String jobId, double progress) {
+            // Only the latest progress of each job is worth sending
+            stream.send(PROGRESS_EVENT, jobId,
+                     () -> String.format("{\"job\":\"%s\",\"progress\":%s}", jobId, progress));
+         }
+      };
+      for (UUID id : ids) {
+         // Jobs purged in the meantime have nothing left to report
+         if (!executor.watch(id.toString(), listener) && remaining.decrementAndGet() == 0) {
+            stream.close();
+         }
+      }
+      return stream;
+   }
+
+   private String getStatusEvent(String jobId, String status, boolean done,
+      ConnectionInfo connect) {
+      String result = String.format("{\"job\":\"%s\",\"status\":\"%s\"", jobId, status);
+      Future<?> job = done ? executor.get(jobId) : null;
+      if (job == null) {
+         return result + "}";
+      }
+      routes.remove(UUID.fromString(jobId));
+      try (InputStream stored = executor.openResult(jobId)) {
+         if (stored != null) {
+            // Large results are fetched from the status of the job instead
+            return result + "}";
+         }
+      } catch (IOException e) {
+         return result + "}";
+      }
+      try {
+         Object value = job.get();
+         if (value instanceof RedirectImpl) {
+            value = ((RedirectImpl) value).getUrl(connect);
+         }
+         if (value instanceof URL) {
+            return String.format("%s,\"location\":\"%s\"}", result, value);
+         }
+      } catch (ExecutionException | CancellationException | MalformedURLException e) {
+         // Serialised below as the status of the job
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      // Same as the status of the job but identified by its ID
+      ByteArrayOutputStream json = new ByteArrayOutputStream();
+      try (HttpInputStream content = Serializer.fromObject(job,
+               new String[] { ContentType.JSON }, new Locale[0])) {
+         content.sendTo(json);
+      } catch (IOException e) {
+         throw new InternalServerError(e);
+      }
+      return String.format("{\"job\":\"%s\",%s", jobId,
+               new String(json.toByteArray(), UTF_8).substring(1));
+   }
+
+   private long getWaitTime(HttpRequest request) {
+      // Accepts both the query parameter and the preference defined in RFC 7240
+      String value = request.getQuery() != null ? request.getQuery().get(WAIT) : null;
+      if (value == null && request.getHeaders() != null
+               && request.getHeaders().contains(Headers.PREFER)) {
+         for (String header : request.getHeaders().getAll(Headers.PREFER)) {
+            for (String preference : header.split(",")) {
+               String[] parts = preference.split(";")[0].split("=", 2);
+               if (parts.length == 2 && WAIT.equalsIgnoreCase(parts[0].trim())) {
+                  value = parts[1].trim().replace("\"", "");
+               }
+            }
+         }
+      }
+      if (value == null) {
+         return 0;
+      }
+      try {
+         return TimeUnit.SECONDS.toMillis(Math.min(Math.max(Long.parseLong(value), 0), MAX_WAIT));
+      } catch (NumberFormatException e) {
+         // An invalid wait is ignored and the status of the job is returned right away
+         return 0;
+      }
+   }
+
+   private static boolean acceptsEventStream(HttpRequest request) {
+      ValuesMap headers = request.getHeaders();
+      if (headers == null || !headers.contains(Headers.ACCEPT)) {
+         return false;
+      }
+      return Arrays.stream(headers.getAll(Headers.ACCEPT))
+               .flatMap(value -> Arrays.stream(value.split(",")))
+               .anyMatch(type -> ContentType.EVENT_STREAM.equals(type.split(";")[0].trim()));
+   }
+
+   private static boolean acceptsJson(HttpRequest request) {
+      ValuesMap headers = request.getHeaders();
+      if (headers == null || !headers.contains(Headers.ACCEPT)) {
+         return true;
+      }
+      return Arrays.stream(headers.getAll(Headers.ACCEPT))
+               .flatMap(value -> Arrays.stream(value.split(",")))
+               .map(type -> type.split(";")[0].trim())
+               .anyMatch(type -> ContentType.JSON.equals(type) || "application/*".equals(type)
+                        || "*/*".equals(type));
+   }
+
+   private HttpInputStream openStoredResult(UUID id, HttpRequest request) {
+      try {
+         // Large results are streamed as they were stored instead of being read back into memory
+         InputStream stored = executor.openResult(id.toString());
+         if (stored != null && !acceptsJson(request)) {
+            // Results are stored already serialised as JSON and thus cannot be negotiated
+            stored.close();
+            throw new NotAcceptableException();
+         }
+         return stored != null ? new HttpInputStream(stored, ContentType.JSON, UTF_8) : null;
+      } catch (IOException e) {
+         throw new InternalServerError(e);
+      }
+   }
+
    private boolean isCallableResult(RouteMatch match) {
       Method method = match.getMethod();
       if (method == null) {
@@ -200,6 +412,24 @@ final class AsyncResponder {
       return result == Callable.class || result == Runnable.class;
    }
 
+   private static <T> Callable<T> closeAfter(Callable<T> job, RequestBody body) {
+      return () -> {
+         try {
+            return job.call();
+         } finally {
+            closeQuietly(body);
+         }
+      };
+   }
+
+   private static void closeQuietly(RequestBody body) {
+      try {
+         body.close();
+      } catch (IOException e) {
+         // The result of the job does not depend on it
+      }
+   }
+
    private static class AsyncRequestImpl implements AsyncRequest {
 
       private final IIdentity identity;
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+/**
+ * Defines what happens to asynchronous jobs when the application server shuts down.
+ */
+enum AsyncShutdownPolicy {
+   /**
+    * Running and queued jobs are allowed to finish within the grace period.
+    */
+   FINISH,
+   /**
+    * Queued jobs are cancelled and running jobs are interrupted.
+    */
+   CANCEL,
+   /**
+    * Like {@link #CANCEL} but the identifiers of jobs that did not finish are also recorded to a
+    * file.
+    *
+    * <p>
+    * Jobs are not persisted nor resubmitted when the application starts again. The recorded
+    * identifiers only tell which jobs were lost (i.e. to be matched against logs or to notify those
+    * waiting for them).
+    * </p>
+    */
+   RECORD;
+}
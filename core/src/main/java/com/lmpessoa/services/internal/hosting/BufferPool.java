@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.lmpessoa.services.internal.concurrent.ExecutionService;
+
+/**
+ * Keeps direct byte buffers to be reused by connections for reading requests and writing responses.
+ *
+ * <p>
+ * Direct buffers are expensive to allocate and are only reclaimed after the garbage collector
+ * notices they are no longer referenced. Socket channels also copy the contents of heap buffers
+ * into a temporary direct buffer on each read or write. Reusing direct buffers avoids both costs.
+ * </p>
+ *
+ * <p>
+ * Each platform thread keeps a few buffers of its own, which can be reused without any
+ * synchronisation. Buffers beyond these are kept in a pool shared by all threads up to a maximum
+ * number of buffers; any buffer released when the pool is full is left to the garbage collector.
+ * Virtual threads never keep buffers of their own since they are not reused.
+ * </p>
+ */
+final class BufferPool {
+
+   static final int BUFFER_SIZE = 8192;
+
+   private static final int THREAD_CACHE_SIZE = 4;
+
+   private final ThreadLocal<Deque<ByteBuffer>> cache = ThreadLocal.withInitial(
+            () -> ExecutionService.isVirtualThread(Thread.currentThread()) ? null
+                     : new ArrayDeque<>(THREAD_CACHE_SIZE));
+   private final Queue<ByteBuffer> shared = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger pooled = new AtomicInteger();
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+   private final int capacity;
+
+   /**
+    * Creates a new buffer pool.
+    *
+    * @param capacity the maximum number of buffers kept in the shared pool.
+    */
+   BufferPool(int capacity) {
+      this.capacity = Math.max(capacity, 0);
+   }
+
+   /**
+    * Returns a buffer ready to be written to.
+    *
+    * <p>
+    * The returned buffer is either a buffer previously released to this pool or a newly allocated
+    * buffer if no buffer is available. Buffers should be released back to this pool once they are
+    * no longer used.
+    * </p>
+    *
+    * @return a buffer ready to be written to.
+    */
+   ByteBuffer acquire() {
+      Deque<ByteBuffer> local = cache.get();
+      ByteBuffer result = local == null ? null : local.pollFirst();
+      if (result == null) {
+         result = shared.poll();
+         if (result != null) {
+            pooled.decrementAndGet();
+         }
+      }
+      if (result == null) {
+         misses.increment();
+         return ByteBuffer.allocateDirect(BUFFER_SIZE);
+      }
+      hits.increment();
+      result.clear();
+      return result;
+   }
+
+   /**
+    * Releases the given buffer to be reused.
+    *
+    * <p>
+    * The given buffer must not be used after it is released. Buffers that were not acquired from a
+    * buffer pool are ignored.
+    * </p>
+    *
+    * @param buffer the buffer to be released.
+    */
+   void release(ByteBuffer buffer) {
+      if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+         return;
+      }
+      buffer.clear();
+      Deque<ByteBuffer> local = cache.get();
+      if (local != null && local.size() < THREAD_CACHE_SIZE) {
+         local.addFirst(buffer);
+      } else if (pooled.incrementAndGet() <= capacity) {
+         shared.add(buffer);
+      } else {
+         pooled.decrementAndGet();
+      }
+   }
+
+   /**
+    * Returns the maximum number of buffers kept in the shared pool.
+    *
+    * @return the maximum number of buffers kept in the shared pool.
+    */
+   int getCapacity() {
+      return capacity;
+   }
+
+   /**
+    * Returns the number of buffers currently available in the shared pool.
+    *
+    * <p>
+    * Buffers kept by each thread are not accounted for.
+    * </p>
+    *
+    * @return the number of buffers currently available in the shared pool.
+    */
+   int getPooledCount() {
+      return pooled.get();
+   }
+
+   /**
+    * Returns the number of times a buffer was reused by this pool.
+    *
+    * @return the number of times a buffer was reused by this pool.
+    */
+   long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of times a buffer had to be allocated by this pool.
+    *
+    * @return the number of times a buffer had to be allocated by this pool.
+    */
+   long getMissCount() {
+      return misses.sum();
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%d hit(s), %d miss(es), %d of %d pooled buffer(s)", getHitCount(),
+               getMissCount(), getPooledCount(), getCapacity());
+   }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.lmpessoa.services.internal.hosting.ConnectionReaper.Phase;
+
+/**
+ * Represents a connection accepted through a non-blocking socket channel.
+ *
+ * <p>
+ * Bytes received through this connection are parsed as they arrive by the I/O thread that owns the
+ * selector this connection is registered with until the head of a request is available. Only then
+ * the request is handed to a request job which reads the content body of the request, if any, and
+ * writes the response directly through the channel.
+ * </p>
+ *
+ * <p>
+ * When a connection is kept alive, any bytes received beyond the current request are retained so
+ * pipelined requests can be served in order without returning the connection to the selector.
+ * </p>
+ *
+ * <p>
+ * Buffers used to read from and write to the channel are borrowed from a pool of buffers only while
+ * they are needed. Thus connections waiting for a request to arrive hold no buffer at all.
+ * </p>
+ *
+ * <p>
+ * Bytes are moved between these buffers and the channel by a {@link ChannelTransport}, which
+ * encrypts and decrypts them if the application context requires connections to be secure.
+ * </p>
+ */
+final class ChannelConnection extends ClientConnection {
+
+   private final ChannelOutputStream output = new ChannelOutputStream();
+   private final AtomicBoolean closed = new AtomicBoolean(false);
+   private final HttpRequestParser parser;
+   private final ConnectionSelector owner;
+   private final ChannelTransport transport;
+   private final SocketChannel channel;
+   private final SelectionKey key;
+   private final BufferPool pool;
+   private final long timeout;
+
+   private volatile Selector waitSelector = null;
+   private ByteBuffer buffer = null;
+
+   ChannelConnection(ConnectionSelector owner, SelectionKey key, ApplicationContext context) {
+      super(context.getConnectionReaper());
+      this.owner = Objects.requireNonNull(owner);
+      this.key = Objects.requireNonNull(key);
+      this.channel = (SocketChannel) key.channel();
+      TlsContext tls = context.getTlsContext();
+      this.transport = tls != null ? new TlsTransport(channel, tls.createEngine())
+               : new ChannelTransport(channel);
+      this.pool = context.getBufferPool();
+      this.parser = new HttpRequestParser(context.getMaxHeaderSize(),
+               context.getContentMemoryLimit());
+      this.timeout = context.getTimeout() * 1000L;
+   }
+
+   @Override
+   public void close() throws IOException {
+      unwatch();
+      key.cancel();
+      try {
+         transport.close();
+      } finally {
+         try {
+            if (waitSelector != null) {
+               waitSelector.close();
+            }
+         } finally {
+            if (closed.compareAndSet(false, true)) {
+               pool.release(buffer);
+               pool.release(output.buffer);
+               buffer = null;
+               output.buffer = null;
+            }
+            owner.connectionClosed();
+         }
+      }
+   }
+
+   @Override
+   Socket getSocket() {
+      return channel.socket();
+   }
+
+   @Override
+   HttpRequestImpl readRequest() {
+      HttpRequestImpl result = parser.getRequest(new ChannelInputStream());
+      startBody(parser.getContentLength());
+      return result;
+   }
+
+   @Override
+   OutputStream getOutputStream() {
+      return output;
+   }
+
+   @Override
+   void sendFile(FileChannel file, long count) throws IOException {
+      if (transport.isSecure()) {
+         // Contents of the file must be encrypted thus cannot be sent directly
+         super.sendFile(file, count);
+         return;
+      }
+      output.flush();
+      long position = file.position();
+      long end = position + count;
+      while (position < end) {
+         long sent = file.transferTo(position, end - position, channel);
+         if (sent == 0) {
+            if (position >= file.size()) {
+               throw new EOFException();
+            }
+            await(SelectionKey.OP_WRITE);
+         } else {
+            progressed();
+         }
+         position += sent;
+      }
+      file.position(position);
+   }
+
+   @Override
+   void sendNow(byte[] response) throws IOException {
+      // Any bytes that cannot be sent immediately are discarded
+      transport.write(ByteBuffer.wrap(response));
+      transport.flush();
+   }
+
+   @Override
+   boolean hasPendingRequest() throws IOException {
+      parser.reset();
+      if (transport.hasBufferedInput()) {
+         // Pipelined requests may not have been moved to the buffer of the connection yet
+         fill();
+      }
+      return buffer != null && hasRequest();
+   }
+
+   @Override
+   String getRequestPath() {
+      return parser.getPath();
+   }
+
+   @Override
+   boolean isSecure() {
+      return transport.isSecure();
+   }
+
+   @Override
+   void release() {
+      if (buffer != null && buffer.position() == 0) {
+         pool.release(buffer);
+         buffer = null;
+      }
+      transport.release();
+      owner.resume(this);
+   }
+
+   @Override
+   void expire(Phase phase) {
+      if (phase == Phase.IDLE || phase == Phase.HEADER) {
+         // Connections waiting for a request belong to the selector thread
+         owner.expire(this);
+      } else if (isOverdue()) {
+         timedOut(phase);
+         abort();
+      }
+   }
+
+   SelectionKey getKey() {
+      return key;
+   }
+
+   /**
+    * Starts watching the time this connection waits for the next request.
+    *
+    * <p>
+    * Connections which have not received any part of a request are subject to the idle timeout of
+    * persistent connections while connections which received only part of a request are subject to
+    * the header timeout instead.
+    * </p>
+    */
+   void awaitRequest() {
+      watch(parser.hasStarted() ? Phase.HEADER : Phase.IDLE);
+   }
+
+   /**
+    * Reads from the channel whatever bytes are available without blocking.
+    *
+    * @return the number of bytes read, or {@code -1} if the user agent closed the connection.
+    * @throws IOException if an I/O error occurs while reading from the channel.
+    */
+   int fill() throws IOException {
+      int result = transport.read(getBuffer());
+      if (result > 0 && getWatchedPhase() == Phase.IDLE) {
+         watch(Phase.HEADER);
+      }
+      return result;
+   }
+
+   /**
+    * Returns whether bytes already received can be read without waiting for the channel.
+    *
+    * @return {@code true} if bytes can be read without waiting for the channel, {@code false}
+    *         otherwise.
+    */
+   boolean hasBufferedInput() {
+      return transport.hasBufferedInput();
+   }
+
+   /**
+    * Returns the operations the selector must wait for before this connection can make progress
+    * on receiving a request.
+    *
+    * @return the operations the selector must wait for.
+    */
+   int getInterestOps() {
+      return transport.getWaitOperation();
+   }
+
+   /**
+    * Returns whether the head of a request was already received through this connection.
+    *
+    * @return {@code true} if a request is available to be read, {@code false} otherwise.
+    */
+   boolean hasRequest() {
+      ByteBuffer buffer = getBuffer();
+      buffer.flip();
+      try {
+         return parser.parse(buffer);
+      } finally {
+         buffer.compact();
+      }
+   }
+
+   private ByteBuffer getBuffer() {
+      if (buffer == null) {
+         buffer = pool.acquire();
+      }
+      return buffer;
+   }
+
+   private void abort() {
+      try {
+         // Buffers are only released by the thread that owns the connection once it fails
+         channel.close();
+      } catch (IOException e) {
+         // Nothing else to be done here
+      }
+      Selector selector = waitSelector;
+      if (selector != null) {
+         selector.wakeup();
+      }
+   }
+
+   private void await(int operation) throws IOException {
+      if (waitSelector == null) {
+         waitSelector = Selector.open();
+      }
+      SelectionKey waitKey = channel.register(waitSelector, operation);
+      try {
+         if (waitSelector.select(timeout) == 0) {
+            throw new SocketTimeoutException();
+         }
+      } finally {
+         waitKey.cancel();
+         waitSelector.selectNow();
+      }
+   }
+
+   private class ChannelInputStream extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         }
+         ByteBuffer buffer = getBuffer();
+         if (buffer.position() == 0) {
+            awaitBody();
+            int read;
+            while ((read = transport.read(buffer)) == 0) {
+               await(transport.getWaitOperation());
+            }
+            if (read < 0) {
+               return -1;
+            }
+         }
+         buffer.flip();
+         try {
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            bodyReceived(length);
+            return length;
+         } finally {
+            buffer.compact();
+         }
+      }
+   }
+
+   private class ChannelOutputStream extends OutputStream {
+
+      private ByteBuffer buffer = null;
+
+      @Override
+      public void write(int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         if (buffer == null) {
+            buffer = pool.acquire();
+         }
+         while (len > 0) {
+            if (!buffer.hasRemaining()) {
+               drain();
+            }
+            int length = Math.min(len, buffer.remaining());
+            buffer.put(b, off, length);
+            off += length;
+            len -= length;
+         }
+      }
+
+      @Override
+      public void flush() throws IOException {
+         if (buffer != null) {
+            drain();
+            pool.release(buffer);
+            buffer = null;
+         }
+      }
+
+      private void drain() throws IOException {
+         buffer.flip();
+         while (buffer.hasRemaining()) {
+            if (transport.write(buffer) == 0) {
+               await(transport.getWaitOperation());
+            } else {
+               progressed();
+            }
+         }
+         while (!transport.flush()) {
+            await(SelectionKey.OP_WRITE);
+         }
+         buffer.clear();
+      }
+   }
+}
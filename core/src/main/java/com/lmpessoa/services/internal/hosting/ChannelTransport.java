@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * Moves the bytes of a connection between its buffers and its socket channel.
+ *
+ * <p>
+ * This class sends and receives bytes as they are, which is what plaintext connections require.
+ * Subclasses may transform bytes on their way in and out of the channel (i.e. to encrypt them), in
+ * which case a read may require the channel to be writable and vice versa. Thus whenever an
+ * operation cannot make progress without blocking, {@link #getWaitOperation()} tells which
+ * operation the connection must wait for before trying again.
+ * </p>
+ */
+class ChannelTransport implements Closeable {
+
+   private final SocketChannel channel;
+
+   private int waitOperation = SelectionKey.OP_READ;
+
+   ChannelTransport(SocketChannel channel) {
+      this.channel = Objects.requireNonNull(channel);
+   }
+
+   @Override
+   public void close() throws IOException {
+      channel.close();
+   }
+
+   /**
+    * Reads whatever bytes are available without blocking.
+    *
+    * @param dst the buffer into which bytes are to be read.
+    * @return the number of bytes read, possibly zero, or {@code -1} if the user agent closed the
+    *         connection.
+    * @throws IOException if an I/O error occurs while reading from the channel.
+    */
+   int read(ByteBuffer dst) throws IOException {
+      int result = channel.read(dst);
+      if (result == 0) {
+         waitOperation = SelectionKey.OP_READ;
+      }
+      return result;
+   }
+
+   /**
+    * Writes as many bytes as possible without blocking.
+    *
+    * <p>
+    * Bytes consumed from the given buffer may not have reached the channel yet when this method
+    * returns. Callers must make sure {@link #flush()} succeeds before they consider the bytes sent.
+    * </p>
+    *
+    * @param src the buffer from which bytes are to be written.
+    * @return the number of bytes consumed from the buffer, possibly zero.
+    * @throws IOException if an I/O error occurs while writing to the channel.
+    */
+   int write(ByteBuffer src) throws IOException {
+      int result = channel.write(src);
+      if (result == 0 && src.hasRemaining()) {
+         waitOperation = SelectionKey.OP_WRITE;
+      }
+      return result;
+   }
+
+   /**
+    * Sends any bytes written but not yet sent through the channel without blocking.
+    *
+    * @return {@code true} if all bytes were sent, {@code false} otherwise.
+    * @throws IOException if an I/O error occurs while writing to the channel.
+    */
+   boolean flush() throws IOException {
+      return true;
+   }
+
+   /**
+    * Returns the operation the channel must be ready for before the last operation which did not
+    * make progress can be tried again.
+    *
+    * @return either {@link SelectionKey#OP_READ} or {@link SelectionKey#OP_WRITE}.
+    */
+   int getWaitOperation() {
+      return waitOperation;
+   }
+
+   /**
+    * Returns whether bytes already received can be read without waiting for the channel.
+    *
+    * @return {@code true} if bytes can be read without waiting for the channel, {@code false}
+    *         otherwise.
+    */
+   boolean hasBufferedInput() {
+      return false;
+   }
+
+   /**
+    * Returns whether bytes are encrypted before they are sent through the channel.
+    *
+    * @return {@code true} if bytes are encrypted, {@code false} otherwise.
+    */
+   boolean isSecure() {
+      return false;
+   }
+
+   /**
+    * Prepares this transport for its connection to wait for the next request.
+    *
+    * <p>
+    * Transports should release any memory they do not need while the connection is idle.
+    * </p>
+    */
+   void release() {
+      // Connections always wait for a request by reading
+      waitOperation = SelectionKey.OP_READ;
+   }
+
+   SocketChannel getChannel() {
+      return channel;
+   }
+
+   void setWaitOperation(int operation) {
+      this.waitOperation = operation;
+   }
+}
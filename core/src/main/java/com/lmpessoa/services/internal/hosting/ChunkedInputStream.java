@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import com.lmpessoa.services.BadRequestException;
+import com.lmpessoa.services.internal.CoreMessage;
+
+/**
+ * An input stream that reads contents sent using chunked transfer encoding.
+ *
+ * <p>
+ * Only the data of each chunk is returned by this stream. Chunk extensions and trailer fields are
+ * read and ignored. The underlying stream is never read past the end of the last chunk and its
+ * trailer, which leaves any further request sent through the same connection ready to be read.
+ * </p>
+ */
+final class ChunkedInputStream extends InputStream {
+
+   private static final int MAX_LINE_LENGTH = 8192;
+   private static final int MAX_SIZE_DIGITS = 15;
+
+   private final InputStream input;
+
+   private RuntimeException failure;
+   private boolean finished = false;
+   private boolean started = false;
+   private long chunkRemaining = 0;
+
+   ChunkedInputStream(InputStream input) {
+      this.input = Objects.requireNonNull(input);
+   }
+
+   @Override
+   public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      if (off < 0 || len < 0 || len > b.length - off) {
+         throw new IndexOutOfBoundsException();
+      } else if (len == 0) {
+         return 0;
+      }
+      if (failure != null) {
+         // The rest of a malformed content cannot be told apart from the next request
+         throw failure;
+      }
+      try {
+         if (chunkRemaining == 0 && !nextChunk()) {
+            return -1;
+         }
+      } catch (RuntimeException e) {
+         failure = e;
+         throw e;
+      }
+      int read = input.read(b, off, (int) Math.min(len, chunkRemaining));
+      if (read < 0) {
+         throw new EOFException();
+      }
+      chunkRemaining -= read;
+      return read;
+   }
+
+   @Override
+   public int available() throws IOException {
+      return (int) Math.min(chunkRemaining, input.available());
+   }
+
+   private boolean nextChunk() throws IOException {
+      if (finished) {
+         return false;
+      }
+      String line = started ? readLine() : "";
+      if (!line.isEmpty()) {
+         // The data of every chunk must be followed by an empty line
+         throw illegalChunk(line);
+      }
+      started = true;
+      line = readLine();
+      int end = line.indexOf(';');
+      String size = (end < 0 ? line : line.substring(0, end)).trim();
+      if (size.isEmpty() || !isHexDigits(size)) {
+         throw illegalChunk(line);
+      } else if (size.length() > MAX_SIZE_DIGITS) {
+         throw new PayloadTooLargeException();
+      }
+      chunkRemaining = Long.parseLong(size, 16);
+      if (chunkRemaining == 0) {
+         // Trailer fields are not merged into the headers already given to the application
+         int trailerSize = 0;
+         for (String trailer = readLine(); !trailer.isEmpty(); trailer = readLine()) {
+            trailerSize += trailer.length();
+            if (trailerSize > MAX_LINE_LENGTH) {
+               throw new RequestHeaderTooLargeException();
+            }
+         }
+         finished = true;
+      }
+      return !finished;
+   }
+
+   private String readLine() throws IOException {
+      StringBuilder result = new StringBuilder();
+      int b;
+      while ((b = input.read()) != '\n') {
+         if (b < 0) {
+            throw new EOFException();
+         } else if (result.length() == MAX_LINE_LENGTH) {
+            throw illegalChunk(result.toString());
+         }
+         result.append((char) b);
+      }
+      int length = result.length();
+      if (length > 0 && result.charAt(length - 1) == '\r') {
+         result.setLength(length - 1);
+      }
+      return result.toString();
+   }
+
+   private static boolean isHexDigits(String value) {
+      for (int i = 0; i < value.length(); ++i) {
+         if (Character.digit(value.charAt(i), 16) < 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static BadRequestException illegalChunk(String line) {
+      return new BadRequestException(null, null, CoreMessage.ILLEGAL_CHUNK.with(line));
+   }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * An output stream that writes its contents using chunked transfer encoding.
+ *
+ * <p>
+ * Bytes written to this stream are accumulated and sent as a single chunk whenever the internal
+ * buffer is full or the stream is flushed. Calling {@link #finish()} sends any remaining bytes and
+ * the last chunk which marks the end of the content. Neither method closes the underlying stream,
+ * which may be used to send further responses through the same connection.
+ * </p>
+ */
+final class ChunkedOutputStream extends OutputStream {
+
+   private static final byte[] CRLF = { '\r', '\n' };
+   private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+   private static final int BUFFER_SIZE = 8192;
+
+   private final byte[] buffer = new byte[BUFFER_SIZE];
+   private final OutputStream output;
+
+   private boolean finished = false;
+   private long written = 0;
+   private int count = 0;
+
+   ChunkedOutputStream(OutputStream output) {
+      this.output = Objects.requireNonNull(output);
+   }
+
+   @Override
+   public void write(int b) throws IOException {
+      if (count == buffer.length) {
+         flushChunk();
+      }
+      buffer[count++] = (byte) b;
+   }
+
+   @Override
+   public void write(byte[] b, int off, int len) throws IOException {
+      if (off < 0 || len < 0 || len > b.length - off) {
+         throw new IndexOutOfBoundsException();
+      }
+      if (len >= buffer.length) {
+         flushChunk();
+         writeChunk(b, off, len);
+      } else {
+         if (len > buffer.length - count) {
+            flushChunk();
+         }
+         System.arraycopy(b, off, buffer, count, len);
+         count += len;
+      }
+   }
+
+   @Override
+   public void flush() throws IOException {
+      flushChunk();
+      output.flush();
+   }
+
+   /**
+    * Sends any bytes still buffered and the last chunk, thus ending the content.
+    *
+    * @throws IOException if an I/O error occurs while writing to the underlying stream.
+    */
+   void finish() throws IOException {
+      if (!finished) {
+         flushChunk();
+         output.write(LAST_CHUNK);
+         output.flush();
+         finished = true;
+      }
+   }
+
+   /**
+    * Returns the number of bytes of content sent through this stream so far.
+    *
+    * <p>
+    * The returned value does not include the framing of chunks nor any bytes still buffered.
+    * </p>
+    *
+    * @return the number of bytes of content sent through this stream so far.
+    */
+   long getWrittenCount() {
+      return written;
+   }
+
+   private void flushChunk() throws IOException {
+      if (count > 0) {
+         writeChunk(buffer, 0, count);
+         count = 0;
+      }
+   }
+
+   private void writeChunk(byte[] b, int off, int len) throws IOException {
+      if (finished) {
+         throw new IOException("Content has already been finished");
+      }
+      output.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+      output.write(CRLF);
+      output.write(b, off, len);
+      output.write(CRLF);
+      written += len;
+   }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.lmpessoa.services.internal.hosting.ConnectionReaper.Phase;
+
+/**
+ * Represents a connection from a user agent to the application server.
+ *
+ * <p>
+ * Connections abstract away how the bytes of a request are received from and how the bytes of a
+ * response are sent to the user agent. This allows request jobs to be run the same way whether the
+ * connection was accepted through a blocking socket or through a non-blocking channel.
+ * </p>
+ *
+ * <p>
+ * Connections also keep track of the phase of the request they are in, which is watched by a
+ * {@link ConnectionReaper} to close connections that take too long to go through it.
+ * </p>
+ */
+abstract class ClientConnection implements Closeable {
+
+   private final ConnectionReaper reaper;
+
+   private volatile TimerWheel.Timeout deadline = null;
+   private volatile long lastProgress = 0;
+   private volatile Phase phase = null;
+   private long bodyRemaining = 0;
+   private int requestCount = 0;
+
+   ClientConnection(ConnectionReaper reaper) {
+      this.reaper = reaper;
+   }
+
+   /**
+    * Returns the socket associated with this connection.
+    *
+    * @return the socket associated with this connection.
+    */
+   abstract Socket getSocket();
+
+   /**
+    * Reads the next request received through this connection.
+    *
+    * @return the next request received through this connection.
+    * @throws IOException if an I/O error occurs while reading the request or if the connection is
+    *            closed before a complete request is received.
+    */
+   abstract HttpRequestImpl readRequest() throws IOException;
+
+   /**
+    * Returns a stream to which the response to the request can be written.
+    *
+    * @return a stream to which the response can be written.
+    * @throws IOException if an I/O error occurs while creating the stream.
+    */
+   abstract OutputStream getOutputStream() throws IOException;
+
+   /**
+    * Sends the given number of bytes from a file to the user agent.
+    *
+    * <p>
+    * Bytes are sent starting at the current position of the file channel, which is advanced by the
+    * number of bytes sent. Implementations backed by a socket channel let the operating system
+    * copy the contents of the file to the socket directly whenever possible.
+    * </p>
+    *
+    * @param file the file channel from which contents are sent.
+    * @param count the number of bytes to be sent.
+    * @throws IOException if an I/O error occurs while sending the file or if the file ends before
+    *            the given number of bytes is sent.
+    */
+   void sendFile(FileChannel file, long count) throws IOException {
+      WritableByteChannel target = Channels.newChannel(getOutputStream());
+      long position = file.position();
+      long end = position + count;
+      while (position < end) {
+         long sent = file.transferTo(position, end - position, target);
+         if (sent == 0 && position >= file.size()) {
+            throw new EOFException();
+         }
+         position += sent;
+      }
+      file.position(position);
+   }
+
+   /**
+    * Sends the given bytes to the user agent without waiting for the connection to be writable.
+    *
+    * <p>
+    * This method is intended for short error responses sent by threads which must not wait for the
+    * user agent. Implementations may discard any bytes that cannot be sent immediately.
+    * </p>
+    *
+    * @param response the bytes to be sent.
+    * @throws IOException if an I/O error occurs while sending the bytes.
+    */
+   void sendNow(byte[] response) throws IOException {
+      OutputStream output = getOutputStream();
+      output.write(response);
+      output.flush();
+   }
+
+   /**
+    * Returns whether another request is ready to be read from this connection.
+    *
+    * <p>
+    * Implementations may wait for the next request to arrive if they are bound to a thread but must
+    * never wait longer than the idle timeout for persistent connections.
+    * </p>
+    *
+    * @return {@code true} if another request can be read from this connection, {@code false}
+    *         otherwise.
+    * @throws IOException if an I/O error occurs while waiting for the next request.
+    */
+   abstract boolean hasPendingRequest() throws IOException;
+
+   /**
+    * Returns the path of the next request received through this connection.
+    *
+    * @return the path of the next request received through this connection, or {@code null} if it
+    *         is not known before the request is read.
+    */
+   String getRequestPath() {
+      return null;
+   }
+
+   /**
+    * Returns whether the bytes sent through this connection are encrypted.
+    *
+    * @return {@code true} if this connection is secure, {@code false} otherwise.
+    */
+   boolean isSecure() {
+      return false;
+   }
+
+   /**
+    * Releases this connection once a response was sent and the connection should be kept alive.
+    *
+    * @throws IOException if an I/O error occurs while releasing the connection.
+    */
+   abstract void release() throws IOException;
+
+   /**
+    * Registers that another request was received through this connection.
+    *
+    * @return the number of requests received through this connection so far.
+    */
+   int countRequest() {
+      requestCount += 1;
+      return requestCount;
+   }
+
+   /**
+    * Notifies this connection that it took too long on the given phase.
+    *
+    * <p>
+    * This method is called from the thread of the timer wheel and thus must not block.
+    * Implementations must close the connection (or have it closed by the thread that owns it) only
+    * if the phase is still being watched.
+    * </p>
+    *
+    * @param phase the phase that took too long.
+    */
+   abstract void expire(Phase phase);
+
+   /**
+    * Starts watching the time this connection takes on the given phase.
+    *
+    * <p>
+    * Any phase being watched before is considered over.
+    * </p>
+    *
+    * @param phase the phase this connection is entering.
+    */
+   synchronized void watch(Phase phase) {
+      unwatch();
+      if (reaper != null) {
+         this.phase = phase;
+         this.lastProgress = System.nanoTime();
+         this.deadline = reaper.watch(this, phase);
+      }
+   }
+
+   /**
+    * Stops watching the time this connection takes on its current phase.
+    */
+   synchronized void unwatch() {
+      TimerWheel.Timeout current = deadline;
+      if (current != null) {
+         current.cancel();
+         deadline = null;
+      }
+      phase = null;
+   }
+
+   /**
+    * Registers that bytes of a request or response were transferred through this connection.
+    *
+    * <p>
+    * While the content body of a request is received or a response is sent, the connection is only
+    * considered to take too long if no bytes are transferred for the timeout of the phase.
+    * </p>
+    */
+   void progressed() {
+      lastProgress = System.nanoTime();
+   }
+
+   /**
+    * Notifies this connection that the timeout of the given phase elapsed.
+    *
+    * <p>
+    * Connections which transferred bytes since their timeout was last set are given more time.
+    * Otherwise the connection is asked to {@link #expire(Phase) expire}. This method is called
+    * from the thread of the timer wheel.
+    * </p>
+    *
+    * @param phase the phase whose timeout elapsed.
+    */
+   final void timeoutElapsed(Phase phase) {
+      if (phase.isTransfer()) {
+         synchronized (this) {
+            TimerWheel.Timeout current = deadline;
+            if (this.phase != phase || current == null || !current.isExpired()) {
+               // The phase was over or renewed before its timeout elapsed
+               return;
+            }
+            TimerWheel.Timeout renewed = reaper.renew(this, phase,
+                     System.nanoTime() - lastProgress);
+            if (renewed != null) {
+               deadline = renewed;
+               return;
+            }
+         }
+      }
+      expire(phase);
+   }
+
+   /**
+    * Returns the phase of this connection being watched.
+    *
+    * @return the phase of this connection being watched, or {@code null} if none.
+    */
+   Phase getWatchedPhase() {
+      return phase;
+   }
+
+   /**
+    * Returns whether the phase of this connection being watched took too long.
+    *
+    * @return {@code true} if the current phase of this connection took too long, {@code false}
+    *         otherwise.
+    */
+   boolean isOverdue() {
+      TimerWheel.Timeout current = deadline;
+      return current != null && current.isExpired();
+   }
+
+   /**
+    * Registers that this connection is being closed for taking too long on the given phase.
+    *
+    * @param phase the phase that took too long.
+    */
+   void timedOut(Phase phase) {
+      if (reaper != null && phase != null) {
+         reaper.timedOut(phase);
+      }
+   }
+
+   /**
+    * Registers the length of the content body of the request just read from this connection.
+    *
+    * @param length the length of the content body of the request, or -1 if it is not known.
+    */
+   void startBody(long length) {
+      bodyRemaining = length;
+   }
+
+   /**
+    * Signals that bytes of the content body must be read from the network.
+    *
+    * <p>
+    * The time to receive the content body is only watched from the moment the request job first
+    * needs to wait for it, so that requests whose body is never read are not limited by it. Since
+    * the end of a content body of unknown length cannot be told here, such bodies are only watched
+    * while waiting for bytes to arrive.
+    * </p>
+    */
+   void awaitBody() {
+      if (bodyRemaining != 0 && phase != Phase.BODY) {
+         watch(Phase.BODY);
+      }
+   }
+
+   /**
+    * Registers that bytes of the content body were received from this connection.
+    *
+    * @param count the number of bytes received.
+    */
+   void bodyReceived(int count) {
+      progressed();
+      if (bodyRemaining > 0) {
+         bodyRemaining = Math.max(0, bodyRemaining - count);
+      }
+      if (bodyRemaining <= 0 && phase == Phase.BODY) {
+         unwatch();
+      }
+   }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closes connections which take too long to go through each phase of a request.
+ *
+ * <p>
+ * Waiting for a request and receiving its head are given a limited amount of time to complete
+ * which, unlike socket timeouts, is not renewed every time a few bytes are received. Thus user
+ * agents which send the head of a request very slowly cannot hold on to a connection for longer
+ * than allowed. Transferring the content body of a request or a response may legitimately take
+ * much longer, thus these phases are instead limited by the time elapsed without any byte being
+ * transferred. Deadlines are tracked on a single {@link TimerWheel}, which is started only when
+ * the first connection is watched.
+ * </p>
+ *
+ * <p>
+ * The reaper also counts how many connections were closed on each phase, which is reported by the
+ * health endpoint of the application.
+ * </p>
+ */
+final class ConnectionReaper {
+
+   private static final long TICK_DURATION = 100;
+   private static final int TICKS_PER_WHEEL = 512;
+
+   private final Map<Phase, LongAdder> counts = new EnumMap<>(Phase.class);
+   private final Map<Phase, Long> timeouts = new EnumMap<>(Phase.class);
+
+   private volatile TimerWheel wheel;
+   private volatile boolean stopped = false;
+
+   /**
+    * Lists the phases of a connection whose duration is limited.
+    */
+   enum Phase {
+      /**
+       * Receiving the head of a request.
+       */
+      HEADER,
+      /**
+       * Receiving the content body of a request.
+       */
+      BODY,
+      /**
+       * Waiting for the next request on a persistent connection.
+       */
+      IDLE,
+      /**
+       * Sending the response to a request.
+       */
+      WRITE;
+
+      /**
+       * Returns whether the timeout of this phase is renewed whenever bytes are transferred.
+       *
+       * @return {@code true} if the timeout of this phase is renewed on progress, {@code false} if
+       *         it limits the duration of the whole phase.
+       */
+      boolean isTransfer() {
+         return this == BODY || this == WRITE;
+      }
+   }
+
+   /**
+    * Creates a new connection reaper.
+    *
+    * <p>
+    * Phases with a timeout of zero or less are never limited.
+    * </p>
+    *
+    * @param header the maximum time to receive the head of a request, in seconds.
+    * @param body the maximum time without receiving bytes of the content body of a request, in
+    *           seconds.
+    * @param idle the maximum time to wait for the next request, in seconds.
+    * @param write the maximum time without sending bytes of a response, in seconds.
+    */
+   ConnectionReaper(int header, int body, int idle, int write) {
+      timeouts.put(Phase.HEADER, TimeUnit.SECONDS.toMillis(header));
+      timeouts.put(Phase.BODY, TimeUnit.SECONDS.toMillis(body));
+      timeouts.put(Phase.IDLE, TimeUnit.SECONDS.toMillis(idle));
+      timeouts.put(Phase.WRITE, TimeUnit.SECONDS.toMillis(write));
+      for (Phase phase : Phase.values()) {
+         counts.put(phase, new LongAdder());
+      }
+   }
+
+   /**
+    * Returns the number of connections closed so far for taking too long on the given phase.
+    *
+    * @param phase the phase whose number of timeouts is to be returned.
+    * @return the number of connections closed for taking too long on the given phase.
+    */
+   long getTimeoutCount(Phase phase) {
+      return counts.get(phase).sum();
+   }
+
+   /**
+    * Returns the number of connections closed so far for taking too long on each phase.
+    *
+    * @return a map with the number of timeouts of each phase, keyed by the name of the phase.
+    */
+   Map<String, Long> getTimeoutCounts() {
+      Map<String, Long> result = new LinkedHashMap<>();
+      for (Phase phase : Phase.values()) {
+         result.put(phase.name().toLowerCase(Locale.ROOT), getTimeoutCount(phase));
+      }
+      return Collections.unmodifiableMap(result);
+   }
+
+   /**
+    * Starts tracking the time the given connection takes on the given phase.
+    *
+    * <p>
+    * If the phase is not over once its timeout elapses, the connection is notified through
+    * {@link ClientConnection#expire(Phase)} from the thread of the timer wheel.
+    * </p>
+    *
+    * @param connection the connection to be tracked.
+    * @param phase the phase the connection is entering.
+    * @return the timeout that must be cancelled when the phase is over, or {@code null} if the given
+    *         phase is not limited.
+    */
+   TimerWheel.Timeout watch(ClientConnection connection, Phase phase) {
+      return schedule(connection, phase, timeouts.get(phase));
+   }
+
+   /**
+    * Renews the timeout of the given connection if it transferred bytes recently enough.
+    *
+    * <p>
+    * This method is called once the timeout of a transfer phase elapses. If the connection made
+    * progress in the meantime, it is given the full timeout of the phase counted from the moment
+    * of its last progress.
+    * </p>
+    *
+    * @param connection the connection whose timeout elapsed.
+    * @param phase the phase the connection is in.
+    * @param idleTime the time elapsed since the connection last transferred bytes, in nanoseconds.
+    * @return the timeout that replaces the one that elapsed, or {@code null} if the connection
+    *         took too long without progress.
+    */
+   TimerWheel.Timeout renew(ClientConnection connection, Phase phase, long idleTime) {
+      long remaining = timeouts.get(phase) - TimeUnit.NANOSECONDS.toMillis(idleTime);
+      if (!phase.isTransfer() || remaining <= 0) {
+         return null;
+      }
+      return schedule(connection, phase, remaining);
+   }
+
+   /**
+    * Registers that a connection was closed for taking too long on the given phase.
+    *
+    * @param phase the phase that took too long.
+    */
+   void timedOut(Phase phase) {
+      counts.get(phase).increment();
+   }
+
+   /**
+    * Stops tracking the time of connections.
+    *
+    * @throws InterruptedException if the current thread is interrupted while waiting for the timer
+    *            wheel to stop.
+    */
+   void stop() throws InterruptedException {
+      TimerWheel current;
+      synchronized (this) {
+         stopped = true;
+         current = wheel;
+         wheel = null;
+      }
+      if (current != null) {
+         current.stop();
+      }
+   }
+
+   /**
+    * Returns the timer wheel used to watch connections.
+    *
+    * <p>
+    * Other timeouts which are usually cancelled before they expire (like the deadline of requests)
+    * may share the same wheel instead of each requiring a timer of their own.
+    * </p>
+    *
+    * @return the timer wheel used to watch connections, or {@code null} if this reaper was
+    *         stopped.
+    */
+   TimerWheel getWheel() {
+      TimerWheel result = wheel;
+      if (result == null && !stopped) {
+         synchronized (this) {
+            if (wheel == null && !stopped) {
+               wheel = new TimerWheel("connection-reaper", TICK_DURATION, TimeUnit.MILLISECONDS,
+                        TICKS_PER_WHEEL);
+            }
+            result = wheel;
+         }
+      }
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return "timeouts " + getTimeoutCounts();
+   }
+
+   private TimerWheel.Timeout schedule(ClientConnection connection, Phase phase, long timeout) {
+      TimerWheel timer = getWheel();
+      if (timeout <= 0 || timer == null) {
+         return null;
+      }
+      return timer.schedule(() -> connection.timeoutElapsed(phase), timeout,
+               TimeUnit.MILLISECONDS);
+   }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An I/O thread that reads requests from multiple non-blocking connections.
+ *
+ * <p>
+ * Each {@code ConnectionSelector} owns a single {@link Selector} with which connections accepted by
+ * the application context are registered. Connections are read only when data is available and,
+ * once the head of a request has been received, the request is dispatched to the main executor of
+ * the application. Thus no thread is tied to a connection while the user agent is sending the head
+ * of a request.
+ * </p>
+ *
+ * <p>
+ * Connections kept alive after a response are returned to their selector to wait for the next
+ * request. Those which stay idle or take longer than allowed to send the head of a request are
+ * reported by the {@link ConnectionReaper} and closed by the selector, since only the selector
+ * thread may touch the buffers of connections waiting for a request.
+ * </p>
+ */
+final class ConnectionSelector implements Runnable {
+
+   private final Queue<ChannelConnection> expired = new ConcurrentLinkedQueue<>();
+   private final Queue<ChannelConnection> resumed = new ConcurrentLinkedQueue<>();
+   private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+   private final ApplicationContext context;
+   private final Selector selector;
+   private final String name;
+
+   private volatile boolean draining = false;
+   private volatile boolean running = true;
+   private volatile int activeCount = -1;
+
+   @Override
+   public void run() {
+      Thread.currentThread().setName(name);
+      while (running) {
+         try {
+            selector.select();
+            registerPending();
+            resumeReleased();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               readFrom(key);
+            }
+            closeExpired();
+            if (draining) {
+               closeIdle();
+            }
+         } catch (IOException e) {
+            context.getLogger().error(e);
+         }
+      }
+      closeAll();
+   }
+
+   @Override
+   public String toString() {
+      return name;
+   }
+
+   ConnectionSelector(ApplicationContext context, String name) throws IOException {
+      this.selector = Selector.open();
+      this.context = context;
+      this.name = name;
+   }
+
+   void register(SocketChannel channel) {
+      pending.add(channel);
+      selector.wakeup();
+   }
+
+   void resume(ChannelConnection connection) {
+      resumed.add(connection);
+      selector.wakeup();
+   }
+
+   /**
+    * Asks this selector to close the given connection for waiting too long for a request.
+    *
+    * @param connection the connection to be closed.
+    */
+   void expire(ChannelConnection connection) {
+      expired.add(connection);
+      selector.wakeup();
+   }
+
+   void stop() {
+      running = false;
+      selector.wakeup();
+   }
+
+   /**
+    * Stops reading further requests from the connections of this selector.
+    *
+    * <p>
+    * Connections waiting for a request are closed immediately while connections with a request in
+    * progress are closed as soon as their response is sent.
+    * </p>
+    */
+   void drain() {
+      draining = true;
+      selector.wakeup();
+   }
+
+   /**
+    * Returns the number of connections of this selector with a request in progress.
+    *
+    * <p>
+    * This number is only updated while the selector is being drained.
+    * </p>
+    *
+    * @return the number of connections with a request in progress, or {@code -1} if the number was
+    *         not counted yet.
+    */
+   int getActiveCount() {
+      return activeCount;
+   }
+
+   /**
+    * Notifies this selector that one of its connections was closed by a request job.
+    */
+   void connectionClosed() {
+      if (draining) {
+         selector.wakeup();
+      }
+   }
+
+   private void registerPending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+         if (draining) {
+            closeQuietly(channel);
+            continue;
+         }
+         try {
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            ChannelConnection connection = new ChannelConnection(this, key, context);
+            key.attach(connection);
+            connection.awaitRequest();
+         } catch (IOException e) {
+            context.getLogger().debug(e);
+            closeQuietly(channel);
+         }
+      }
+   }
+
+   private void resumeReleased() {
+      ChannelConnection connection;
+      while ((connection = resumed.poll()) != null) {
+         if (draining) {
+            closeQuietly(connection);
+            continue;
+         }
+         try {
+            connection.getKey().interestOps(connection.getInterestOps());
+            connection.awaitRequest();
+            if (connection.hasBufferedInput()) {
+               // No readiness will be signalled for bytes already received
+               readFrom(connection.getKey());
+            }
+         } catch (CancelledKeyException e) {
+            closeQuietly(connection);
+         }
+      }
+   }
+
+   private void closeExpired() {
+      ChannelConnection connection;
+      while ((connection = expired.poll()) != null) {
+         SelectionKey key = connection.getKey();
+         // The connection may have received a request since it was reported
+         if (connection.isOverdue() && key.isValid() && key.interestOps() != 0) {
+            connection.timedOut(connection.getWatchedPhase());
+            closeQuietly(connection);
+         }
+      }
+   }
+
+   private void closeIdle() {
+      int count = 0;
+      for (SelectionKey key : selector.keys()) {
+         if (!key.isValid()) {
+            continue;
+         }
+         if (key.interestOps() != 0) {
+            // Also drops requests that were not completely received yet
+            closeQuietly((ChannelConnection) key.attachment());
+         } else {
+            count += 1;
+         }
+      }
+      if (count != activeCount) {
+         activeCount = count;
+         context.activeCountChanged();
+      }
+   }
+
+   private void readFrom(SelectionKey key) {
+      ChannelConnection connection = (ChannelConnection) key.attachment();
+      try {
+         int read;
+         do {
+            read = connection.fill();
+            if (read < 0) {
+               connection.close();
+               return;
+            } else if (connection.hasRequest()) {
+               key.interestOps(0);
+               connection.unwatch();
+               dispatch(connection);
+               return;
+            }
+         } while (read > 0 && connection.hasBufferedInput());
+         int ops = connection.getInterestOps();
+         if (key.interestOps() != ops) {
+            // Secure connections may need to send bytes before they can receive more
+            key.interestOps(ops);
+         }
+      } catch (IOException | CancelledKeyException | RejectedExecutionException e) {
+         context.getLogger().debug(e);
+         closeQuietly(connection);
+      }
+   }
+
+   private void dispatch(ChannelConnection connection) {
+      new ApplicationRequestJob(context, connection).dispatch();
+   }
+
+   private void closeAll() {
+      for (SelectionKey key : selector.keys()) {
+         closeQuietly((ChannelConnection) key.attachment());
+      }
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+         closeQuietly(channel);
+      }
+      try {
+         selector.close();
+      } catch (IOException e) {
+         context.getLogger().debug(e);
+      }
+   }
+
+   private void closeQuietly(AutoCloseable closeable) {
+      if (closeable == null) {
+         return;
+      }
+      try {
+         closeable.close();
+      } catch (Exception e) {
+         // Nothing else to be done here
+      }
+   }
+}
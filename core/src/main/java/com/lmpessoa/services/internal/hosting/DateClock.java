@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+import com.lmpessoa.services.DateHeader;
+import com.lmpessoa.services.hosting.Headers;
+
+/**
+ * Provides the current date and time in the format used by the HTTP "Date" header.
+ *
+ * <p>
+ * The "Date" header has a resolution of one second but is sent with every response. Thus the
+ * current date is formatted at most once per second and shared by every response sent during that
+ * second, together with its encoded header line.
+ * </p>
+ */
+final class DateClock {
+
+   private static final DateTimeFormatter FORMATTER = DateHeader.RFC_7231_DATE_TIME
+            .withLocale(Locale.ENGLISH)
+            .withZone(ZoneId.of("GMT"));
+
+   private static volatile Tick current = new Tick(currentSecond());
+
+   private DateClock() {
+      // Nothing to be done here
+   }
+
+   /**
+    * Returns the current date and time formatted for the HTTP "Date" header.
+    *
+    * @return the current date and time formatted for the HTTP "Date" header.
+    */
+   static String now() {
+      long second = currentSecond();
+      Tick tick = current;
+      if (tick.second != second) {
+         // Concurrent threads may format the same second more than once, which is harmless
+         tick = new Tick(second);
+         current = tick;
+      }
+      return tick.value;
+   }
+
+   /**
+    * Formats the given date and time for the HTTP "Date" header.
+    *
+    * @param date the date and time to be formatted.
+    * @return the given date and time formatted for the HTTP "Date" header.
+    */
+   static String format(TemporalAccessor date) {
+      return FORMATTER.format(date);
+   }
+
+   /**
+    * Returns the encoded header line for the given value if it is the latest value returned by
+    * {@link #now()}.
+    *
+    * @param value the value of the "Date" header.
+    * @return the encoded header line for the given value, or {@code null} if the value was not
+    *         returned by {@link #now()} during the current second.
+    */
+   static byte[] getHeaderLine(String value) {
+      Tick tick = current;
+      return tick.value == value ? tick.line : null;
+   }
+
+   private static long currentSecond() {
+      return System.currentTimeMillis() / 1000;
+   }
+
+   private static final class Tick {
+
+      private final long second;
+      private final String value;
+      private final byte[] line;
+
+      Tick(long second) {
+         this.second = second;
+         this.value = format(Instant.ofEpochSecond(second));
+         this.line = (Headers.DATE + ": " + value + "\r\n").getBytes(StandardCharsets.US_ASCII);
+      }
+   }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.lmpessoa.services.hosting.HttpResponse;
+
+/**
+ * Represents a response whose content is a stream of server-sent events.
+ *
+ * <p>
+ * Events may be sent by any thread until the stream is closed. The request job sends the head of
+ * the response right away and then parks the connection, returning its thread to the executor.
+ * Whenever events are sent, the request job is resumed on any available thread to write them and
+ * parks the connection again until the stream is closed, after which the connection may be reused.
+ * </p>
+ *
+ * <p>
+ * The data of an event is only produced when the event is about to be written, thus threads
+ * sending events are not held by producing them. Events sent with a key replace any event with the
+ * same key still waiting to be written, and a stream which falls more than {@link #MAX_PENDING}
+ * events behind is closed, since its user agent is not reading them.
+ * </p>
+ *
+ * <p>
+ * While parked, a stream writes a comment every now and then so that user agents which went away
+ * are noticed even if no event is sent for a long time.
+ * </p>
+ */
+final class EventStream implements HttpResponse {
+
+   static final int MAX_PENDING = 1024;
+
+   private static final Supplier<String> HEARTBEAT = () -> ":\n\n";
+
+   private final AtomicReference<Runnable> waiting = new AtomicReference<>();
+   private final Map<String, Event> keyed = new HashMap<>();
+   private final Queue<Event> events = new ArrayDeque<>();
+
+   private volatile Future<?> heartbeat = null;
+   private volatile boolean closed = false;
+
+   @Override
+   public int getStatusCode() {
+      return 200;
+   }
+
+   /**
+    * Sends an event through this stream.
+    *
+    * <p>
+    * Events sent after the stream is closed are ignored.
+    * </p>
+    *
+    * @param name the name of the event.
+    * @param data the function that produces the data of the event.
+    */
+   void send(String name, Supplier<String> data) {
+      send(name, null, data);
+   }
+
+   /**
+    * Sends an event through this stream which replaces any event sent with the same key that was
+    * not written yet.
+    *
+    * <p>
+    * The replacing event takes the place of the replaced one in the stream. Events sent after the
+    * stream is closed are ignored.
+    * </p>
+    *
+    * @param name the name of the event.
+    * @param key the key that identifies which events are replaced by this one, or {@code null} if
+    *           no event is to be replaced.
+    * @param data the function that produces the data of the event.
+    */
+   void send(String name, String key, Supplier<String> data) {
+      Supplier<String> event = () -> format(name, data.get());
+      synchronized (events) {
+         if (closed) {
+            return;
+         }
+         Event pending = key != null ? keyed.get(key) : null;
+         if (pending != null) {
+            pending.data = event;
+            return;
+         }
+         if (events.size() >= MAX_PENDING) {
+            // The user agent is not keeping up; it may reconnect and start over
+            closed = true;
+         } else {
+            pending = new Event(event);
+            events.add(pending);
+            if (key != null) {
+               keyed.put(key, pending);
+            }
+         }
+      }
+      signal();
+   }
+
+   /**
+    * Closes this stream.
+    *
+    * <p>
+    * Events already sent are still written before the response ends.
+    * </p>
+    */
+   void close() {
+      closed = true;
+      signal();
+   }
+
+   /**
+    * Returns whether this stream was closed and every event sent through it was written.
+    *
+    * @return {@code true} if the response can be ended, {@code false} otherwise.
+    */
+   boolean isFinished() {
+      synchronized (events) {
+         return closed && events.isEmpty();
+      }
+   }
+
+   /**
+    * Writes every event available so far to the given stream.
+    *
+    * @param output the stream to which events are to be written.
+    * @return the number of bytes written.
+    * @throws IOException if an I/O error occurs while writing to the given stream.
+    */
+   long writeTo(OutputStream output) throws IOException {
+      List<Supplier<String>> available;
+      synchronized (events) {
+         available = new ArrayList<>(events.size());
+         for (Event event : events) {
+            available.add(event.data);
+         }
+         events.clear();
+         keyed.clear();
+      }
+      long result = 0;
+      for (Supplier<String> event : available) {
+         byte[] bytes = event.get().getBytes(StandardCharsets.UTF_8);
+         output.write(bytes);
+         result += bytes.length;
+      }
+      return result;
+   }
+
+   /**
+    * Runs the given action once, as soon as there are events to be written or the stream is closed.
+    *
+    * <p>
+    * The action is run by the thread sending the event or closing the stream and thus should do no
+    * more than hand the request to an appropriate executor. If nothing happens within the given
+    * interval, a comment is sent through the stream so that writing it tells whether the user agent
+    * is still there.
+    * </p>
+    *
+    * @param timer the timer used to send comments through the stream.
+    * @param interval the time to wait before sending a comment, in milliseconds.
+    * @param action the action that resumes the request.
+    */
+   void resume(ScheduledExecutorService timer, long interval, Runnable action) {
+      waiting.set(action);
+      if (isReady()) {
+         if (waiting.compareAndSet(action, null)) {
+            action.run();
+         }
+         return;
+      }
+      try {
+         heartbeat = timer.schedule(() -> keepAlive(action), interval, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+         // No heartbeat while the application is shutting down
+      }
+   }
+
+   private boolean isReady() {
+      synchronized (events) {
+         return closed || !events.isEmpty();
+      }
+   }
+
+   private void keepAlive(Runnable action) {
+      synchronized (events) {
+         if (closed || waiting.get() != action || !events.isEmpty()) {
+            return;
+         }
+         events.add(new Event(HEARTBEAT));
+      }
+      signal();
+   }
+
+   private void signal() {
+      Runnable action = waiting.getAndSet(null);
+      if (action != null) {
+         Future<?> pending = heartbeat;
+         if (pending != null) {
+            pending.cancel(false);
+         }
+         action.run();
+      }
+   }
+
+   private static String format(String name, String data) {
+      StringBuilder result = new StringBuilder();
+      result.append("event: ").append(name).append('\n');
+      for (String line : data.split("\r\n|\r|\n", -1)) {
+         result.append("data: ").append(line).append('\n');
+      }
+      return result.append('\n').toString();
+   }
+
+   private static final class Event {
+
+      private Supplier<String> data;
+
+      Event(Supplier<String> data) {
+         this.data = data;
+      }
+   }
+}
@@ -22,22 +22,12 @@
  */
 package com.lmpessoa.services.internal.hosting;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Arrays;
 
-import com.lmpessoa.services.BadRequestException;
 import com.lmpessoa.services.ContentType;
-import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.ValuesMap;
-import com.lmpessoa.services.internal.CoreMessage;
 import com.lmpessoa.services.internal.ValuesMapBuilder;
 import com.lmpessoa.services.internal.serializing.Serializer;
 import com.lmpessoa.services.routing.HttpMethod;
@@ -48,8 +38,7 @@ final class HttpRequestImpl implements HttpRequest {
    private final HttpMethod method;
    private final ValuesMap headers;
    private final String protocol;
-   private final byte[] content;
-   private final long timeout;
+   private final RequestBody content;
    private final String path;
 
    private ValuesMap query;
@@ -89,7 +78,11 @@ final class HttpRequestImpl implements HttpRequest {
    @Override
    public InputStream getContentBody() {
       if (content != null) {
-         return new ByteArrayInputStream(content);
+         try {
+            return content.open();
+         } catch (IOException e) {
+            throw new InternalServerError(e);
+         }
       }
       return null;
    }
@@ -98,7 +91,11 @@ final class HttpRequestImpl implements HttpRequest {
    public ValuesMap getForm() {
       if (form == null) {
          if (ContentType.FORM.equals(getContentType())) {
-            form = Serializer.parseHttpForm(new String(this.content));
+            try {
+               form = Serializer.parseHttpForm(new String(content.readAll()));
+            } catch (IOException e) {
+               throw new InternalServerError(e);
+            }
          }
          if (form == null) {
             form = new ValuesMapBuilder().build();
@@ -118,81 +115,59 @@ final class HttpRequestImpl implements HttpRequest {
                path + (queryString != null ? "?" + queryString : ""), protocol);
    }
 
-   HttpRequestImpl(InputStream clientStream, int timeout) throws IOException {
-      this.timeout = timeout * 1000L;
-      String requestLine = readLine(clientStream);
-      if (requestLine == null) {
-         throw new SocketTimeoutException();
-      }
-      String[] parts = requestLine.split(" ");
-      this.method = HttpMethod.valueOf(parts[0].toUpperCase());
-      this.protocol = parts[2];
-      parts = parts[1].split("\\?", 2);
-      String thePath = parts[0];
-      ValuesMapBuilder headerBuilder = new ValuesMapBuilder();
-      if (thePath.startsWith("http://") || thePath.startsWith("https://")) {
-         int index = thePath.indexOf('/', thePath.indexOf("://") + 3);
-         headerBuilder.add(Headers.HOST, thePath.substring(0, index));
-         thePath = thePath.substring(index);
-      }
-      this.path = thePath;
-      this.queryString = parts.length > 1 ? parts[1] : null;
-      this.headers = extractHeaders(clientStream, headerBuilder);
-      if (headers.contains(Headers.CONTENT_TYPE)) {
-         if (!headers.contains(Headers.CONTENT_LENGTH)) {
-            throw new LengthRequiredException();
-         }
-         long contentLength = getContentLength();
-         if (contentLength < 0 || contentLength > Integer.MAX_VALUE) {
-            throw new PayloadTooLargeException();
-         }
-         byte[] data = new byte[(int) getContentLength()];
-         while (clientStream.available() < data.length) {
-            // Do nothing, just sit and wait
-         }
-         int read = clientStream.read(data);
-         if (read != data.length) {
-            throw new AssertionError("Error reading from client (expected: " + data.length
-                     + " bytes, found: " + read + " bytes)");
-         }
-         this.content = data;
-      } else {
-         this.content = new byte[0];
-      }
+   HttpRequestImpl(InputStream clientStream) throws IOException {
+      this(HttpRequestParser.readRequest(clientStream));
    }
 
-   private ValuesMap extractHeaders(InputStream clientStream, ValuesMapBuilder builder)
-      throws IOException {
-      String headerLine;
-      while ((headerLine = readLine(clientStream)) != null && !headerLine.isEmpty()) {
-         String[] header = headerLine.split(":", 2);
-         if (header.length != 2) {
-            throw new BadRequestException(null, null,
-                     CoreMessage.ILLEGAL_HEADER_LINE.with(headerLine));
-         }
-         String headerName = Headers.normalise(header[0]);
-         builder.add(headerName, header[1].trim());
+   HttpRequestImpl(HttpMethod method, String path, String queryString, String protocol,
+      ValuesMap headers, RequestBody content) {
+      this.method = method;
+      this.path = path;
+      this.queryString = queryString;
+      this.protocol = protocol;
+      this.headers = headers;
+      this.content = content;
+   }
+
+   /**
+    * Detaches the content body of this request from the connection it was received through.
+    *
+    * @param suspended whether the response to this request was suspended.
+    * @throws IOException if an I/O error occurs while reading the content body.
+    * @see RequestBody#detach(boolean)
+    */
+   void detachContent(boolean suspended) throws IOException {
+      if (content != null) {
+         content.detach(suspended);
       }
-      return builder.build();
    }
 
-   private String readLine(InputStream input) throws IOException {
-      ByteArrayOutputStream result = new ByteArrayOutputStream();
-      int[] b = new int[] { 0, 0 };
-      if (input.available() == 0) {
-         return null;
+   /**
+    * Signals that this request is over and thus its content body can be released.
+    *
+    * @throws IOException if an I/O error occurs while releasing the content body.
+    * @see RequestBody#requestOver()
+    */
+   void releaseContent() throws IOException {
+      if (content != null) {
+         content.requestOver();
       }
-      while (!Arrays.equals(b, new int[] { '\r', '\n' })) {
-         Instant time = Instant.now();
-         while (input.available() == 0) {
-            if (Duration.between(time, Instant.now()).toMillis() > timeout) {
-               throw new SocketTimeoutException();
-            }
-         }
-         b[0] = b[1];
-         b[1] = input.read();
-         result.write(b[1]);
+   }
+
+   /**
+    * Marks the content body of this request as the one of the request being resolved by the
+    * current thread.
+    *
+    * @see RequestBody#current()
+    */
+   void bindContent() {
+      if (content != null) {
+         content.bind();
       }
-      return result.toString(StandardCharsets.UTF_8.name()).trim();
+   }
+
+   private HttpRequestImpl(HttpRequestImpl other) {
+      this(other.method, other.path, other.queryString, other.protocol, other.headers,
+               other.content);
    }
 }
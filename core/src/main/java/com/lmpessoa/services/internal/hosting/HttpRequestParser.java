@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.lmpessoa.services.BadRequestException;
+import com.lmpessoa.services.Localized;
+import com.lmpessoa.services.NotImplementedException;
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.ValuesMap;
+import com.lmpessoa.services.internal.CoreMessage;
+import com.lmpessoa.services.internal.ValuesMapBuilder;
+import com.lmpessoa.services.routing.HttpMethod;
+
+/**
+ * An incremental parser of HTTP requests.
+ *
+ * <p>
+ * Bytes of a request can be given to this parser in chunks of any size as they are received from
+ * the user agent. The parser consumes only the bytes of the request line and headers, thus the
+ * content body of the request and any bytes of pipelined requests remain available to be read once
+ * the head of the current request is complete.
+ * </p>
+ *
+ * <p>
+ * Lines are accumulated in a buffer which is reused for every line of every request parsed by the
+ * same parser. The size of the request line and headers together is limited and requests whose
+ * head exceeds this limit are rejected.
+ * </p>
+ *
+ * <p>
+ * Errors found while parsing a request do not interrupt the parser. Instead the request is marked
+ * as complete and the error is raised when the request is retrieved. This allows the error to be
+ * reported by the thread responding to the request even if the request was parsed elsewhere.
+ * </p>
+ */
+final class HttpRequestParser {
+
+   static final int DEFAULT_MAX_HEAD_SIZE = 8192;
+   static final int DEFAULT_MEMORY_LIMIT = 65536;
+
+   private static final int INITIAL_LINE_SIZE = 256;
+   private static final int READ_BUFFER_SIZE = 4096;
+
+   private final int memoryLimit;
+   private final int maxHeadSize;
+
+   private byte[] line = new byte[INITIAL_LINE_SIZE];
+   private State state = State.REQUEST_LINE;
+   private ValuesMapBuilder headers;
+   private RuntimeException failure;
+   private String queryString;
+   private HttpMethod method;
+   private String protocol;
+   private long contentLength;
+   private int lineLength;
+   private int headSize;
+   private String path;
+
+   /**
+    * Reads a single request from the given stream.
+    *
+    * @param input the stream from which to read the request.
+    * @return the request read from the stream.
+    * @throws IOException if an I/O error occurs while reading from the stream or if the stream ends
+    *            before the head of the request is read.
+    */
+   static HttpRequestImpl readRequest(InputStream input) throws IOException {
+      HttpRequestParser parser = new HttpRequestParser(DEFAULT_MAX_HEAD_SIZE,
+               DEFAULT_MEMORY_LIMIT);
+      ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      buffer.flip();
+      if (!parser.read(input, buffer)) {
+         throw new EOFException();
+      }
+      InputStream rest = new ByteArrayInputStream(buffer.array(), buffer.position(),
+               buffer.remaining());
+      return parser.getRequest(new SequenceInputStream(rest, input));
+   }
+
+   HttpRequestParser(int maxHeadSize, int memoryLimit) {
+      this.maxHeadSize = maxHeadSize;
+      this.memoryLimit = memoryLimit;
+   }
+
+   /**
+    * Parses the given bytes as part of the current request.
+    *
+    * <p>
+    * Bytes are consumed from the given buffer until either all of its remaining bytes are consumed
+    * or the head of the current request is complete. In the latter case the position of the buffer
+    * indicates where the content body of the request starts.
+    * </p>
+    *
+    * @param data the buffer with the bytes to be parsed.
+    * @return {@code true} if the head of the current request is complete, {@code false} otherwise.
+    */
+   boolean parse(ByteBuffer data) {
+      try {
+         while (state != State.COMPLETE && data.hasRemaining()) {
+            parseHeadByte(data.get());
+         }
+      } catch (RuntimeException e) {
+         failure = e;
+         state = State.COMPLETE;
+      }
+      return isComplete();
+   }
+
+   /**
+    * Reads bytes from the given stream until the head of the current request is complete.
+    *
+    * <p>
+    * The given buffer must be ready to be read and any of its remaining bytes are parsed before
+    * reading more from the stream. When this method returns, the buffer contains any bytes read
+    * from the stream past the end of the head of the current request.
+    * </p>
+    *
+    * @param input the stream from which to read the request.
+    * @param buffer the buffer used to read from the stream.
+    * @return {@code true} if a request was read, {@code false} if the stream ended before any byte
+    *         of the request was received.
+    * @throws IOException if an I/O error occurs while reading from the stream or if the stream ends
+    *            in the middle of the request.
+    */
+   boolean read(InputStream input, ByteBuffer buffer) throws IOException {
+      while (!parse(buffer)) {
+         buffer.clear();
+         int read = input.read(buffer.array(), 0, buffer.capacity());
+         if (read < 0) {
+            buffer.limit(0);
+            return endOfInput();
+         }
+         buffer.limit(read);
+      }
+      return true;
+   }
+
+   /**
+    * Signals that no more bytes will be received for the current request.
+    *
+    * <p>
+    * A request whose last header line was received is considered complete even if the user agent
+    * closed the connection before sending the empty line that ends the request head.
+    * </p>
+    *
+    * @return {@code true} if the head of the current request is complete, {@code false} if no byte
+    *         of the request was received.
+    * @throws EOFException if only part of the request was received.
+    */
+   boolean endOfInput() throws EOFException {
+      if (state == State.HEADERS && lineLength == 0) {
+         parse(ByteBuffer.wrap(new byte[] { '\n' }));
+      }
+      if (!isComplete() && hasStarted()) {
+         throw new EOFException();
+      }
+      return isComplete();
+   }
+
+   /**
+    * Returns whether any byte of the current request was already parsed.
+    *
+    * @return {@code true} if any byte of the current request was parsed, {@code false} otherwise.
+    */
+   boolean hasStarted() {
+      return headSize > 0;
+   }
+
+   /**
+    * Returns whether the head of the current request was completely parsed.
+    *
+    * @return {@code true} if the head of the current request is complete, {@code false} otherwise.
+    */
+   boolean isComplete() {
+      return state == State.COMPLETE;
+   }
+
+   /**
+    * Returns the path of the current request.
+    *
+    * @return the path of the current request, or {@code null} if the request line of the current
+    *         request was not parsed yet.
+    */
+   String getPath() {
+      return path;
+   }
+
+   /**
+    * Returns the length of the content body of the current request.
+    *
+    * @return the length of the content body of the current request, zero if the request has no
+    *         content body or its head was not completely parsed yet, or -1 if the content body is
+    *         sent in chunks and thus its length is not known.
+    */
+   long getContentLength() {
+      return contentLength;
+   }
+
+   /**
+    * Returns the request parsed by this parser.
+    *
+    * <p>
+    * The content body of the returned request is read from the given stream only when needed.
+    * Content bodies sent in chunks are decoded as they are read.
+    * </p>
+    *
+    * @param content the stream from which the content body of the request is read.
+    * @return the request parsed by this parser.
+    * @throws IllegalStateException if the head of the current request is not complete yet.
+    * @throws RuntimeException if an error was found while parsing the request.
+    */
+   HttpRequestImpl getRequest(InputStream content) {
+      if (!isComplete()) {
+         throw new IllegalStateException("Request is not complete");
+      }
+      if (failure != null) {
+         throw failure;
+      }
+      InputStream source = contentLength < 0 ? new ChunkedInputStream(content) : content;
+      RequestBody body = new RequestBody(source, contentLength, memoryLimit);
+      return new HttpRequestImpl(method, path, queryString, protocol, headers.build(), body);
+   }
+
+   /**
+    * Prepares this parser to parse the next request.
+    */
+   void reset() {
+      state = State.REQUEST_LINE;
+      headers = null;
+      failure = null;
+      queryString = null;
+      method = null;
+      protocol = null;
+      contentLength = 0;
+      lineLength = 0;
+      headSize = 0;
+      path = null;
+   }
+
+   private void parseHeadByte(byte b) {
+      headSize += 1;
+      if (headSize > maxHeadSize) {
+         throw new RequestHeaderTooLargeException();
+      }
+      if (b != '\n') {
+         if (lineLength == line.length) {
+            line = Arrays.copyOf(line, Math.min(line.length * 2, maxHeadSize));
+         }
+         line[lineLength++] = b;
+         return;
+      }
+      if (lineLength > 0 && line[lineLength - 1] == '\r') {
+         lineLength -= 1;
+      }
+      if (state == State.REQUEST_LINE) {
+         if (lineLength == 0) {
+            // Empty lines before the request line should be ignored
+            headSize = 0;
+         } else {
+            parseRequestLine();
+            state = State.HEADERS;
+         }
+      } else if (isBlankLine()) {
+         endOfHead();
+      } else {
+         parseHeaderLine();
+      }
+      lineLength = 0;
+   }
+
+   private void parseRequestLine() {
+      int methodEnd = indexOf(' ', 0);
+      int targetEnd = methodEnd < 0 ? -1 : indexOf(' ', methodEnd + 1);
+      if (targetEnd < 0) {
+         throw illegalLine(CoreMessage.ILLEGAL_REQUEST_LINE);
+      }
+      try {
+         method = HttpMethod.valueOf(lineToString(0, methodEnd).toUpperCase());
+      } catch (IllegalArgumentException e) {
+         throw illegalLine(CoreMessage.ILLEGAL_REQUEST_LINE);
+      }
+      protocol = lineToString(targetEnd + 1, lineLength).trim();
+      headers = new ValuesMapBuilder();
+      int targetStart = methodEnd + 1;
+      int queryStart = indexOf('?', targetStart);
+      if (queryStart < 0 || queryStart > targetEnd) {
+         queryStart = targetEnd;
+      } else {
+         queryString = lineToString(queryStart + 1, targetEnd);
+      }
+      String target = lineToString(targetStart, queryStart);
+      if (target.startsWith("http://") || target.startsWith("https://")) {
+         int index = target.indexOf('/', target.indexOf("://") + 3);
+         if (index < 0) {
+            // An absolute target with an empty path refers to the root of the server
+            index = target.length();
+         }
+         headers.add(Headers.HOST, target.substring(0, index));
+         target = index < target.length() ? target.substring(index) : "/";
+      }
+      path = target;
+   }
+
+   private void parseHeaderLine() {
+      int colon = indexOf(':', 0);
+      if (colon < 0) {
+         throw illegalLine(CoreMessage.ILLEGAL_HEADER_LINE);
+      }
+      String name = Headers.normalise(lineToString(0, colon));
+      headers.add(name, lineToString(colon + 1, lineLength).trim());
+   }
+
+   private void endOfHead() {
+      ValuesMap values = headers.build();
+      String[] codings = values.getAll(Headers.TRANSFER_ENCODING);
+      if (codings != null && codings.length > 0) {
+         if (values.contains(Headers.CONTENT_LENGTH)) {
+            // Another intermediary may pick the length instead of the transfer coding
+            throw new BadRequestException(null, null, CoreMessage.ILLEGAL_HEADER_LINE
+                     .with(Headers.TRANSFER_ENCODING + ": " + String.join(", ", codings)));
+         }
+         if (!isChunkedOnly(codings)) {
+            // Content bodies can only be decoded from the chunked transfer coding
+            throw new NotImplementedException();
+         }
+         contentLength = -1;
+         state = State.COMPLETE;
+         return;
+      }
+      String[] lengths = values.getAll(Headers.CONTENT_LENGTH);
+      String length = lengths != null && lengths.length > 0 ? lengths[0].trim() : null;
+      if (lengths != null && lengths.length > 1 || length != null && !isDigits(length)) {
+         // Repeated lengths are rejected since another intermediary may pick a different one
+         throw new BadRequestException(null, null, CoreMessage.ILLEGAL_HEADER_LINE
+                  .with(Headers.CONTENT_LENGTH + ": " + String.join(", ", lengths)));
+      }
+      if (length == null) {
+         if (values.contains(Headers.CONTENT_TYPE)) {
+            throw new LengthRequiredException();
+         }
+         contentLength = 0;
+      } else {
+         try {
+            contentLength = Long.parseLong(length);
+         } catch (NumberFormatException e) {
+            // Only too many digits get here
+            throw new PayloadTooLargeException();
+         }
+         if (contentLength > Integer.MAX_VALUE) {
+            throw new PayloadTooLargeException();
+         }
+      }
+      state = State.COMPLETE;
+   }
+
+   private boolean isBlankLine() {
+      for (int i = 0; i < lineLength; ++i) {
+         if (line[i] != ' ' && line[i] != '\t') {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isChunkedOnly(String[] codings) {
+      int count = 0;
+      for (String header : codings) {
+         for (String coding : header.split(",")) {
+            coding = coding.trim();
+            if (!coding.isEmpty() && (++count > 1 || !"chunked".equalsIgnoreCase(coding))) {
+               return false;
+            }
+         }
+      }
+      return count == 1;
+   }
+
+   private static boolean isDigits(String value) {
+      if (value.isEmpty()) {
+         return false;
+      }
+      for (int i = 0; i < value.length(); ++i) {
+         if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private int indexOf(char ch, int fromIndex) {
+      for (int i = fromIndex; i < lineLength; ++i) {
+         if (line[i] == ch) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private String lineToString(int start, int end) {
+      return new String(line, start, end - start, StandardCharsets.UTF_8);
+   }
+
+   private BadRequestException illegalLine(Localized.Message message) {
+      return new BadRequestException(null, null, message.with(lineToString(0, lineLength)));
+   }
+
+   private enum State {
+      REQUEST_LINE, HEADERS, COMPLETE;
+   }
+}
@@ -23,7 +23,13 @@
 package com.lmpessoa.services.internal.hosting;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import com.lmpessoa.services.GatewayTimeoutException;
 import com.lmpessoa.services.NotFoundException;
 import com.lmpessoa.services.hosting.NextResponder;
 import com.lmpessoa.services.internal.routing.BadResponseException;
@@ -42,14 +48,81 @@ final class InvokeResponder {
          throw new NotFoundException();
       }
       try {
-         return route.invoke();
+         Object result = route.invoke();
+         if (result instanceof CompletionStage && !(result instanceof Future)) {
+            result = toFuture((CompletionStage<?>) result);
+         }
+         if (result instanceof Future) {
+            return suspend((Future<?>) result, route, log);
+         }
+         return result;
       } catch (BadResponseException e) {
-         e.getErrors().stream().map(err -> new ErrorMessage(err, route.getMethod())).forEach(
-                  log::error);
-         throw new InternalServerError("Application produced an unexpected result");
+         throw reportBadResponse(e, route, log);
+      } catch (RuntimeException e) {
+         // Errors are most likely caused by the interruption due to the deadline
+         RequestDeadline deadline = RequestDeadline.current();
+         if (deadline != null && deadline.isExpired()) {
+            throw new GatewayTimeoutException();
+         }
+         throw e;
       }
    }
 
+   private static Future<?> toFuture(CompletionStage<?> stage) {
+      CompletableFuture<Object> result = new CompletableFuture<>();
+      stage.whenComplete((value, error) -> {
+         if (error != null) {
+            result.completeExceptionally(error);
+         } else {
+            result.complete(value);
+         }
+      });
+      return result;
+   }
+
+   private static Object suspend(Future<?> future, RouteMatch route, ILogger log) {
+      // The worker is released while the result is produced but not for longer than the deadline
+      RequestDeadline deadline = RequestDeadline.current();
+      long timeout = 0;
+      if (deadline != null && deadline.isLimited()) {
+         timeout = Math.max(1, deadline.getRemainingTime());
+      }
+      return new SuspendedResponse(future, timeout, () -> getResult(future, route, log));
+   }
+
+   private static Object getResult(Future<?> future, RouteMatch route, ILogger log) {
+      if (!future.isDone()) {
+         future.cancel(true);
+         throw new GatewayTimeoutException();
+      }
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+         }
+         if (cause instanceof BadResponseException) {
+            throw reportBadResponse((BadResponseException) cause, route, log);
+         } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new InternalServerError(cause);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InternalServerError(e);
+      }
+   }
+
+   private static InternalServerError reportBadResponse(BadResponseException e, RouteMatch route,
+      ILogger log) {
+      e.getErrors().stream().map(err -> new ErrorMessage(err, route.getMethod())).forEach(
+               log::error);
+      return new InternalServerError("Application produced an unexpected result");
+   }
+
    private static class ErrorMessage extends Throwable {
 
       private static final long serialVersionUID = 1L;
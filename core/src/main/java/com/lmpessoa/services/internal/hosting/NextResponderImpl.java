@@ -26,6 +26,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import com.lmpessoa.services.hosting.NextResponder;
 import com.lmpessoa.services.internal.ClassUtils;
@@ -33,11 +35,22 @@ import com.lmpessoa.services.internal.CoreMessage;
 import com.lmpessoa.services.internal.services.NoSingleMethodException;
 import com.lmpessoa.services.internal.services.ServiceMap;
 
+/**
+ * Invokes the next responder in the chain of responders of the application.
+ *
+ * <p>
+ * Responders registered by the application always receive the actual result of the next
+ * responder. If that result is a suspended response, the call to the next responder does not
+ * return to them; instead they are invoked again with the actual result when the suspended
+ * response is resumed, possibly by another thread.
+ * </p>
+ */
 final class NextResponderImpl implements NextResponder {
 
    private final ApplicationOptions options;
    private final List<Class<?>> handlers;
    private final ServiceMap services;
+   private final Replay replay;
 
    private boolean invoked = false;
 
@@ -51,8 +64,30 @@ final class NextResponderImpl implements NextResponder {
       if (handlerClass == null) {
          return null;
       }
+      boolean applicationResponder = options.isApplicationResponder(handlerClass);
+      if (replay == null && applicationResponder) {
+         return invokeApplicationResponders(new Replay());
+      } else if (replay != null && !applicationResponder) {
+         return invokeAfterApplicationResponders(handlerClass);
+      }
+      return invoke(handlerClass, replay);
+   }
+
+   NextResponderImpl(ServiceMap services, List<Class<?>> handlers, ApplicationOptions options) {
+      this(services, handlers, options, null);
+   }
+
+   private NextResponderImpl(ServiceMap services, List<Class<?>> handlers,
+      ApplicationOptions options, Replay replay) {
+      this.services = services;
+      this.handlers = handlers;
+      this.options = options;
+      this.replay = replay;
+   }
+
+   private Object invoke(Class<?> handlerClass, Replay replay) {
       NextResponder next = new NextResponderImpl(services, handlers.subList(1, handlers.size()),
-               options);
+               options, replay);
       try {
          Constructor<?> constructor = findConstructor(handlerClass);
          Object[] params = new Object[] { next };
@@ -69,16 +104,49 @@ final class NextResponderImpl implements NextResponder {
          if (e.getCause() instanceof InternalServerError) {
             throw (InternalServerError) e.getCause();
          }
+         if (e.getCause() instanceof Suspension) {
+            throw (Suspension) e.getCause();
+         }
          throw new InternalServerError(e.getCause());
       } catch (Exception e) {
          throw new InternalServerError(e);
       }
    }
 
-   NextResponderImpl(ServiceMap services, List<Class<?>> handlers, ApplicationOptions options) {
-      this.services = services;
-      this.handlers = handlers;
-      this.options = options;
+   private Object invokeApplicationResponders(Replay replay) {
+      Object result;
+      try {
+         result = new NextResponderImpl(services, handlers, options, replay).invoke();
+      } catch (RuntimeException e) {
+         if (replay.suspended == null) {
+            throw e;
+         }
+         // Whatever application responders did with the suspension is discarded
+         result = null;
+      }
+      if (replay.suspended == null) {
+         return result;
+      }
+      // Application responders run again once the result is produced, probably by another thread
+      Map<Class<?>, Object> values = services.getRequestValues();
+      return replay.suspended.map(produced -> {
+         services.putRequestValues(values);
+         Replay resumed = new Replay();
+         resumed.produced = produced;
+         return new NextResponderImpl(services, handlers, options, resumed).invoke();
+      });
+   }
+
+   private Object invokeAfterApplicationResponders(Class<?> handlerClass) {
+      if (replay.produced != null) {
+         return replay.produced.get();
+      }
+      Object result = invoke(handlerClass, null);
+      if (result instanceof SuspendedResponse) {
+         replay.suspended = (SuspendedResponse) result;
+         throw new Suspension();
+      }
+      return result;
    }
 
    private Constructor<?> findConstructor(Class<?> handlerClass) {
@@ -102,4 +170,28 @@ final class NextResponderImpl implements NextResponder {
          throw ex;
       }
    }
+
+   /**
+    * Holds the state shared by the responders registered by the application while responding to
+    * a single request.
+    */
+   private static final class Replay {
+
+      private SuspendedResponse suspended = null;
+      private Supplier<?> produced = null;
+   }
+
+   /**
+    * Unwinds the responders registered by the application when the result they wait for is
+    * suspended.
+    */
+   private static final class Suspension extends RuntimeException {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public synchronized Throwable fillInStackTrace() {
+         return this;
+      }
+   }
 }
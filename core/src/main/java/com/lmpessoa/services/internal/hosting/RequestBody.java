@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+
+/**
+ * Represents the content body of a request.
+ *
+ * <p>
+ * Content bodies are read from the connection they were received through only when needed. Bodies
+ * smaller than a given limit are read into memory on first access and may be read any number of
+ * times. Larger bodies, as well as bodies sent in chunks whose length is not known beforehand, are
+ * streamed directly from the connection and thus can only be read once.
+ * </p>
+ *
+ * <p>
+ * Once the response to a request is resolved, the connection must be ready to read the next
+ * request. At that point, what is left of the body is discarded unless something may still read it
+ * after the request is resolved: either the body was retained (i.e. by an asynchronous job) or the
+ * response was suspended and the body was already requested. Only then is any large body spilled to
+ * a temporary file, thus enabling it to be read later without ever holding it entirely in memory.
+ * </p>
+ *
+ * <p>
+ * Temporary files are deleted as soon as the stream is read to its end or closed. Otherwise they
+ * are deleted once the request is over, unless the body was retained (i.e. by an asynchronous job)
+ * in which case whoever retained it is responsible for closing it.
+ * </p>
+ */
+final class RequestBody {
+
+   private static final ThreadLocal<RequestBody> current = new ThreadLocal<>();
+   private static final int BUFFER_SIZE = 8192;
+
+   private final int memoryLimit;
+   private final long length;
+
+   private InputStream source;
+   private ContentStream stream;
+   private long remaining;
+   private byte[] content;
+   private boolean retained = false;
+   private boolean closed = false;
+   private File spillFile;
+
+   RequestBody(InputStream source, long length, int memoryLimit) {
+      this.source = Objects.requireNonNull(source);
+      this.memoryLimit = memoryLimit;
+      // Bodies of unknown length are read until the end of their source
+      this.remaining = length < 0 ? Long.MAX_VALUE : length;
+      this.length = length;
+   }
+
+   /**
+    * Returns the content body of the request being resolved by the current thread.
+    *
+    * @return the content body of the request being resolved by the current thread, or {@code null}
+    *         if the current thread is not resolving a request.
+    */
+   static RequestBody current() {
+      return current.get();
+   }
+
+   /**
+    * Marks this content body as the one of the request being resolved by the current thread.
+    */
+   void bind() {
+      current.set(this);
+   }
+
+   /**
+    * Clears the content body of the request being resolved by the current thread.
+    */
+   static void unbind() {
+      current.remove();
+   }
+
+   /**
+    * Returns the length of this content body in bytes.
+    *
+    * @return the length of this content body in bytes, or -1 if the length is not known.
+    */
+   long getLength() {
+      return length;
+   }
+
+   /**
+    * Returns a stream from which this content body can be read.
+    *
+    * <p>
+    * Bodies kept in memory return a new stream every time this method is called. Larger bodies
+    * always return the same stream, which continues from where it was last read.
+    * </p>
+    *
+    * @return a stream from which this content body can be read.
+    * @throws IOException if an I/O error occurs while reading the content body into memory.
+    */
+   synchronized InputStream open() throws IOException {
+      if (isKeptInMemory()) {
+         return new ByteArrayInputStream(readContent());
+      }
+      if (stream == null) {
+         stream = new ContentStream();
+      }
+      return stream;
+   }
+
+   /**
+    * Reads this entire content body.
+    *
+    * @return the bytes of this content body not read yet.
+    * @throws IOException if an I/O error occurs while reading the content body.
+    */
+   synchronized byte[] readAll() throws IOException {
+      if (isKeptInMemory()) {
+         return readContent();
+      }
+      if (length < 0) {
+         return readToEnd();
+      }
+      if (remaining > Integer.MAX_VALUE) {
+         throw new PayloadTooLargeException();
+      }
+      byte[] result = new byte[(int) remaining];
+      readFully(source, result);
+      remaining = 0;
+      return result;
+   }
+
+   /**
+    * Detaches this content body from the connection it was received through.
+    *
+    * <p>
+    * After this method returns, no part of this content body is left to be read from the
+    * connection. If this content body was retained, or if the response was suspended and the
+    * content body was already requested, what is left of it is either read into memory or spilled
+    * to a temporary file. Otherwise it is discarded.
+    * </p>
+    *
+    * @param suspended whether the response to the request was suspended.
+    * @throws IOException if an I/O error occurs while reading the content body.
+    */
+   synchronized void detach(boolean suspended) throws IOException {
+      if (remaining == 0 || spillFile != null) {
+         return;
+      }
+      if (closed || !retained && (!suspended || stream == null)) {
+         // Nobody can read the content body once the response is sent
+         discard();
+      } else if (isKeptInMemory()) {
+         readContent();
+      } else if (length >= 0 && remaining <= memoryLimit) {
+         byte[] rest = new byte[(int) remaining];
+         readFully(source, rest);
+         source = new ByteArrayInputStream(rest);
+      } else {
+         spill();
+      }
+   }
+
+   /**
+    * Prevents this content body from being closed once its request is over.
+    *
+    * <p>
+    * Whoever retains a content body becomes responsible for {@link #close() closing} it once it is
+    * no longer needed.
+    * </p>
+    */
+   synchronized void retain() {
+      retained = true;
+   }
+
+   /**
+    * Signals that the request this content body belongs to is over.
+    *
+    * <p>
+    * Content bodies which were not retained are closed.
+    * </p>
+    *
+    * @throws IOException if an I/O error occurs while closing the content body.
+    */
+   synchronized void requestOver() throws IOException {
+      if (!retained) {
+         close();
+      }
+   }
+
+   /**
+    * Closes this content body.
+    *
+    * <p>
+    * Any temporary file holding this content body is deleted and streams of this content body
+    * cannot be read anymore.
+    * </p>
+    *
+    * @throws IOException if an I/O error occurs while closing the content body.
+    */
+   synchronized void close() throws IOException {
+      closed = true;
+      release();
+   }
+
+   private boolean isKeptInMemory() {
+      return content != null || length >= 0 && length <= memoryLimit;
+   }
+
+   private byte[] readContent() throws IOException {
+      if (content == null) {
+         content = new byte[(int) length];
+         readFully(source, content);
+         remaining = 0;
+      }
+      return content;
+   }
+
+   private byte[] readToEnd() throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = readSource(buffer, 0, buffer.length)) >= 0) {
+         if (result.size() > Integer.MAX_VALUE - BUFFER_SIZE - read) {
+            throw new PayloadTooLargeException();
+         }
+         result.write(buffer, 0, read);
+      }
+      return result.toByteArray();
+   }
+
+   private void discard() throws IOException {
+      byte[] buffer = new byte[(int) Math.min(remaining, BUFFER_SIZE)];
+      while (readSource(buffer, 0, buffer.length) >= 0) {
+         // Just skips the rest of the content body
+      }
+   }
+
+   private void spill() throws IOException {
+      File file = File.createTempFile("request", ".body");
+      try (OutputStream output = new FileOutputStream(file)) {
+         byte[] buffer = new byte[BUFFER_SIZE];
+         long left = remaining;
+         while (left > 0) {
+            int read = source.read(buffer, 0, (int) Math.min(left, buffer.length));
+            if (read < 0 && length < 0) {
+               break;
+            } else if (read < 0) {
+               throw new EOFException();
+            }
+            output.write(buffer, 0, read);
+            left -= read;
+         }
+      } catch (IOException e) {
+         file.delete();
+         throw e;
+      }
+      spillFile = file;
+      source = new FileInputStream(file);
+   }
+
+   private synchronized int readChunk(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+         throw new IOException("Stream closed");
+      }
+      int read = readSource(b, off, len);
+      if (read < 0) {
+         release();
+      }
+      return read;
+   }
+
+   private int readSource(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+         return -1;
+      }
+      int read = source.read(b, off, (int) Math.min(len, remaining));
+      if (read < 0 && length < 0) {
+         remaining = 0;
+      } else if (read < 0) {
+         throw new EOFException();
+      } else {
+         remaining -= read;
+      }
+      return read;
+   }
+
+   private synchronized void release() throws IOException {
+      if (spillFile != null) {
+         File file = spillFile;
+         spillFile = null;
+         remaining = 0;
+         try {
+            source.close();
+         } finally {
+            Files.deleteIfExists(file.toPath());
+         }
+      }
+   }
+
+   private static void readFully(InputStream input, byte[] data) throws IOException {
+      int offset = 0;
+      while (offset < data.length) {
+         int read = input.read(data, offset, data.length - offset);
+         if (read < 0) {
+            throw new EOFException();
+         }
+         offset += read;
+      }
+   }
+
+   private class ContentStream extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+         } else if (len == 0) {
+            return 0;
+         }
+         return readChunk(b, off, len);
+      }
+
+      @Override
+      public int available() {
+         synchronized (RequestBody.this) {
+            return length < 0 ? 0 : (int) Math.min(remaining, Integer.MAX_VALUE);
+         }
+      }
+
+      @Override
+      public void close() throws IOException {
+         // Closing the stream must never close the connection it reads from
+         RequestBody.this.close();
+      }
+   }
+}
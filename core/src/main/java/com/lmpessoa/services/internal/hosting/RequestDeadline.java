@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.lmpessoa.services.hosting.IDeadline;
+
+/**
+ * Enforces the deadline of a request.
+ *
+ * <p>
+ * A deadline is armed by the thread responding to the request. If the deadline expires before it is
+ * disarmed, the thread is interrupted so that blocking operations performed by the application are
+ * abandoned as soon as possible.
+ * </p>
+ */
+final class RequestDeadline implements IDeadline {
+
+   private static final ThreadLocal<RequestDeadline> current = new ThreadLocal<>();
+
+   private final Supplier<TimerWheel> timer;
+   private final boolean limited;
+   private final long expiry;
+
+   private TimerWheel.Timeout task = null;
+   private boolean interrupted = false;
+   private Thread worker = null;
+
+   /**
+    * Creates a new request deadline.
+    *
+    * @param seconds the maximum number of seconds for the request to be responded, or zero if the
+    *           request is not limited.
+    * @param timer provides the timer used to interrupt the request when the deadline expires, which
+    *           may provide {@code null} if requests can no longer be interrupted.
+    */
+   RequestDeadline(int seconds, Supplier<TimerWheel> timer) {
+      this.limited = seconds > 0;
+      this.expiry = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(seconds, 0));
+      this.timer = timer;
+   }
+
+   /**
+    * Returns the deadline armed by the current thread.
+    *
+    * @return the deadline armed by the current thread, or {@code null} if no deadline is armed.
+    */
+   static RequestDeadline current() {
+      return current.get();
+   }
+
+   @Override
+   public boolean isLimited() {
+      return limited;
+   }
+
+   @Override
+   public long getRemainingTime() {
+      if (!limited) {
+         return Long.MAX_VALUE;
+      }
+      return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiry - System.nanoTime()));
+   }
+
+   @Override
+   public boolean isExpired() {
+      return limited && System.nanoTime() - expiry >= 0;
+   }
+
+   /**
+    * Starts watching the deadline on behalf of the current thread.
+    */
+   synchronized void arm() {
+      current.set(this);
+      long delay = expiry - System.nanoTime();
+      TimerWheel wheel = limited && delay > 0 ? timer.get() : null;
+      if (wheel != null) {
+         worker = Thread.currentThread();
+         task = wheel.schedule(this::expire, delay, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   /**
+    * Stops watching the deadline.
+    *
+    * <p>
+    * If the current thread was interrupted due to the deadline expiring, its interrupted status is
+    * cleared so it can be used to send the response.
+    * </p>
+    */
+   synchronized void disarm() {
+      current.remove();
+      if (task != null) {
+         task.cancel();
+         task = null;
+      }
+      worker = null;
+      if (interrupted) {
+         interrupted = false;
+         Thread.interrupted();
+      }
+   }
+
+   private synchronized void expire() {
+      if (worker != null) {
+         interrupted = true;
+         worker.interrupt();
+      }
+   }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+import com.lmpessoa.services.HttpInputStream;
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpRequest;
+
+/**
+ * Compresses the contents of responses for user agents that accept compressed content.
+ *
+ * <p>
+ * Only textual contents are compressed and only if their length is unknown or not smaller than the
+ * configured threshold. Both the gzip and deflate content codings are supported and the one
+ * preferred by the user agent in the "Accept-Encoding" header of the request is used.
+ * </p>
+ *
+ * <p>
+ * Compressed variants of files (like static files and the favicon) are kept in temporary files so
+ * each file is compressed only once for each content coding, at least until the file is changed.
+ * Concurrent requests for a file not compressed yet wait for the same variant instead of each
+ * compressing the file again. Variants are sent just like the files they were created from.
+ * </p>
+ */
+final class ResponseCompressor {
+
+   static final String GZIP = "gzip";
+   static final String DEFLATE = "deflate";
+
+   private static final int MAX_CACHED_FILES = 256;
+   private static final int MAX_BUFFERED = 65536;
+   private static final int BUFFER_SIZE = 8192;
+
+   private final Map<String, CompletableFuture<CompressedFile>> cache = Collections
+            .synchronizedMap(new FileCache());
+   private final int threshold;
+
+   /**
+    * Creates a new {@code ResponseCompressor}.
+    *
+    * @param threshold the minimum length of contents to be compressed, or a negative value if
+    *           contents should never be compressed.
+    */
+   ResponseCompressor(int threshold) {
+      this.threshold = threshold;
+   }
+
+   /**
+    * Returns whether the given content is eligible for compression.
+    *
+    * <p>
+    * Responses with eligible content may vary according to the "Accept-Encoding" header of the
+    * request and should state so in the "Vary" header.
+    * </p>
+    *
+    * @param content the content to be evaluated.
+    * @return {@code true} if the given content is eligible for compression, {@code false}
+    *         otherwise.
+    */
+   boolean isCompressible(HttpInputStream content) {
+      if (threshold < 0 || content == null || !SerializerResponder.isTextual(content.getType())) {
+         return false;
+      }
+      long length = content.getContentLength();
+      return length < 0 || length > 0 && length >= threshold;
+   }
+
+   /**
+    * Returns the content coding to be used to send the given content in response to a request.
+    *
+    * @param request the request being responded to.
+    * @param content the content of the response.
+    * @return the name of the content coding to be used, or {@code null} if the content should not
+    *         be compressed.
+    */
+   String negotiate(HttpRequest request, HttpInputStream content) {
+      if (!isCompressible(content)) {
+         return null;
+      }
+      return selectEncoding(request.getHeaders().getAll(Headers.ACCEPT_ENCODING));
+   }
+
+   /**
+    * Returns a stream with the given content compressed with the given content coding.
+    *
+    * <p>
+    * Small contents of known length are compressed in advance so the length of the compressed
+    * contents is known as well. Files are compressed only once and later requests reuse the
+    * compressed variant of the file. Any other content is compressed while it is sent, and thus
+    * the length of the compressed content is unknown.
+    * </p>
+    *
+    * @param content the content to be compressed.
+    * @param encoding the name of the content coding to be used.
+    * @return a stream with the compressed contents.
+    * @throws IOException if an I/O error occurs while compressing the contents.
+    */
+   HttpInputStream compress(HttpInputStream content, String encoding) throws IOException {
+      File file = content.getFile();
+      FileChannel channel = content.getChannel();
+      if (file != null && channel != null && channel.position() == 0) {
+         return copyOf(content, openCompressed(file, encoding));
+      }
+      long length = content.getContentLength();
+      if (length >= 0 && length <= MAX_BUFFERED) {
+         ByteArrayOutputStream result = new ByteArrayOutputStream((int) length);
+         try (InputStream input = encode(content, encoding)) {
+            copy(input, result);
+         }
+         return copyOf(content, new ByteArrayInputStream(result.toByteArray()));
+      }
+      return copyOf(content, encode(content, encoding));
+   }
+
+   static String selectEncoding(String[] acceptEncoding) {
+      if (acceptEncoding == null) {
+         return null;
+      }
+      float gzip = -1;
+      float deflate = -1;
+      float any = -1;
+      for (String value : acceptEncoding) {
+         for (String item : value.split(",")) {
+            String[] parts = item.split(";");
+            float quality = getQuality(parts);
+            switch (parts[0].trim().toLowerCase()) {
+               case GZIP:
+               case "x-gzip":
+                  gzip = quality;
+                  break;
+               case DEFLATE:
+                  deflate = quality;
+                  break;
+               case "*":
+                  any = quality;
+                  break;
+               default:
+                  break;
+            }
+         }
+      }
+      if (gzip < 0) {
+         gzip = any;
+      }
+      if (deflate < 0) {
+         deflate = any;
+      }
+      if (gzip <= 0 && deflate <= 0) {
+         return null;
+      }
+      return gzip >= deflate ? GZIP : DEFLATE;
+   }
+
+   private static float getQuality(String[] parts) {
+      for (int i = 1; i < parts.length; ++i) {
+         String param = parts[i].trim();
+         if (param.startsWith("q=") || param.startsWith("Q=")) {
+            try {
+               return Math.max(0, Math.min(1, Float.parseFloat(param.substring(2).trim())));
+            } catch (NumberFormatException e) {
+               return 0;
+            }
+         }
+      }
+      return 1;
+   }
+
+   private HttpInputStream openCompressed(File file, String encoding) throws IOException {
+      String key = encoding + ':' + file.getAbsolutePath();
+      while (true) {
+         CompletableFuture<CompressedFile> created = new CompletableFuture<>();
+         CompletableFuture<CompressedFile> variant = cache.computeIfAbsent(key, k -> created);
+         if (variant == created) {
+            CompressedFile result;
+            try {
+               result = new CompressedFile(file, encoding);
+            } catch (IOException | RuntimeException e) {
+               cache.remove(key, created);
+               created.completeExceptionally(e);
+               throw e;
+            }
+            created.complete(result);
+            return new HttpInputStream(result.variant);
+         }
+         CompressedFile cached = await(variant);
+         if (cached.isVariantOf(file)) {
+            try {
+               return new HttpInputStream(cached.variant);
+            } catch (FileNotFoundException e) {
+               // Evicted from the cache in the meantime
+            }
+         }
+         if (cache.remove(key, variant)) {
+            cached.delete();
+         }
+      }
+   }
+
+   private static CompressedFile await(CompletableFuture<CompressedFile> variant)
+      throws IOException {
+      try {
+         return variant.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         throw new IOException(e.getCause());
+      }
+   }
+
+   private static HttpInputStream copyOf(HttpInputStream content, InputStream stream) {
+      HttpInputStream result = new HttpInputStream(stream, content.getType(),
+               content.getEncoding(), content.getFilename());
+      result.setDownloadable(content.isDownloadable());
+      result.setDate(content.getDate());
+      return result;
+   }
+
+   private static InputStream encode(InputStream source, String encoding) {
+      if (GZIP.equals(encoding)) {
+         return new GzipInputStream(source);
+      }
+      return new DeflaterInputStream(source);
+   }
+
+   private static void copy(InputStream input, OutputStream output) throws IOException {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int len;
+      while ((len = input.read(buffer)) != -1) {
+         output.write(buffer, 0, len);
+      }
+   }
+
+   private static final class CompressedFile {
+
+      private final long lastModified;
+      private final long length;
+      private final File variant;
+
+      CompressedFile(File file, String encoding) throws IOException {
+         this.lastModified = file.lastModified();
+         this.length = file.length();
+         this.variant = File.createTempFile("compressed", '.' + encoding);
+         variant.deleteOnExit();
+         try (InputStream input = encode(new FileInputStream(file), encoding);
+                  OutputStream output = new FileOutputStream(variant)) {
+            copy(input, output);
+         } catch (IOException e) {
+            delete();
+            throw e;
+         }
+      }
+
+      boolean isVariantOf(File file) {
+         return file.lastModified() == lastModified && file.length() == length
+                  && variant.exists();
+      }
+
+      void delete() {
+         if (!variant.delete()) {
+            // Still in use; will be deleted on exit
+            variant.deleteOnExit();
+         }
+      }
+   }
+
+   private static final class FileCache
+      extends LinkedHashMap<String, CompletableFuture<CompressedFile>> {
+
+      private static final long serialVersionUID = 1L;
+
+      FileCache() {
+         super(16, 0.75f, true);
+      }
+
+      @Override
+      protected boolean removeEldestEntry(
+         Map.Entry<String, CompletableFuture<CompressedFile>> eldest) {
+         if (size() > MAX_CACHED_FILES) {
+            // Variants still being created are deleted once they are done
+            eldest.getValue().thenAccept(CompressedFile::delete);
+            return true;
+         }
+         return false;
+      }
+   }
+
+   /**
+    * An input stream that compresses the contents of another stream in the gzip format.
+    */
+   private static final class GzipInputStream extends InputStream {
+
+      private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0,
+               0, 0 };
+
+      private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      private final CheckedInputStream source;
+      private final InputStream body;
+
+      private byte[] pending = HEADER;
+      private int pendingPos = 0;
+      private boolean finished = false;
+
+      GzipInputStream(InputStream source) {
+         this.source = new CheckedInputStream(source, new CRC32());
+         this.body = new DeflaterInputStream(this.source, deflater, BUFFER_SIZE);
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         }
+         if (pending == null && !finished) {
+            int read = body.read(b, off, len);
+            if (read >= 0) {
+               return read;
+            }
+            pending = trailer();
+            pendingPos = 0;
+            finished = true;
+         }
+         if (pending == null) {
+            return -1;
+         }
+         int length = Math.min(len, pending.length - pendingPos);
+         System.arraycopy(pending, pendingPos, b, off, length);
+         pendingPos += length;
+         if (pendingPos == pending.length) {
+            pending = null;
+         }
+         return length;
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            source.close();
+         } finally {
+            deflater.end();
+         }
+      }
+
+      private byte[] trailer() {
+         long crc = source.getChecksum().getValue();
+         long size = deflater.getBytesRead();
+         byte[] result = new byte[8];
+         for (int i = 0; i < 4; ++i) {
+            result[i] = (byte) (crc >>> (8 * i));
+            result[i + 4] = (byte) (size >>> (8 * i));
+         }
+         return result;
+      }
+   }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpResponse;
+
+/**
+ * Encodes the head of HTTP responses directly into bytes.
+ *
+ * <p>
+ * Status lines for every known status code and names of the headers listed in {@link Headers} are
+ * encoded only once and copied as they are into every response. Other header names and values are
+ * encoded as they are written, without creating intermediate strings.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are not thread safe but can be reused for several responses as long as
+ * they are {@link #reset() reset} between responses.
+ * </p>
+ */
+final class ResponseHeadEncoder {
+
+   private static final byte[] CRLF = { '\r', '\n' };
+   private static final byte[] STATUS_PREFIX = ascii("HTTP/1.1 ");
+   private static final int MIN_STATUS = 100;
+   private static final int MAX_STATUS = 599;
+   private static final String[] STATUS_LABELS = new String[MAX_STATUS - MIN_STATUS + 1];
+   private static final byte[][] STATUS_LINES = encodeStatusLines();
+   private static final Map<String, byte[]> HEADER_NAMES = encodeHeaderNames();
+
+   private byte[] buffer = new byte[512];
+   private int count = 0;
+
+   /**
+    * Writes the status line for the given response.
+    *
+    * @param response the response whose status line is to be written.
+    */
+   void status(HttpResponse response) {
+      int code = response.getStatusCode();
+      String label = response.getStatusLabel();
+      if (code >= MIN_STATUS && code <= MAX_STATUS && STATUS_LINES[code - MIN_STATUS] != null
+               && STATUS_LABELS[code - MIN_STATUS].equals(label)) {
+         put(STATUS_LINES[code - MIN_STATUS]);
+         return;
+      }
+      put(STATUS_PREFIX);
+      put(code);
+      put((byte) ' ');
+      put(label);
+      put(CRLF);
+   }
+
+   /**
+    * Writes a header with the given name and value.
+    *
+    * @param name the name of the header.
+    * @param value the value of the header.
+    */
+   void header(String name, String value) {
+      name(name);
+      put(value);
+      put(CRLF);
+   }
+
+   /**
+    * Writes a header with the given name and numeric value.
+    *
+    * @param name the name of the header.
+    * @param value the value of the header.
+    */
+   void header(String name, long value) {
+      name(name);
+      put(value);
+      put(CRLF);
+   }
+
+   /**
+    * Writes a "Date" header with the given value.
+    *
+    * <p>
+    * Values provided by {@link DateClock#now()} are written using their already encoded form.
+    * </p>
+    *
+    * @param value the value of the header.
+    */
+   void date(String value) {
+      byte[] line = DateClock.getHeaderLine(value);
+      if (line != null) {
+         put(line);
+      } else {
+         header(Headers.DATE, value);
+      }
+   }
+
+   /**
+    * Starts a header with the given name.
+    *
+    * <p>
+    * The value of the header must be written with {@link #value(String)} and the header must be
+    * finished by {@link #endHeader()}.
+    * </p>
+    *
+    * @param name the name of the header.
+    */
+   void name(String name) {
+      byte[] encoded = HEADER_NAMES.get(name);
+      if (encoded != null) {
+         put(encoded);
+      } else {
+         put(name);
+         put((byte) ':');
+         put((byte) ' ');
+      }
+   }
+
+   /**
+    * Writes part of the value of a header started by {@link #name(String)}.
+    *
+    * @param value the part of the value to be written.
+    */
+   void value(String value) {
+      put(value);
+   }
+
+   /**
+    * Finishes a header started by {@link #name(String)}.
+    */
+   void endHeader() {
+      put(CRLF);
+   }
+
+   /**
+    * Finishes the head of the response.
+    */
+   void end() {
+      put(CRLF);
+   }
+
+   /**
+    * Discards everything written so far so this encoder can be used for another response.
+    */
+   void reset() {
+      count = 0;
+   }
+
+   /**
+    * Writes the bytes encoded so far to the given stream.
+    *
+    * @param output the stream to which the bytes are to be written.
+    * @throws IOException if an I/O error occurs while writing to the stream.
+    */
+   void writeTo(OutputStream output) throws IOException {
+      output.write(buffer, 0, count);
+   }
+
+   /**
+    * Returns a copy of the bytes encoded so far.
+    *
+    * @return a copy of the bytes encoded so far.
+    */
+   byte[] toByteArray() {
+      return Arrays.copyOf(buffer, count);
+   }
+
+   private void put(byte b) {
+      ensureCapacity(1);
+      buffer[count++] = b;
+   }
+
+   private void put(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, count, bytes.length);
+      count += bytes.length;
+   }
+
+   private void put(String value) {
+      if (value == null) {
+         value = "null";
+      }
+      int length = value.length();
+      ensureCapacity(length);
+      for (int i = 0; i < length; ++i) {
+         char ch = value.charAt(i);
+         if (ch >= 0x80) {
+            // Header values should be plain ASCII but are not always so
+            put(value.getBytes(StandardCharsets.UTF_8));
+            return;
+         }
+         buffer[count + i] = (byte) ch;
+      }
+      count += length;
+   }
+
+   private void put(long value) {
+      if (value < 0) {
+         put((byte) '-');
+         value = -value;
+      }
+      int digits = 1;
+      for (long i = value; i >= 10; i /= 10) {
+         digits += 1;
+      }
+      ensureCapacity(digits);
+      for (int i = count + digits - 1; i >= count; --i) {
+         buffer[i] = (byte) ('0' + value % 10);
+         value /= 10;
+      }
+      count += digits;
+   }
+
+   private void ensureCapacity(int length) {
+      if (count + length > buffer.length) {
+         buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+      }
+   }
+
+   private static byte[][] encodeStatusLines() {
+      byte[][] result = new byte[STATUS_LABELS.length][];
+      for (int i = 0; i < result.length; ++i) {
+         final int code = MIN_STATUS + i;
+         String label = ((HttpResponse) () -> code).getStatusLabel();
+         if (label != null) {
+            result[i] = ascii(String.format("HTTP/1.1 %d %s\r\n", code, label));
+            STATUS_LABELS[i] = label;
+         }
+      }
+      return result;
+   }
+
+   private static Map<String, byte[]> encodeHeaderNames() {
+      Map<String, byte[]> result = new HashMap<>();
+      for (Field field : Headers.class.getFields()) {
+         if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+            try {
+               String name = (String) field.get(null);
+               result.put(name, ascii(name + ": "));
+            } catch (IllegalAccessException e) {
+               // Cannot happen since only public fields are listed
+            }
+         }
+      }
+      return result;
+   }
+
+   private static byte[] ascii(String value) {
+      return value.getBytes(StandardCharsets.US_ASCII);
+   }
+}
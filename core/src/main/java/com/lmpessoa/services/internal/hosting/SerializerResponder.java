@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.lmpessoa.services.BadRequestException;
@@ -62,6 +63,14 @@ import com.lmpessoa.services.routing.RouteMatch;
 
 final class SerializerResponder {
 
+   private static final ClassValue<Method[]> DATE_HEADER_METHODS = new ClassValue<Method[]>() {
+
+      @Override
+      protected Method[] computeValue(Class<?> type) {
+         return ClassUtils.findMethods(type, SerializerResponder::isDateHeaderMethod);
+      }
+   };
+
    private NextResponder next;
 
    public SerializerResponder(NextResponder next) {
@@ -72,6 +81,25 @@ final class SerializerResponder {
       ILogger log) throws IOException {
       Localization.setLocales(request.getAcceptedLanguages());
       Object obj = getResultObject(request);
+      if (obj instanceof SuspendedResponse) {
+         // The result can only be serialised once it is produced, probably by another thread
+         return ((SuspendedResponse) obj).map(result -> {
+            Localization.setLocales(request.getAcceptedLanguages());
+            return respondWith(getResultObject(result), request, route, log);
+         });
+      }
+      return respondWith(obj, request, route, log);
+   }
+
+   static boolean isTextual(String contentType) {
+      List<String> extraTextTypes = Arrays.asList(ContentType.ATOM, ContentType.JS,
+               ContentType.JSON, ContentType.RSS, ContentType.SVG, ContentType.WSDL,
+               ContentType.XHTML, ContentType.XML);
+      return contentType.startsWith("text/") || extraTextTypes.contains(contentType);
+   }
+
+   private HttpResponse respondWith(Object obj, HttpRequest request, RouteMatch route,
+      ILogger log) {
       if (obj instanceof HttpResponse) {
          if (obj instanceof BadRequestException) {
             ((BadRequestException) obj).setRequest(request);
@@ -94,18 +122,11 @@ final class SerializerResponder {
       }
       String date = getDateHeaderFromContent(obj, log);
       if (date == null) {
-         date = DateHeader.RFC_7231_DATE_TIME.format(ZonedDateTime.now());
+         date = DateClock.now();
       }
       return new HttpResponseImpl(statusCode, is, date);
    }
 
-   static boolean isTextual(String contentType) {
-      List<String> extraTextTypes = Arrays.asList(ContentType.ATOM, ContentType.JS,
-               ContentType.JSON, ContentType.RSS, ContentType.SVG, ContentType.WSDL,
-               ContentType.XHTML, ContentType.XML);
-      return contentType.startsWith("text/") || extraTextTypes.contains(contentType);
-   }
-
    private static boolean isDateHeaderMethod(Method method) {
       Class<?> retType = method.getReturnType();
       int mod = method.getModifiers();
@@ -119,8 +140,12 @@ final class SerializerResponder {
       if (!Arrays.asList("HTTP/1.0", "HTTP/1.1").contains(request.getProtocol())) {
          return new VersionNotSupportedError(request.getProtocol());
       }
+      return getResultObject(next::invoke);
+   }
+
+   private Object getResultObject(Supplier<?> supplier) {
       try {
-         Object result = next.invoke();
+         Object result = supplier.get();
          if (result instanceof URL) {
             return Redirect.to((URL) result);
          }
@@ -146,8 +171,7 @@ final class SerializerResponder {
       }
       // Find the field or getter with @DateInfo
       TemporalAccessor result = null;
-      Class<?> clazz = obj.getClass();
-      Method[] methods = ClassUtils.findMethods(clazz, SerializerResponder::isDateHeaderMethod);
+      Method[] methods = DATE_HEADER_METHODS.get(obj.getClass());
       if (methods.length > 1) {
          log.debug("Too many methods providing date header: "
                   + Arrays.stream(methods).map(Method::getName).collect(Collectors.joining(", ")));
@@ -170,19 +194,11 @@ final class SerializerResponder {
          return null;
       }
 
-      // Convert LocalDateTime, ZonedDateTime or Instant to OffsetDateTime
-      ZonedDateTime dt;
+      // Local dates are assumed to be in the default time zone; others are converted to GMT
       if (result instanceof LocalDateTime) {
-         dt = ((LocalDateTime) result).atZone(ZoneId.systemDefault());
-      } else if (result instanceof Instant) {
-         dt = ((Instant) result).atZone(ZoneId.systemDefault());
-      } else if (result instanceof OffsetDateTime) {
-         dt = ((OffsetDateTime) result).toZonedDateTime();
-      } else {
-         dt = (ZonedDateTime) result;
+         result = ((LocalDateTime) result).atZone(ZoneId.systemDefault());
       }
-      dt = dt.withZoneSameInstant(ZoneId.of("GMT"));
-      return DateHeader.RFC_7231_DATE_TIME.format(dt);
+      return DateClock.format(result);
    }
 
    private HttpInputStream getContentBody(Object obj, HttpRequest request, Method method) {
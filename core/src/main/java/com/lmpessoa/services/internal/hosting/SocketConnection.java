@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import com.lmpessoa.services.internal.hosting.ConnectionReaper.Phase;
+
+/**
+ * Represents a connection accepted through a blocking socket.
+ *
+ * <p>
+ * Requests are read from the socket by the thread responding to them. Bytes are read from the
+ * socket in blocks and any bytes received beyond the head of the current request are retained in
+ * the buffer of this connection until either the content body or the next request is read.
+ * </p>
+ */
+final class SocketConnection extends ClientConnection {
+
+   private static final int BUFFER_SIZE = 4096;
+
+   private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+   private final OutputStream output = new SocketOutputStream();
+   private final InputStream content = new ContentInputStream();
+   private final HttpRequestParser parser;
+   private final int requestTimeout;
+   private final int idleTimeout;
+   private final Socket socket;
+
+   SocketConnection(Socket socket, ApplicationContext context) {
+      super(context.getConnectionReaper());
+      this.socket = Objects.requireNonNull(socket);
+      this.parser = new HttpRequestParser(context.getMaxHeaderSize(),
+               context.getContentMemoryLimit());
+      this.requestTimeout = context.getTimeout() * 1000;
+      this.idleTimeout = context.getKeepAliveTimeout() * 1000;
+      buffer.flip();
+   }
+
+   @Override
+   public void close() throws IOException {
+      unwatch();
+      socket.close();
+   }
+
+   @Override
+   Socket getSocket() {
+      return socket;
+   }
+
+   @Override
+   HttpRequestImpl readRequest() throws IOException {
+      parser.reset();
+      socket.setSoTimeout(requestTimeout);
+      watch(Phase.HEADER);
+      try {
+         if (!parser.read(socket.getInputStream(), buffer)) {
+            throw new EOFException();
+         }
+      } finally {
+         unwatch();
+      }
+      startBody(parser.getContentLength());
+      return parser.getRequest(content);
+   }
+
+   @Override
+   OutputStream getOutputStream() throws IOException {
+      return output;
+   }
+
+   @Override
+   boolean hasPendingRequest() throws IOException {
+      if (buffer.hasRemaining()) {
+         return true;
+      }
+      socket.setSoTimeout(idleTimeout);
+      try {
+         InputStream input = socket.getInputStream();
+         int read = input.read(buffer.array(), 0, buffer.capacity());
+         if (read < 0) {
+            return false;
+         }
+         buffer.position(0);
+         buffer.limit(read);
+         return true;
+      } catch (SocketTimeoutException e) {
+         timedOut(Phase.IDLE);
+         return false;
+      }
+   }
+
+   @Override
+   void release() throws IOException {
+      // Blocking connections are only released once no other request arrives in time
+      close();
+   }
+
+   @Override
+   void expire(Phase phase) {
+      if (isOverdue()) {
+         timedOut(phase);
+         try {
+            // Also interrupts the thread blocked reading from or writing to the socket
+            socket.close();
+         } catch (IOException e) {
+            // Nothing else to be done here
+         }
+      }
+   }
+
+   private class ContentInputStream extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         int read;
+         if (buffer.hasRemaining()) {
+            read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+         } else {
+            awaitBody();
+            read = socket.getInputStream().read(b, off, len);
+         }
+         if (read > 0) {
+            bodyReceived(read);
+         }
+         return read;
+      }
+   }
+
+   private class SocketOutputStream extends OutputStream {
+
+      @Override
+      public void write(int b) throws IOException {
+         socket.getOutputStream().write(b);
+         progressed();
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         OutputStream out = socket.getOutputStream();
+         // Writes in blocks so that progress is registered while large arrays are sent
+         while (len > 0) {
+            int length = Math.min(len, BUFFER_SIZE);
+            out.write(b, off, length);
+            progressed();
+            off += length;
+            len -= length;
+         }
+      }
+
+      @Override
+      public void flush() throws IOException {
+         socket.getOutputStream().flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+         socket.getOutputStream().close();
+      }
+   }
+}
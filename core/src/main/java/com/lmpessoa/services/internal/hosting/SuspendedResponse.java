@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.lmpessoa.services.hosting.HttpResponse;
+
+/**
+ * Represents a response which cannot be produced until something else happens.
+ *
+ * <p>
+ * Responders return a suspended response when the result of a request depends on something still
+ * in progress (i.e. an asynchronous job). Instead of sending it, the request job parks its
+ * connection and returns its thread to the executor. Once the awaited stage completes or the
+ * given time expires, whichever comes first, the request job is resumed on any available thread
+ * and sends the response produced then.
+ * </p>
+ *
+ * <p>
+ * Responders in the chain that need to process the result of a request must do so when it is
+ * produced, which is why suspended responses can be mapped into other suspended responses.
+ * </p>
+ */
+final class SuspendedResponse implements HttpResponse {
+
+   private static final long MIN_POLL_INTERVAL = 10;
+   private static final long MAX_POLL_INTERVAL = 250;
+
+   private final CompletionStage<?> completion;
+   private final Future<?> future;
+   private final Supplier<?> result;
+   private final long timeout;
+
+   /**
+    * Creates a new suspended response.
+    *
+    * @param completion the stage that must complete before the response can be produced.
+    * @param timeout the maximum time to wait for the stage to complete, in milliseconds, or zero to
+    *           wait for the default time limit given to {@link #resume}.
+    * @param result the function that produces the result of the request once waiting is over.
+    */
+   SuspendedResponse(CompletionStage<?> completion, long timeout, Supplier<?> result) {
+      this(Objects.requireNonNull(completion), null, timeout, result);
+   }
+
+   /**
+    * Creates a new suspended response.
+    *
+    * <p>
+    * Futures which are not also completion stages cannot tell when they are done, thus they are
+    * checked by the timer given to {@link #resume}. Checks start right away and become less
+    * frequent the longer the future takes to be done.
+    * </p>
+    *
+    * @param future the future that must be done before the response can be produced.
+    * @param timeout the maximum time to wait for the future to be done, in milliseconds, or zero to
+    *           wait for the default time limit given to {@link #resume}.
+    * @param result the function that produces the result of the request once waiting is over.
+    */
+   SuspendedResponse(Future<?> future, long timeout, Supplier<?> result) {
+      this(future instanceof CompletionStage ? (CompletionStage<?>) future : null,
+               Objects.requireNonNull(future), timeout, result);
+   }
+
+   private SuspendedResponse(CompletionStage<?> completion, Future<?> future, long timeout,
+      Supplier<?> result) {
+      this.completion = completion;
+      this.future = future;
+      this.result = Objects.requireNonNull(result);
+      this.timeout = timeout;
+   }
+
+   @Override
+   public int getStatusCode() {
+      // Never sent; the request was accepted and its response is yet to be known
+      return 202;
+   }
+
+   /**
+    * Returns a suspended response that waits for the same stage as this one and whose result is
+    * produced by the given function from the result of this one.
+    *
+    * @param function the function that produces the new result given the function that produces
+    *           the result of this response.
+    * @return a suspended response that produces the result of the given function.
+    */
+   SuspendedResponse map(Function<Supplier<?>, ?> function) {
+      return new SuspendedResponse(completion, future, timeout, () -> function.apply(result));
+   }
+
+   /**
+    * Produces the result of the request.
+    *
+    * <p>
+    * This method should only be called after the action given to {@link #resume} was run.
+    * </p>
+    *
+    * @return the result of the request.
+    */
+   Object getResult() {
+      return result.get();
+   }
+
+   /**
+    * Runs the given action once, when the awaited stage completes or the time limit expires.
+    *
+    * <p>
+    * The action is run by the thread that completes the stage or by the given timer and thus
+    * should do no more than hand the request to an appropriate executor.
+    * </p>
+    *
+    * <p>
+    * A parked connection is not watched by anything else, thus the time spent waiting is always
+    * limited. Responses created without a time limit of their own wait for the given default.
+    * </p>
+    *
+    * @param timer the timer used to limit the time spent waiting.
+    * @param defaultTimeout the maximum time to wait if this response has no time limit of its own,
+    *           in milliseconds.
+    * @param action the action that resumes the request.
+    */
+   void resume(ScheduledExecutorService timer, long defaultTimeout, Runnable action) {
+      Resumption resumption = new Resumption(action);
+      long limit = timeout > 0 ? timeout : Math.max(1, defaultTimeout);
+      resumption.expiry = timer.schedule(resumption, limit, TimeUnit.MILLISECONDS);
+      if (completion != null) {
+         completion.whenComplete((value, error) -> resumption.run());
+      } else {
+         poll(timer, resumption, MIN_POLL_INTERVAL);
+      }
+      resumption.cancelIfDone();
+   }
+
+   private void poll(ScheduledExecutorService timer, Resumption resumption, long interval) {
+      if (future.isDone()) {
+         resumption.run();
+      } else if (!resumption.resumed.get()) {
+         long next = Math.min(interval * 2, MAX_POLL_INTERVAL);
+         try {
+            resumption.poll = timer.schedule(() -> poll(timer, resumption, next), interval,
+                     TimeUnit.MILLISECONDS);
+         } catch (RejectedExecutionException e) {
+            // The timer only stops with the application, which closes every connection
+            return;
+         }
+         resumption.cancelIfDone();
+      }
+   }
+
+   private static final class Resumption implements Runnable {
+
+      private final AtomicBoolean resumed = new AtomicBoolean();
+      private final Runnable action;
+
+      private volatile ScheduledFuture<?> expiry = null;
+      private volatile ScheduledFuture<?> poll = null;
+
+      Resumption(Runnable action) {
+         this.action = action;
+      }
+
+      @Override
+      public void run() {
+         if (resumed.compareAndSet(false, true)) {
+            cancelIfDone();
+            action.run();
+         }
+      }
+
+      void cancelIfDone() {
+         // Timers scheduled after the request was resumed are cancelled by whoever scheduled them
+         if (resumed.get()) {
+            cancel(expiry);
+            cancel(poll);
+         }
+      }
+
+      private static void cancel(ScheduledFuture<?> task) {
+         if (task != null) {
+            task.cancel(false);
+         }
+      }
+   }
+}
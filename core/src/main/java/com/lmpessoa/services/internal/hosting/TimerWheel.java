@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer optimised for large numbers of timeouts which are usually cancelled before they expire.
+ *
+ * <p>
+ * Timeouts are kept in a circular array of buckets (the wheel) in which each bucket holds the
+ * timeouts expiring within the same tick. A single thread advances the wheel once every tick and
+ * runs the tasks of the timeouts in the current bucket that are due. Thus scheduling and cancelling
+ * a timeout takes constant time regardless of how many timeouts are pending, at the cost of tasks
+ * being run up to one tick later than requested.
+ * </p>
+ *
+ * <p>
+ * Tasks are run by the thread of the wheel itself and thus must be short and must never block.
+ * </p>
+ */
+final class TimerWheel {
+
+   private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+   private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+   private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+   private final long startTime = System.nanoTime();
+   private final long tickDuration;
+   private final Bucket[] buckets;
+   private final Thread thread;
+   private final int mask;
+
+   private volatile boolean running = true;
+   private long tick = 0;
+
+   /**
+    * Creates and starts a new timer wheel.
+    *
+    * @param name the name of the thread of the timer wheel.
+    * @param tickDuration the duration of each tick of the wheel.
+    * @param unit the time unit of the duration of each tick.
+    * @param ticksPerWheel the number of buckets in the wheel, which is rounded up to the next power
+    *           of two.
+    */
+   TimerWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+      if (tickDuration <= 0 || ticksPerWheel <= 0) {
+         throw new IllegalArgumentException();
+      }
+      int size = Integer.highestOneBit(ticksPerWheel);
+      if (size < ticksPerWheel) {
+         size <<= 1;
+      }
+      this.tickDuration = unit.toNanos(tickDuration);
+      this.buckets = new Bucket[size];
+      for (int i = 0; i < size; ++i) {
+         buckets[i] = new Bucket();
+      }
+      this.mask = size - 1;
+      this.thread = new Thread(this::run, Objects.requireNonNull(name));
+      this.thread.setDaemon(true);
+      this.thread.start();
+   }
+
+   /**
+    * Schedules the given task to be run once the given delay elapses.
+    *
+    * <p>
+    * Tasks scheduled after the wheel is stopped are never run.
+    * </p>
+    *
+    * @param task the task to be run.
+    * @param delay the time to wait before running the task.
+    * @param unit the time unit of the delay.
+    * @return a timeout that can be used to cancel the task.
+    */
+   Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+      Timeout result = new Timeout(Objects.requireNonNull(task),
+               System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+      if (running) {
+         pending.add(result);
+      }
+      return result;
+   }
+
+   /**
+    * Stops this timer wheel.
+    *
+    * <p>
+    * Timeouts which did not expire yet are discarded without running their tasks.
+    * </p>
+    *
+    * @throws InterruptedException if the current thread is interrupted while waiting for the thread
+    *            of the wheel to finish.
+    */
+   void stop() throws InterruptedException {
+      running = false;
+      LockSupport.unpark(thread);
+      if (Thread.currentThread() != thread) {
+         thread.join();
+      }
+      pending.clear();
+      cancelled.clear();
+   }
+
+   private void run() {
+      while (running) {
+         long deadline = tickDuration * (tick + 1);
+         long wait;
+         while (running && (wait = deadline - (System.nanoTime() - startTime)) > 0) {
+            LockSupport.parkNanos(this, wait);
+         }
+         if (!running) {
+            break;
+         }
+         removeCancelled();
+         transferPending();
+         buckets[(int) (tick & mask)].expire(deadline);
+         tick += 1;
+      }
+   }
+
+   private void removeCancelled() {
+      Timeout timeout;
+      while ((timeout = cancelled.poll()) != null) {
+         if (timeout.bucket != null) {
+            timeout.bucket.remove(timeout);
+         }
+      }
+   }
+
+   private void transferPending() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; ++i) {
+         Timeout timeout = pending.poll();
+         if (timeout == null) {
+            break;
+         }
+         if (timeout.isCancelled()) {
+            continue;
+         }
+         long expiryTick = timeout.deadline / tickDuration;
+         timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+         // Timeouts already due go into the current bucket to expire in this tick
+         buckets[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+      }
+   }
+
+   /**
+    * Represents a task scheduled to run on a {@link TimerWheel}.
+    */
+   final class Timeout {
+
+      private static final int WAITING = 0;
+      private static final int CANCELLED = 1;
+      private static final int EXPIRED = 2;
+
+      private final AtomicInteger state = new AtomicInteger(WAITING);
+      private final Runnable task;
+      private final long deadline;
+
+      private long remainingRounds;
+      private Bucket bucket;
+      private Timeout prev;
+      private Timeout next;
+
+      Timeout(Runnable task, long deadline) {
+         this.deadline = deadline;
+         this.task = task;
+      }
+
+      /**
+       * Cancels this timeout.
+       *
+       * @return {@code true} if the task of this timeout will not be run, {@code false} if the
+       *         timeout had already expired.
+       */
+      boolean cancel() {
+         if (state.compareAndSet(WAITING, CANCELLED)) {
+            cancelled.add(this);
+            return true;
+         }
+         return state.get() == CANCELLED;
+      }
+
+      boolean isCancelled() {
+         return state.get() == CANCELLED;
+      }
+
+      boolean isExpired() {
+         return state.get() == EXPIRED;
+      }
+
+      private void expire() {
+         if (state.compareAndSet(WAITING, EXPIRED)) {
+            try {
+               task.run();
+            } catch (RuntimeException e) {
+               // Tasks must not stop the wheel
+            }
+         }
+      }
+   }
+
+   private static final class Bucket {
+
+      private Timeout head;
+      private Timeout tail;
+
+      void add(Timeout timeout) {
+         timeout.bucket = this;
+         if (head == null) {
+            head = tail = timeout;
+         } else {
+            tail.next = timeout;
+            timeout.prev = tail;
+            tail = timeout;
+         }
+      }
+
+      void expire(long deadline) {
+         Timeout timeout = head;
+         while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+               remove(timeout);
+            } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+               remove(timeout);
+               timeout.expire();
+            } else if (timeout.remainingRounds > 0) {
+               timeout.remainingRounds -= 1;
+            }
+            timeout = next;
+         }
+      }
+
+      void remove(Timeout timeout) {
+         if (timeout.bucket != this) {
+            return;
+         }
+         if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+         } else {
+            head = timeout.next;
+         }
+         if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+         } else {
+            tail = timeout.prev;
+         }
+         timeout.prev = null;
+         timeout.next = null;
+         timeout.bucket = null;
+      }
+   }
+}
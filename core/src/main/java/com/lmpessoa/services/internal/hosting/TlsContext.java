@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Creates the engines used to secure connections accepted by the application.
+ *
+ * <p>
+ * The key and certificate presented to user agents are read from a key store when the application
+ * starts. Sessions negotiated with user agents are cached so that returning user agents may resume
+ * them without a full handshake.
+ * </p>
+ *
+ * <p>
+ * Engines created by this context also take part in application layer protocol negotiation (ALPN)
+ * when the runtime supports it, advertising HTTP/1.1 as the only protocol spoken by the server.
+ * Since this is only available from Java 9 on, it is accessed through reflection.
+ * </p>
+ */
+final class TlsContext {
+
+   static final String HTTP_1_1 = "http/1.1";
+
+   private static final Method SET_APPLICATION_PROTOCOLS = findMethod(SSLParameters.class,
+            "setApplicationProtocols", String[].class);
+   private static final Method GET_APPLICATION_PROTOCOL = findMethod(SSLEngine.class,
+            "getApplicationProtocol");
+
+   private final SSLContext context;
+   private final String[] protocols;
+   private final String[] ciphers;
+
+   /**
+    * Creates a new TLS context.
+    *
+    * @param context the SSL context from which engines are created.
+    * @param protocols the protocols to be enabled, or {@code null} to use the defaults of the
+    *           runtime. Protocols not supported by the runtime are ignored.
+    * @param ciphers the cipher suites to be enabled, or {@code null} to use the defaults of the
+    *           runtime. Cipher suites not supported by the runtime are ignored.
+    * @throws IllegalArgumentException if none of the given protocols or cipher suites are supported.
+    */
+   TlsContext(SSLContext context, String[] protocols, String[] ciphers) {
+      this.context = Objects.requireNonNull(context);
+      SSLParameters supported = context.getSupportedSSLParameters();
+      this.protocols = filter("protocols", protocols, supported.getProtocols());
+      this.ciphers = filter("cipher suites", ciphers, supported.getCipherSuites());
+   }
+
+   /**
+    * Creates an SSL context using the key and certificate in the given key store.
+    *
+    * @param keyStore the file of the key store.
+    * @param type the type of the key store, or {@code null} to guess it from the file name.
+    * @param password the password of the key store.
+    * @param keyPassword the password of the key, or {@code null} if it is the same as the password
+    *           of the key store.
+    * @return the SSL context using the given key store.
+    * @throws IOException if the key store cannot be read.
+    * @throws GeneralSecurityException if the key cannot be recovered from the key store.
+    */
+   static SSLContext createContext(File keyStore, String type, char[] password,
+      char[] keyPassword) throws IOException, GeneralSecurityException {
+      if (type == null) {
+         String name = keyStore.getName().toLowerCase(Locale.ROOT);
+         type = name.endsWith(".p12") || name.endsWith(".pfx") ? "PKCS12"
+                  : KeyStore.getDefaultType();
+      }
+      KeyStore store = KeyStore.getInstance(type);
+      try (InputStream input = new FileInputStream(keyStore)) {
+         store.load(input, password);
+      }
+      KeyManagerFactory keys = KeyManagerFactory
+               .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keys.init(store, keyPassword != null ? keyPassword : password);
+      SSLContext result = SSLContext.getInstance("TLS");
+      result.init(keys.getKeyManagers(), null, null);
+      return result;
+   }
+
+   /**
+    * Configures how sessions negotiated with user agents are kept for resumption.
+    *
+    * @param cacheSize the maximum number of sessions kept, or zero for no limit.
+    * @param timeout the time a session may be resumed after it was negotiated, in seconds, or zero
+    *           for no limit.
+    */
+   void setSessionCache(int cacheSize, int timeout) {
+      SSLSessionContext sessions = context.getServerSessionContext();
+      sessions.setSessionCacheSize(Math.max(0, cacheSize));
+      sessions.setSessionTimeout(Math.max(0, timeout));
+   }
+
+   /**
+    * Creates a new engine to secure a connection accepted by the application.
+    *
+    * @return a new engine to secure a connection.
+    */
+   SSLEngine createEngine() {
+      SSLEngine result = context.createSSLEngine();
+      result.setUseClientMode(false);
+      SSLParameters params = result.getSSLParameters();
+      if (protocols != null) {
+         params.setProtocols(protocols);
+      }
+      if (ciphers != null) {
+         params.setCipherSuites(ciphers);
+      }
+      params.setUseCipherSuitesOrder(true);
+      if (SET_APPLICATION_PROTOCOLS != null) {
+         invoke(SET_APPLICATION_PROTOCOLS, params, (Object) new String[] { HTTP_1_1 });
+      }
+      result.setSSLParameters(params);
+      return result;
+   }
+
+   /**
+    * Returns whether engines created by this context take part in protocol negotiation.
+    *
+    * @return {@code true} if the runtime supports application layer protocol negotiation,
+    *         {@code false} otherwise.
+    */
+   static boolean isAlpnSupported() {
+      return SET_APPLICATION_PROTOCOLS != null;
+   }
+
+   /**
+    * Returns the application protocol negotiated by the given engine.
+    *
+    * @param engine the engine whose negotiated protocol is to be returned.
+    * @return the application protocol negotiated by the given engine, or {@code null} if none was
+    *         negotiated or the runtime does not support protocol negotiation.
+    */
+   static String getApplicationProtocol(SSLEngine engine) {
+      if (GET_APPLICATION_PROTOCOL == null) {
+         return null;
+      }
+      String result = (String) invoke(GET_APPLICATION_PROTOCOL, engine);
+      return result == null || result.isEmpty() ? null : result;
+   }
+
+   private static String[] filter(String what, String[] values, String[] supported) {
+      if (values == null) {
+         return null;
+      }
+      List<String> available = Arrays.asList(supported);
+      List<String> result = new ArrayList<>();
+      for (String value : values) {
+         if (available.contains(value)) {
+            result.add(value);
+         }
+      }
+      if (result.isEmpty()) {
+         throw new IllegalArgumentException("None of the given " + what + " is supported");
+      }
+      return result.toArray(new String[0]);
+   }
+
+   private static Method findMethod(Class<?> type, String name, Class<?>... paramTypes) {
+      try {
+         return type.getMethod(name, paramTypes);
+      } catch (NoSuchMethodException e) {
+         return null;
+      }
+   }
+
+   private static Object invoke(Method method, Object target, Object... args) {
+      try {
+         return method.invoke(target, args);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLException;
+
+/**
+ * Encrypts and decrypts the bytes of a connection using TLS.
+ *
+ * <p>
+ * This transport drives an {@link SSLEngine} without ever blocking, which allows secure connections
+ * to be served by the same I/O threads as plaintext ones. The handshake is performed as part of
+ * reading the first request and any delegated tasks of the engine are run right away by the thread
+ * reading from or writing to the connection.
+ * </p>
+ *
+ * <p>
+ * Each connection needs buffers large enough to hold entire TLS records. These buffers are only
+ * held while they contain bytes not yet processed, thus connections waiting for a request do not
+ * hold on to them.
+ * </p>
+ */
+final class TlsTransport extends ChannelTransport {
+
+   private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+   private static final int RECORD_HEADER_SIZE = 5;
+
+   private final SSLEngine engine;
+
+   private ByteBuffer netIn = null; // Bytes received but not yet decrypted (write mode)
+   private ByteBuffer appIn = null; // Bytes decrypted but not yet read (write mode)
+   private ByteBuffer netOut = null; // Bytes encrypted but not yet sent (read mode)
+
+   TlsTransport(SocketChannel channel, SSLEngine engine) {
+      super(channel);
+      this.engine = Objects.requireNonNull(engine);
+   }
+
+   @Override
+   public void close() throws IOException {
+      try {
+         if (!engine.isOutboundDone()) {
+            // Tells the user agent the connection is being closed if it can be done right away
+            engine.closeOutbound();
+            allocate();
+            while (!engine.isOutboundDone() && flush()) {
+               wrap(EMPTY);
+            }
+            flush();
+         }
+      } catch (IOException e) {
+         // The connection is being closed anyway
+      } finally {
+         super.close();
+      }
+   }
+
+   @Override
+   int read(ByteBuffer dst) throws IOException {
+      allocate();
+      while (appIn.position() == 0) {
+         int result = step();
+         if (result <= 0) {
+            return result;
+         }
+      }
+      appIn.flip();
+      try {
+         int count = Math.min(dst.remaining(), appIn.remaining());
+         ByteBuffer slice = appIn.duplicate();
+         slice.limit(slice.position() + count);
+         dst.put(slice);
+         appIn.position(appIn.position() + count);
+         return count;
+      } finally {
+         appIn.compact();
+      }
+   }
+
+   @Override
+   int write(ByteBuffer src) throws IOException {
+      allocate();
+      int consumed = 0;
+      while (src.hasRemaining()) {
+         if (!flush()) {
+            setWaitOperation(SelectionKey.OP_WRITE);
+            return consumed;
+         }
+         HandshakeStatus status = engine.getHandshakeStatus();
+         if (status == HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+         } else if (status == HandshakeStatus.NEED_UNWRAP) {
+            // The engine needs a message from the user agent before it can encrypt anything
+            int result = step();
+            if (result < 0) {
+               throw new EOFException();
+            } else if (result == 0) {
+               return consumed;
+            }
+         } else {
+            SSLEngineResult result = wrap(src);
+            if (result.getStatus() == Status.CLOSED) {
+               throw new SSLException("Connection was closed");
+            }
+            consumed += result.bytesConsumed();
+         }
+      }
+      return consumed;
+   }
+
+   @Override
+   boolean flush() throws IOException {
+      if (netOut != null && netOut.hasRemaining()) {
+         getChannel().write(netOut);
+      }
+      return netOut == null || !netOut.hasRemaining();
+   }
+
+   @Override
+   boolean hasBufferedInput() {
+      if (appIn != null && appIn.position() > 0) {
+         return true;
+      }
+      if (netIn == null || netIn.position() < RECORD_HEADER_SIZE) {
+         return false;
+      }
+      // Only a complete record can be decrypted without reading from the channel
+      int length = (netIn.get(3) & 0xFF) << 8 | netIn.get(4) & 0xFF;
+      return netIn.position() >= RECORD_HEADER_SIZE + length;
+   }
+
+   @Override
+   boolean isSecure() {
+      return true;
+   }
+
+   @Override
+   void release() {
+      super.release();
+      if (netIn != null && netIn.position() == 0 && appIn.position() == 0
+               && !netOut.hasRemaining()) {
+         netIn = null;
+         appIn = null;
+         netOut = null;
+      }
+   }
+
+   /**
+    * Returns the application protocol negotiated with the user agent.
+    *
+    * @return the application protocol negotiated with the user agent, or {@code null} if none was
+    *         negotiated or the runtime does not support application protocol negotiation.
+    */
+   String getApplicationProtocol() {
+      return TlsContext.getApplicationProtocol(engine);
+   }
+
+   /**
+    * Makes some progress on receiving bytes from the user agent.
+    *
+    * @return {@code 1} if some progress was made, {@code 0} if the channel must be ready before
+    *         progress can be made or {@code -1} if the user agent closed the connection.
+    */
+   private int step() throws IOException {
+      if (!flush()) {
+         setWaitOperation(SelectionKey.OP_WRITE);
+         return 0;
+      }
+      HandshakeStatus status = engine.getHandshakeStatus();
+      if (status == HandshakeStatus.NEED_TASK) {
+         runDelegatedTasks();
+         return 1;
+      } else if (status == HandshakeStatus.NEED_WRAP) {
+         if (wrap(EMPTY).getStatus() == Status.CLOSED && engine.isOutboundDone()) {
+            return -1;
+         }
+         return 1;
+      }
+      SSLEngineResult result;
+      netIn.flip();
+      try {
+         result = engine.unwrap(netIn, appIn);
+      } finally {
+         netIn.compact();
+      }
+      switch (result.getStatus()) {
+         case BUFFER_UNDERFLOW:
+            if (!netIn.hasRemaining()) {
+               netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+            }
+            int read = getChannel().read(netIn);
+            if (read < 0) {
+               closeInbound();
+               return -1;
+            } else if (read == 0) {
+               setWaitOperation(SelectionKey.OP_READ);
+               return 0;
+            }
+            return 1;
+         case BUFFER_OVERFLOW:
+            appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+            return 1;
+         case CLOSED:
+            return -1;
+         default:
+            return 1;
+      }
+   }
+
+   private SSLEngineResult wrap(ByteBuffer src) throws SSLException {
+      // Only called once every byte encrypted before was sent
+      netOut.clear();
+      SSLEngineResult result;
+      try {
+         result = engine.wrap(src, netOut);
+      } finally {
+         netOut.flip();
+      }
+      if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+         netOut = ByteBuffer.allocate(
+                  Math.max(netOut.capacity() * 2, engine.getSession().getPacketBufferSize()));
+         netOut.flip();
+      }
+      return result;
+   }
+
+   private void runDelegatedTasks() {
+      Runnable task;
+      while ((task = engine.getDelegatedTask()) != null) {
+         task.run();
+      }
+   }
+
+   private void closeInbound() {
+      try {
+         engine.closeInbound();
+      } catch (SSLException e) {
+         // The user agent closed the connection without saying so; nothing else to do
+      }
+   }
+
+   private void allocate() {
+      if (netIn == null) {
+         netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+         appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+         netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+         netOut.flip();
+      }
+   }
+
+   private static ByteBuffer enlarge(ByteBuffer buffer, int minimum) {
+      ByteBuffer result = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimum));
+      buffer.flip();
+      result.put(buffer);
+      return result;
+   }
+}
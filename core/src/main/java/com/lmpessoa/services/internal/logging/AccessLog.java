@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registers the requests received by the application in a file of their own.
+ *
+ * <p>
+ * Unlike messages sent to a {@link Logger}, entries of the access log carry no stack information,
+ * are not filtered and are always written in one of a few fixed formats. Threads responding to
+ * requests only add entries to a ring buffer and never wait for them to be written; a single
+ * thread formats and writes entries to the file, sleeping whenever there is nothing to write until
+ * the next entry arrives. If entries arrive faster than they can be written, the buffer fills up
+ * and further entries are dropped.
+ * </p>
+ *
+ * <p>
+ * Like the {@link FileHandler}, the access log does not rotate its file but reopens it whenever the
+ * file is moved or removed by another process.
+ * </p>
+ */
+public final class AccessLog implements AutoCloseable {
+
+   private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+   private final RingBuffer<AccessLogEntry> entries;
+   private final LongAdder dropped = new LongAdder();
+   private final StringBuilder line = new StringBuilder();
+   private final ZoneId zone = ZoneId.systemDefault();
+   private final AccessLogFormat format;
+   private final Thread thread;
+   private final File file;
+
+   private volatile boolean sleeping = false;
+   private volatile boolean running = true;
+   private long lastCheck = System.nanoTime();
+   private String lastTime = null;
+   private long lastSecond = -1;
+   private Writer out = null;
+
+   /**
+    * Creates a new access log.
+    *
+    * @param file the file to which entries are to be written.
+    * @param format the format in which entries are to be written.
+    * @param capacity the maximum number of entries waiting to be written.
+    */
+   public AccessLog(File file, AccessLogFormat format, int capacity) {
+      this.file = Objects.requireNonNull(file);
+      this.format = Objects.requireNonNull(format);
+      this.entries = new RingBuffer<>(capacity);
+      this.thread = new Thread(this::run, "access-log");
+      this.thread.setDaemon(true);
+      this.thread.start();
+   }
+
+   /**
+    * Adds the given entry to be written to the access log.
+    *
+    * @param entry the entry to be written.
+    * @return {@code true} if the entry will be written, {@code false} if it was dropped because too
+    *         many entries are waiting to be written.
+    */
+   public boolean log(AccessLogEntry entry) {
+      if (running && entries.offer(entry)) {
+         if (sleeping) {
+            LockSupport.unpark(thread);
+         }
+         return true;
+      }
+      dropped.increment();
+      return false;
+   }
+
+   /**
+    * Returns the number of entries dropped so far.
+    *
+    * @return the number of entries dropped so far.
+    */
+   public long getDroppedCount() {
+      return dropped.sum();
+   }
+
+   /**
+    * Writes any entries still waiting and closes the access log file.
+    *
+    * <p>
+    * If the current thread is interrupted while waiting for the entries to be written, this method
+    * returns right away and the interrupt status of the thread is kept.
+    * </p>
+    */
+   @Override
+   public void close() {
+      running = false;
+      LockSupport.unpark(thread);
+      try {
+         thread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void run() {
+      try {
+         while (running || !entries.isEmpty()) {
+            AccessLogEntry entry = entries.poll();
+            if (entry != null) {
+               write(entry);
+            } else {
+               flush();
+               sleeping = true;
+               // Entries added before the flag was seen would not wake this thread up
+               if (running && entries.isEmpty()) {
+                  LockSupport.park(this);
+               }
+               sleeping = false;
+            }
+         }
+      } finally {
+         closeFile();
+      }
+   }
+
+   private void write(AccessLogEntry entry) {
+      line.setLength(0);
+      format.append(line, entry, formatTime(entry.getTime()));
+      line.append(System.lineSeparator());
+      try {
+         if (out == null || isFileMoved()) {
+            reopen();
+         }
+         out.append(line);
+      } catch (IOException e) {
+         closeFile();
+         dropped.increment();
+      }
+   }
+
+   private String formatTime(long millis) {
+      long second = millis / 1000;
+      if (second != lastSecond) {
+         lastTime = format.getTimeFormat().format(Instant.ofEpochSecond(second).atZone(zone));
+         lastSecond = second;
+      }
+      return lastTime;
+   }
+
+   private boolean isFileMoved() {
+      long now = System.nanoTime();
+      if (now - lastCheck < CHECK_INTERVAL) {
+         return false;
+      }
+      lastCheck = now;
+      return !file.exists();
+   }
+
+   private void reopen() throws IOException {
+      closeFile();
+      out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+               StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+   }
+
+   private void flush() {
+      if (out != null) {
+         try {
+            out.flush();
+         } catch (IOException e) {
+            closeFile();
+         }
+      }
+   }
+
+   private void closeFile() {
+      if (out != null) {
+         try {
+            out.close();
+         } catch (IOException e) {
+            // Nothing else can be done here
+         }
+         out = null;
+      }
+   }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.logging;
+
+import java.net.InetAddress;
+import java.util.Objects;
+
+import com.lmpessoa.services.hosting.HttpRequest;
+
+/**
+ * Represents a request to be registered in the access log.
+ *
+ * <p>
+ * Entries only hold the information collected while the request is responded. Turning this
+ * information into text is left to the thread writing the access log.
+ * </p>
+ */
+public final class AccessLogEntry {
+
+   private final InetAddress remoteAddress;
+   private final HttpRequest request;
+   private final long handlingTime;
+   private final long totalTime;
+   private final int statusCode;
+   private final long length;
+   private final long time;
+
+   /**
+    * Creates a new access log entry.
+    *
+    * @param time the time the request was received, in milliseconds since the epoch.
+    * @param remoteAddress the address of the user agent, or {@code null} if unknown.
+    * @param request the request received.
+    * @param statusCode the status code of the response.
+    * @param length the number of bytes of content sent with the response.
+    * @param handlingTime the time the application took to produce the response, in nanoseconds.
+    * @param totalTime the time taken to respond to the request, in nanoseconds.
+    */
+   public AccessLogEntry(long time, InetAddress remoteAddress, HttpRequest request, int statusCode,
+      long length, long handlingTime, long totalTime) {
+      this.request = Objects.requireNonNull(request);
+      this.remoteAddress = remoteAddress;
+      this.handlingTime = handlingTime;
+      this.statusCode = statusCode;
+      this.totalTime = totalTime;
+      this.length = length;
+      this.time = time;
+   }
+
+   long getTime() {
+      return time;
+   }
+
+   InetAddress getRemoteAddress() {
+      return remoteAddress;
+   }
+
+   HttpRequest getRequest() {
+      return request;
+   }
+
+   int getStatusCode() {
+      return statusCode;
+   }
+
+   long getLength() {
+      return length;
+   }
+
+   long getHandlingTime() {
+      return handlingTime;
+   }
+
+   long getTotalTime() {
+      return totalTime;
+   }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.logging;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpRequest;
+
+/**
+ * Enumerates the formats of entries written to the access log.
+ *
+ * <p>
+ * Each format turns an entry into a single line of text. Entries are never parsed from templates,
+ * thus these formats cannot be customised.
+ * </p>
+ */
+public enum AccessLogFormat {
+   /**
+    * The Common Log Format used by most web servers:
+    *
+    * <pre>
+    * 127.0.0.1 - - [05/Jun/2018:12:30:00 -0300] "GET /index.html HTTP/1.1" 200 2326
+    * </pre>
+    */
+   COMMON(DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH)) {
+
+      @Override
+      void append(StringBuilder line, AccessLogEntry entry, String time) {
+         appendCommon(line, entry, time);
+      }
+   },
+   /**
+    * The Common Log Format followed by the referrer and user agent of the request:
+    *
+    * <pre>
+    * 127.0.0.1 - - [05/Jun/2018:12:30:00 -0300] "GET /index.html HTTP/1.1" 200 2326 "-" "curl/7.58"
+    * </pre>
+    */
+   COMBINED(COMMON.timeFormat) {
+
+      @Override
+      void append(StringBuilder line, AccessLogEntry entry, String time) {
+         appendCommon(line, entry, time);
+         line.append(' ');
+         appendQuoted(line, entry.getRequest().getHeaders().get(Headers.REFERER));
+         line.append(' ');
+         appendQuoted(line, entry.getRequest().getHeaders().get(Headers.USER_AGENT));
+      }
+   },
+   /**
+    * One JSON object per line, including the time taken to respond to the request:
+    *
+    * <pre>
+    * {"time":"2018-06-05T12:30:00-03:00","remote":"127.0.0.1","method":"GET","path":"/index.html",
+    * "query":null,"protocol":"HTTP/1.1","status":200,"length":2326,"referer":null,
+    * "userAgent":"curl/7.58","handlingMicros":1250,"totalMicros":1830}
+    * </pre>
+    */
+   JSON(DateTimeFormatter.ISO_OFFSET_DATE_TIME) {
+
+      @Override
+      void append(StringBuilder line, AccessLogEntry entry, String time) {
+         HttpRequest request = entry.getRequest();
+         line.append("{\"time\":");
+         appendJson(line, time);
+         line.append(",\"remote\":");
+         appendJson(line, entry.getRemoteAddress() != null
+                  ? entry.getRemoteAddress().getHostAddress()
+                  : null);
+         line.append(",\"method\":");
+         appendJson(line, String.valueOf(request.getMethod()));
+         line.append(",\"path\":");
+         appendJson(line, request.getPath());
+         line.append(",\"query\":");
+         appendJson(line, request.getQueryString());
+         line.append(",\"protocol\":");
+         appendJson(line, request.getProtocol());
+         line.append(",\"status\":");
+         line.append(entry.getStatusCode());
+         line.append(",\"length\":");
+         line.append(entry.getLength());
+         line.append(",\"referer\":");
+         appendJson(line, request.getHeaders().get(Headers.REFERER));
+         line.append(",\"userAgent\":");
+         appendJson(line, request.getHeaders().get(Headers.USER_AGENT));
+         line.append(",\"handlingMicros\":");
+         line.append(TimeUnit.NANOSECONDS.toMicros(entry.getHandlingTime()));
+         line.append(",\"totalMicros\":");
+         line.append(TimeUnit.NANOSECONDS.toMicros(entry.getTotalTime()));
+         line.append('}');
+      }
+   };
+
+   private final DateTimeFormatter timeFormat;
+
+   AccessLogFormat(DateTimeFormatter timeFormat) {
+      this.timeFormat = timeFormat;
+   }
+
+   /**
+    * Appends the given entry in this format to the given line.
+    *
+    * @param line the line to which the entry is to be appended.
+    * @param entry the entry to be appended.
+    * @param time the time of the entry, already formatted using the time format of this format.
+    */
+   abstract void append(StringBuilder line, AccessLogEntry entry, String time);
+
+   DateTimeFormatter getTimeFormat() {
+      return timeFormat;
+   }
+
+   private static void appendCommon(StringBuilder line, AccessLogEntry entry, String time) {
+      HttpRequest request = entry.getRequest();
+      line.append(entry.getRemoteAddress() != null ? entry.getRemoteAddress().getHostAddress()
+               : "-");
+      line.append(" - - [");
+      line.append(time);
+      line.append("] \"");
+      line.append(request.getMethod());
+      line.append(' ');
+      appendEscaped(line, request.getPath());
+      if (request.getQueryString() != null) {
+         line.append('?');
+         appendEscaped(line, request.getQueryString());
+      }
+      line.append(' ');
+      line.append(request.getProtocol());
+      line.append("\" ");
+      line.append(entry.getStatusCode());
+      line.append(' ');
+      if (entry.getLength() > 0) {
+         line.append(entry.getLength());
+      } else {
+         line.append('-');
+      }
+   }
+
+   private static void appendQuoted(StringBuilder line, String value) {
+      if (value == null) {
+         line.append("\"-\"");
+      } else {
+         line.append('"');
+         appendEscaped(line, value);
+         line.append('"');
+      }
+   }
+
+   private static void appendEscaped(StringBuilder line, String value) {
+      for (int i = 0; i < value.length(); ++i) {
+         char ch = value.charAt(i);
+         if (ch == '"' || ch == '\\') {
+            line.append('\\');
+            line.append(ch);
+         } else if (ch < 0x20 || ch == 0x7F) {
+            line.append(String.format("\\x%02x", (int) ch));
+         } else {
+            line.append(ch);
+         }
+      }
+   }
+
+   private static void appendJson(StringBuilder line, String value) {
+      if (value == null) {
+         line.append("null");
+         return;
+      }
+      line.append('"');
+      for (int i = 0; i < value.length(); ++i) {
+         char ch = value.charAt(i);
+         switch (ch) {
+            case '"':
+            case '\\':
+               line.append('\\');
+               line.append(ch);
+               break;
+            case '\n':
+               line.append("\\n");
+               break;
+            case '\r':
+               line.append("\\r");
+               break;
+            case '\t':
+               line.append("\\t");
+               break;
+            default:
+               if (ch < 0x20) {
+                  line.append(String.format("\\u%04x", (int) ch));
+               } else {
+                  line.append(ch);
+               }
+         }
+      }
+      line.append('"');
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue which may be written to by many threads and read by a single thread without
+ * locking.
+ *
+ * <p>
+ * Writers claim a slot by advancing the tail of the buffer and only then publish their element to
+ * that slot. The reader consumes elements in the order slots were claimed, waiting for an element to
+ * be published if its slot was already claimed. Elements offered when the buffer is full are
+ * rejected instead of waiting for the reader.
+ * </p>
+ *
+ * @param <T> the type of elements held in this buffer.
+ */
+final class RingBuffer<T> {
+
+   private final AtomicReferenceArray<T> slots;
+   private final AtomicLong tail = new AtomicLong();
+   private final AtomicLong head = new AtomicLong();
+   private final int mask;
+
+   /**
+    * Creates a new ring buffer.
+    *
+    * <p>
+    * The capacity of the buffer is rounded up to the next power of two.
+    * </p>
+    *
+    * @param capacity the minimum number of elements the buffer must be able to hold.
+    */
+   RingBuffer(int capacity) {
+      int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+      this.slots = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+   }
+
+   /**
+    * Adds the given element to this buffer if there is room for it.
+    *
+    * <p>
+    * This method may be called by any thread.
+    * </p>
+    *
+    * @param element the element to be added.
+    * @return {@code true} if the element was added to this buffer, {@code false} if the buffer was
+    *         full.
+    */
+   boolean offer(T element) {
+      if (element == null) {
+         throw new NullPointerException();
+      }
+      long slot;
+      do {
+         slot = tail.get();
+         if (slot - head.get() > mask) {
+            return false;
+         }
+      } while (!tail.compareAndSet(slot, slot + 1));
+      slots.lazySet((int) slot & mask, element);
+      return true;
+   }
+
+   /**
+    * Removes and returns the oldest element of this buffer.
+    *
+    * <p>
+    * This method must only be called by the single thread reading from this buffer.
+    * </p>
+    *
+    * @return the oldest element of this buffer, or {@code null} if there is no element available.
+    */
+   T poll() {
+      long slot = head.get();
+      int index = (int) slot & mask;
+      T result = slots.get(index);
+      if (result != null) {
+         slots.lazySet(index, null);
+         head.lazySet(slot + 1);
+      }
+      return result;
+   }
+
+   /**
+    * Returns whether this buffer holds no element.
+    *
+    * @return {@code true} if this buffer holds no element, {@code false} otherwise.
+    */
+   boolean isEmpty() {
+      return head.get() == tail.get();
+   }
+
+   /**
+    * Returns the maximum number of elements this buffer can hold.
+    *
+    * @return the maximum number of elements this buffer can hold.
+    */
+   int capacity() {
+      return mask + 1;
+   }
+}
@@ -26,6 +26,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 import com.lmpessoa.services.BadRequestException;
@@ -64,11 +65,11 @@ final class MatchedRoute implements RouteMatch {
       }
 
       Object result = invokeMethod(resource);
-      errors = validator.validateReturnValue(resource, method, result);
-      if (!errors.isEmpty()) {
-         throw new BadResponseException(errors);
+      if (result instanceof CompletionStage) {
+         // Results produced later can only be validated once they are produced
+         return ((CompletionStage<?>) result).thenApply(value -> validateResult(resource, value));
       }
-      return result;
+      return validateResult(resource, result);
    }
 
    @Override
@@ -149,6 +150,14 @@ final class MatchedRoute implements RouteMatch {
       }
    }
 
+   private Object validateResult(Object resource, Object result) {
+      ErrorSet errors = validator.validateReturnValue(resource, method, result);
+      if (!errors.isEmpty()) {
+         throw new BadResponseException(errors);
+      }
+      return result;
+   }
+
    private Object invokeMethod(Object resource) {
       try {
          return method.invoke(resource, methodArgs);
@@ -61,6 +61,7 @@ import com.lmpessoa.services.Post;
 import com.lmpessoa.services.Put;
 import com.lmpessoa.services.Query;
 import com.lmpessoa.services.Route;
+import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.internal.ClassUtils;
 import com.lmpessoa.services.internal.CoreMessage;
@@ -301,9 +302,16 @@ public final class RouteTable implements IRouteTable {
          if (contentClass == InputStream.class || contentClass == HttpInputStream.class) {
             return new HttpInputStream(body, request.getContentType());
          }
-         byte[] content = readContentBody(body);
-         if (request.getContentType() != null && content != null
-                  && request.getContentLength() > 0) {
+         long length = request.getContentLength();
+         byte[] content = null;
+         if (request.getContentType() != null && length > 0 && length <= Integer.MAX_VALUE) {
+            content = readContentBody(body, (int) length);
+         } else if (request.getContentType() != null && length == 0
+                  && request.getHeaders().contains(Headers.TRANSFER_ENCODING)) {
+            // Content bodies sent in chunks have no length thus are read to their end
+            content = readContentBody(body);
+         }
+         if (content != null) {
             return Serializer.toObject(content, request.getContentType(), contentClass);
          }
       }
@@ -311,17 +319,34 @@ public final class RouteTable implements IRouteTable {
    }
 
    private byte[] readContentBody(InputStream input) {
-      ByteArrayOutputStream output = new ByteArrayOutputStream();
-      byte[] buffer = new byte[1024];
-      int len;
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
       try {
+         int len;
          while ((len = input.read(buffer)) != -1) {
-            output.write(buffer, 0, len);
+            result.write(buffer, 0, len);
+         }
+      } catch (Exception e) {
+         return null;
+      }
+      return result.toByteArray();
+   }
+
+   private byte[] readContentBody(InputStream input, int length) {
+      byte[] result = new byte[length];
+      int offset = 0;
+      try {
+         while (offset < length) {
+            int len = input.read(result, offset, length - offset);
+            if (len == -1) {
+               return null;
+            }
+            offset += len;
          }
       } catch (Exception e) {
          return null;
       }
-      return output.toByteArray();
+      return result;
    }
 
    private Collection<RouteEntry> putClasses(Map<Class<?>, String> classes) {
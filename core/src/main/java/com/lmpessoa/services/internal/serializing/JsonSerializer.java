@@ -25,6 +25,7 @@ package com.lmpessoa.services.internal.serializing;
 import java.lang.reflect.Type;
 import java.time.temporal.TemporalAccessor;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import com.google.gson.Gson;
@@ -125,6 +126,13 @@ final class JsonSerializer extends Serializer {
 
       result.addProperty("uptime", src.getUptime());
       result.addProperty("memory", src.getUsedMemory());
+
+      Map<String, Long> timeouts = src.getConnectionTimeouts();
+      if (timeouts != null && !timeouts.isEmpty()) {
+         JsonObject counts = new JsonObject();
+         timeouts.forEach(counts::addProperty);
+         result.add("timeouts", counts);
+      }
       return result;
    }
 }
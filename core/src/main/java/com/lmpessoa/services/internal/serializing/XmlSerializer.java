@@ -135,6 +135,16 @@ final class XmlSerializer extends Serializer {
       }
       result.uptime = info.getUptime();
       result.memory = info.getUsedMemory();
+      Map<String, Long> timeouts = info.getConnectionTimeouts();
+      if (timeouts != null && !timeouts.isEmpty()) {
+         result.timeout = new ArrayList<>();
+         for (Entry<String, Long> entry : timeouts.entrySet()) {
+            XmlAppInfo.Timeout timeout = new XmlAppInfo.Timeout();
+            timeout.phase = entry.getKey();
+            timeout.count = entry.getValue();
+            result.timeout.add(timeout);
+         }
+      }
       return result;
    }
 
@@ -179,6 +189,8 @@ final class XmlSerializer extends Serializer {
       public List<ServiceStatus> service = new ArrayList<>();
       public long uptime;
       public long memory;
+      @XmlElementWrapper(name = "timeouts")
+      public List<Timeout> timeout = null;
 
       static final class ServiceStatus {
 
@@ -187,6 +199,14 @@ final class XmlSerializer extends Serializer {
          @XmlAttribute
          public HealthStatus status;
       }
+
+      static final class Timeout {
+
+         @XmlAttribute
+         public String phase;
+         @XmlAttribute
+         public long count;
+      }
    }
 
    @XmlRootElement(name = "errors")
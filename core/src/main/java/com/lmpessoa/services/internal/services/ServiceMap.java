@@ -165,6 +165,28 @@ public final class ServiceMap {
       threadPool.get().put(service, value);
    }
 
+   /**
+    * Returns a copy of the values of per-request services given to the current thread.
+    *
+    * @return the values of per-request services given to the current thread.
+    */
+   public Map<Class<?>, Object> getRequestValues() {
+      return new HashMap<>(threadPool.get());
+   }
+
+   /**
+    * Gives the current thread the values of per-request services given to another thread.
+    *
+    * <p>
+    * This is used to continue responding to a request on another thread.
+    * </p>
+    *
+    * @param values the values of per-request services to be given to the current thread.
+    */
+   public void putRequestValues(Map<Class<?>, Object> values) {
+      threadPool.get().putAll(values);
+   }
+
    ServiceEntry getEntry(Class<?> service) {
       return entries.get(service);
    }
@@ -24,16 +24,24 @@ package com.lmpessoa.services.internal.concurrent;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -74,6 +82,100 @@ public class ExecutionServiceTest {
       }
    }
 
+   @Test
+   public void testIdleWorkerPicksJobPromptly() throws InterruptedException, ExecutionException {
+      Thread first = (Thread) service.get(service.submit(Thread::currentThread)).get();
+      long start = System.nanoTime();
+      for (int i = 0; i < 20; ++i) {
+         CountDownLatch started = new CountDownLatch(1);
+         AtomicReference<Thread> worker = new AtomicReference<>();
+         service.submit(() -> {
+            worker.set(Thread.currentThread());
+            started.countDown();
+         });
+         assertTrue(started.await(1, TimeUnit.SECONDS));
+         assertSame(first, worker.get());
+      }
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+   }
+
+   @Test
+   public void testCompletionOfJob() throws InterruptedException, ExecutionException {
+      String id = service.submit(() -> {
+         Thread.sleep(100);
+         return "success";
+      });
+      CompletableFuture<?> result = service.getCompletion(id)
+               .thenApply(r -> r + "!")
+               .toCompletableFuture();
+      assertFalse(result.isDone());
+      assertEquals("success!", result.get());
+      assertTrue(service.get(id).isDone());
+   }
+
+   @Test
+   public void testCompletionOfCancelledJob() throws InterruptedException {
+      String id = service.submit(() -> {
+         Thread.sleep(2000);
+         return "finished";
+      });
+      CompletableFuture<?> result = service.getCompletion(id).toCompletableFuture();
+      Thread.sleep(100);
+      assertTrue(service.get(id).cancel(true));
+      assertTrue(result.isCompletedExceptionally());
+      assertTrue(service.get(id).isCancelled());
+   }
+
+   @Test
+   public void testExpiredResultsArePurged() throws InterruptedException, ExecutionException {
+      service.setResultRetentionTimeout(100, TimeUnit.MILLISECONDS);
+      String first = service.submit(() -> "first", "test");
+      service.get(first).get();
+      Thread.sleep(150);
+      String second = service.submit(() -> "second", "test");
+      assertEquals("second", service.get(second).get());
+      assertNull(service.get(first));
+      assertEquals(1, service.keySet().size());
+   }
+
+   @Test
+   public void testProgressOfJob() throws InterruptedException, ExecutionException {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch proceed = new CountDownLatch(1);
+      String id = service.submit(() -> {
+         service.reportProgress(0.5);
+         started.countDown();
+         proceed.await();
+         return "finished";
+      });
+      started.await();
+      List<String> events = Collections.synchronizedList(new ArrayList<>());
+      JobListener listener = new JobListener() {
+
+         @Override
+         public void statusChanged(String jobId, String status, boolean done) {
+            events.add(done ? status + "!" : status);
+         }
+
+         @Override
+         public void progressChanged(String jobId, double progress) {
+            events.add(String.valueOf(progress));
+         }
+      };
+      assertTrue(service.watch(id, listener));
+      assertFalse(service.watch("unknown", listener));
+      // Not running a job thus ignored
+      service.reportProgress(1);
+      proceed.countDown();
+      assertEquals("finished", service.get(id).get());
+      assertEquals(Arrays.asList("RUNNING", "0.5", "DONE!"), events);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidProgress() {
+      service.reportProgress(1.5);
+   }
+
    @Test(expected = ExecutionException.class)
    public void testException() throws InterruptedException, ExecutionException {
       String id = service.submit(() -> {
@@ -124,6 +226,63 @@ public class ExecutionServiceTest {
       result.get();
    }
 
+   @Test
+   public void testRejectWhenQueueIsFull() {
+      service.setMaxQueueSize(1);
+      service.submit(() -> {
+         Thread.sleep(500);
+         return "running";
+      });
+      service.submit(() -> "queued");
+      int count = service.keySet().size();
+      try {
+         service.submit(() -> "rejected");
+         fail();
+      } catch (RejectedExecutionException e) {
+         assertEquals(count, service.keySet().size());
+      }
+   }
+
+   @Test
+   public void testDrainRunsQueuedJobs() throws InterruptedException, ExecutionException {
+      service.submit(() -> {
+         Thread.sleep(100);
+         return "running";
+      });
+      String id = service.submit(() -> "queued");
+      service.drain();
+      assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+      assertEquals("queued", service.get(id).get());
+      assertEquals(0, service.getActiveCount());
+   }
+
+   @Test
+   public void testShutdownCancelsQueuedJobs() throws InterruptedException {
+      service.submit(() -> {
+         Thread.sleep(100);
+         return "running";
+      });
+      String id = service.submit(() -> "queued");
+      assertEquals(2, service.getUnfinishedJobs().size());
+      service.shutdown();
+      assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+      assertTrue(service.get(id).isCancelled());
+   }
+
+   @Test
+   public void testVirtualThreadJobs() throws InterruptedException, ExecutionException {
+      service = new ExecutionService(0, log, true);
+      assertEquals(ExecutionService.isVirtualThreadSupported(), service.usesVirtualThreads());
+      List<String> results = new ArrayList<>();
+      for (int i = 0; i < 20; ++i) {
+         final int j = i;
+         results.add(service.submit(() -> j));
+      }
+      for (int i = 0; i < 20; ++i) {
+         assertEquals(i, service.get(results.get(i)).get());
+      }
+   }
+
    @Test(expected = TimeoutException.class)
    public void testTimeoutWaitingResult()
       throws InterruptedException, ExecutionException, TimeoutException {
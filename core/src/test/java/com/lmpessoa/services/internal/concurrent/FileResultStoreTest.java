@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lmpessoa.services.internal.concurrent.ResultStore.StoredResult;
+import com.lmpessoa.services.internal.logging.Logger;
+import com.lmpessoa.services.logging.NullHandler;
+
+public final class FileResultStoreTest {
+
+   private FileResultStore store;
+   private File directory;
+
+   @Before
+   public void setup() throws IOException {
+      directory = Files.createTempDirectory("results").toFile();
+      store = new FileResultStore(directory, 100, 4096);
+   }
+
+   @After
+   public void teardown() throws IOException {
+      store.close();
+      directory.delete();
+   }
+
+   @Test
+   public void testSmallResultIsKeptInMemory() throws IOException {
+      assertNull(store.store(null));
+      assertNull(store.store(42));
+      assertNull(store.store("small"));
+      assertEquals(0, store.getSegmentCount());
+   }
+
+   @Test
+   public void testLargeResultIsStored() throws IOException {
+      String value = largeString('a', 1000);
+      StoredResult result = store.store(value);
+      assertNotNull(result);
+      assertEquals(1002, result.length());
+      assertEquals(value, result.get());
+      assertEquals('"' + value + '"', read(result.open()));
+      assertEquals(1, store.getSegmentCount());
+   }
+
+   @Test
+   public void testReleasedSegmentsAreDeleted() throws IOException {
+      StoredResult first = store.store(largeString('a', 3000));
+      StoredResult second = store.store(largeString('b', 3000));
+      assertEquals(2, store.getSegmentCount());
+      first.release();
+      assertEquals(1, store.getSegmentCount());
+      assertEquals(largeString('b', 3000), second.get());
+   }
+
+   @Test
+   public void testOpenStreamOutlivesRelease() throws IOException {
+      StoredResult first = store.store(largeString('a', 3000));
+      store.store(largeString('b', 3000));
+      try (InputStream input = first.open()) {
+         first.release();
+         assertEquals(2, store.getSegmentCount());
+         assertEquals('"' + largeString('a', 3000) + '"', read(input));
+      }
+      assertEquals(1, store.getSegmentCount());
+   }
+
+   @Test(expected = IOException.class)
+   public void testReleasedResultCannotBeOpened() throws IOException {
+      StoredResult result = store.store(largeString('a', 1000));
+      result.release();
+      result.open();
+   }
+
+   @Test
+   public void testCloseDeletesSegments() throws IOException {
+      store.store(largeString('a', 3000));
+      store.store(largeString('b', 3000));
+      assertEquals(2, directory.list().length);
+      store.close();
+      assertEquals(0, store.getSegmentCount());
+      assertEquals(0, directory.list().length);
+   }
+
+   @Test
+   public void testExecutionServiceStreamsStoredResult()
+      throws IOException, InterruptedException, ExecutionException {
+      ExecutionService service = new ExecutionService(1, new Logger(new NullHandler()));
+      service.setResultStore(store);
+      String value = largeString('c', 1000);
+      String id = service.submit(() -> value);
+      assertEquals(value, service.get(id).get());
+      assertEquals("{\"status\":\"DONE\",\"result\":\"" + value + "\"}",
+               read(service.openResult(id)));
+      assertEquals(value, service.getCompletion(id).toCompletableFuture().get());
+
+      service.setResultRetentionTimeout(0, TimeUnit.SECONDS);
+      assertTrue(service.keySet().isEmpty());
+      assertNull(service.openResult(id));
+      service.shutdown();
+   }
+
+   private static String largeString(char c, int length) {
+      char[] result = new char[length];
+      Arrays.fill(result, c);
+      return new String(result);
+   }
+
+   private static String read(InputStream input) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int len;
+      while ((len = input.read(buffer)) != -1) {
+         result.write(buffer, 0, len);
+      }
+      input.close();
+      return new String(result.toByteArray(), StandardCharsets.UTF_8);
+   }
+}
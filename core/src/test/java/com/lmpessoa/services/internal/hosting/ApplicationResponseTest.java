@@ -26,22 +26,31 @@ import static com.lmpessoa.services.routing.HttpMethod.GET;
 import static com.lmpessoa.services.routing.HttpMethod.POST;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.lmpessoa.services.ContentType;
+import com.lmpessoa.services.Deadline;
 import com.lmpessoa.services.HttpInputStream;
 import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.internal.concurrent.ExecutionService;
@@ -58,6 +67,10 @@ import com.lmpessoa.services.security.IdentityBuilder;
 
 public final class ApplicationResponseTest {
 
+   private static final String LONG_TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing "
+            + "elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Lorem "
+            + "ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.";
+
    private Logger log = new Logger(new NullHandler());
    private ApplicationContext context;
 
@@ -69,6 +82,11 @@ public final class ApplicationResponseTest {
       when(settings.getLogger()).thenReturn(log);
       when(settings.getJobExecutor()).thenReturn(new ExecutionService(0, log));
       when(settings.getValidationService()).thenCallRealMethod();
+      when(settings.getKeepAliveTimeout()).thenReturn(15);
+      when(settings.getMaxKeepAliveRequests()).thenReturn(100);
+      when(settings.getMaxHeaderSize()).thenReturn(8192);
+      when(settings.getContentMemoryLimit()).thenReturn(65536);
+      when(settings.getCompressor()).thenReturn(new ResponseCompressor(16));
       ApplicationServerImpl server = new ApplicationServerImpl(settings);
       server.getOptions().useIdentityWith(TestTokenManager.class);
       RouteTable routes = server.getOptions().getRoutes();
@@ -88,15 +106,17 @@ public final class ApplicationResponseTest {
    @Test
    public void testJobRequestNotFound() throws InterruptedException, IOException {
       String[] result = runJob(GET, "/test/notfound");
-      assertEquals(1, result.length);
+      assertEquals(2, result.length);
       assertEquals("HTTP/1.1 404 Not Found", result[0]);
+      assertEquals("Content-Length: 0", result[1]);
    }
 
    @Test
    public void testJobRequestWrongMethod() throws InterruptedException, IOException {
       String[] result = runJob(POST, "/test/empty");
-      assertEquals(1, result.length);
+      assertEquals(2, result.length);
       assertEquals("HTTP/1.1 405 Method Not Allowed", result[0]);
+      assertEquals("Content-Length: 0", result[1]);
    }
 
    @Test
@@ -129,8 +149,9 @@ public final class ApplicationResponseTest {
    @Test
    public void testJobRequestUnauthenticated() throws InterruptedException, IOException {
       String[] result = runJob(POST, "/test");
-      assertEquals(1, result.length);
+      assertEquals(2, result.length);
       assertEquals("HTTP/1.1 401 Unauthorized", result[0]);
+      assertEquals("Content-Length: 0", result[1]);
    }
 
    @Test
@@ -145,6 +166,125 @@ public final class ApplicationResponseTest {
                "Test" }, result);
    }
 
+   @Test
+   public void testJobRequestKeepAlive() throws IOException {
+      String[] result = runJob("GET /test HTTP/1.1\r\n\r\n"
+               + "GET /test/empty HTTP/1.1\r\nConnection: close\r\n\r\n");
+      result = Arrays.stream(result).filter(s -> !s.startsWith("Date: ")).toArray(String[]::new);
+      assertArrayEquals(new String[] { //
+               "HTTP/1.1 200 OK", //
+               "Content-Type: text/plain; charset=\"utf-8\"", //
+               "Content-Length: 4", //
+               "", //
+               "TestHTTP/1.1 204 No Content", //
+               "Connection: close" }, result);
+   }
+
+   @Test
+   public void testJobRequestHttp10() throws IOException {
+      String[] result = runJob("GET /test/empty HTTP/1.0\r\n\r\n");
+      assertEquals(3, result.length);
+      assertEquals("HTTP/1.1 204 No Content", result[0]);
+      assertEquals("Connection: close", result[2]);
+   }
+
+   @Test
+   public void testJobRequestFile() throws IOException {
+      String[] result = runJob(GET, "/test/file");
+      result = Arrays.stream(result).filter(s -> !s.startsWith("Date: ")).toArray(String[]::new);
+      assertArrayEquals(new String[] { //
+               "HTTP/1.1 200 OK", //
+               "Content-Type: text/plain", //
+               "Content-Length: 4", //
+               "", //
+               "Test" }, result);
+   }
+
+   @Test
+   public void testJobRequestCompressed() throws IOException {
+      byte[] result = runJobRaw("GET /test/text HTTP/1.1\r\nAccept-Encoding: deflate;q=0.5, gzip"
+               + "\r\nConnection: close\r\n\r\n");
+      String[] head = getHead(result);
+      assertTrue(Arrays.asList(head).contains("Content-Encoding: gzip"));
+      assertTrue(Arrays.asList(head).contains("Vary: Accept-Encoding"));
+      try (InputStream body = new GZIPInputStream(getBody(result))) {
+         ByteArrayOutputStream content = new ByteArrayOutputStream();
+         new HttpInputStream(body, ContentType.TEXT).sendTo(content);
+         assertEquals(LONG_TEXT, new String(content.toByteArray(), StandardCharsets.UTF_8));
+      }
+   }
+
+   @Test
+   public void testJobRequestNotCompressed() throws IOException {
+      byte[] result = runJobRaw("GET /test/text HTTP/1.1\r\nConnection: close\r\n\r\n");
+      String[] head = getHead(result);
+      assertFalse(Arrays.stream(head).anyMatch(s -> s.startsWith("Content-Encoding: ")));
+      assertTrue(Arrays.asList(head).contains("Vary: Accept-Encoding"));
+      assertTrue(Arrays.asList(head).contains("Content-Length: " + LONG_TEXT.length()));
+   }
+
+   @Test
+   public void testJobRequestBelowThreshold() throws IOException {
+      byte[] result = runJobRaw("GET /test HTTP/1.1\r\nAccept-Encoding: gzip\r\n"
+               + "Connection: close\r\n\r\n");
+      String[] head = getHead(result);
+      assertFalse(Arrays.stream(head).anyMatch(s -> s.startsWith("Content-Encoding: ")));
+      assertFalse(Arrays.stream(head).anyMatch(s -> s.startsWith("Vary: ")));
+   }
+
+   @Test
+   public void testJobRequestShed() throws IOException, InterruptedException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      Socket socket = mock(Socket.class);
+      when(socket.getInputStream()).thenReturn(
+               new ByteArrayInputStream("GET /test HTTP/1.1\r\n\r\n".getBytes()));
+      when(socket.getOutputStream()).thenReturn(result);
+      ApplicationRequestJob app = new ApplicationRequestJob(context, socket);
+      app.shedAfter(0);
+      Thread.sleep(2);
+      app.run();
+      assertArrayEquals(new String[] { //
+               "HTTP/1.1 503 Service Unavailable", //
+               "Retry-After: 1", //
+               "Content-Length: 0", //
+               "Connection: close" }, new String(result.toByteArray()).split("\r\n"));
+   }
+
+   @Test
+   public void testJobRequestDeadline() throws IOException {
+      long start = System.nanoTime();
+      String[] result = runJob("GET /test/late HTTP/1.1\r\nConnection: close\r\n\r\n");
+      assertEquals("HTTP/1.1 504 Gateway Timeout", result[0]);
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+   }
+
+   @Test
+   public void testJobRequestChunked() throws IOException {
+      String[] result = runJob("GET /test/stream HTTP/1.1\r\nConnection: close\r\n\r\n");
+      result = Arrays.stream(result).filter(s -> !s.startsWith("Date: ")).toArray(String[]::new);
+      assertArrayEquals(new String[] { //
+               "HTTP/1.1 200 OK", //
+               "Content-Type: application/octet-stream", //
+               "Transfer-Encoding: chunked", //
+               "Connection: close", //
+               "", //
+               "4", //
+               "Test", //
+               "0" }, result);
+   }
+
+   @Test
+   public void testJobRequestUnknownLengthHttp10() throws IOException {
+      String[] result = runJob("GET /test/stream HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+      result = Arrays.stream(result).filter(s -> !s.startsWith("Date: ")).toArray(String[]::new);
+      assertArrayEquals(new String[] { //
+               "HTTP/1.1 200 OK", //
+               "Content-Type: application/octet-stream", //
+               "Connection: close", //
+               "", //
+               "Test" }, result);
+   }
+
    public static class TestResource {
 
       public void empty() {
@@ -163,6 +303,33 @@ public final class ApplicationResponseTest {
          return result;
       }
 
+      public HttpInputStream file() throws IOException {
+         File file = File.createTempFile("test", ".txt");
+         file.deleteOnExit();
+         Files.write(file.toPath(), "Test".getBytes(StandardCharsets.UTF_8));
+         return new HttpInputStream(new FileInputStream(file), ContentType.TEXT);
+      }
+
+      public String slow() throws InterruptedException {
+         Thread.sleep(300);
+         return "Slow";
+      }
+
+      @Deadline(1)
+      public String late() throws InterruptedException {
+         Thread.sleep(10000);
+         return "Late";
+      }
+
+      public String text() {
+         return LONG_TEXT;
+      }
+
+      public InputStream stream() {
+         // Buffered streams do not tell the length of their content
+         return new BufferedInputStream(new ByteArrayInputStream("Test".getBytes()));
+      }
+
       @Authorize
       public String post() {
          return "Test";
@@ -179,14 +346,40 @@ public final class ApplicationResponseTest {
       if (useIdentity) {
          builder.addHeader(Headers.AUTHORIZATION, "Token sample");
       }
-      InputStream request = builder.buildAsStream();
+      return runJob(builder.buildAsStream());
+   }
+
+   private String[] runJob(String requests) throws IOException {
+      return runJob(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)));
+   }
+
+   private String[] runJob(InputStream request) throws IOException {
+      return new String(runJobRaw(request)).split("\r\n");
+   }
+
+   private byte[] runJobRaw(String requests) throws IOException {
+      return runJobRaw(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)));
+   }
+
+   private byte[] runJobRaw(InputStream request) throws IOException {
       ByteArrayOutputStream result = new ByteArrayOutputStream();
       Socket socket = mock(Socket.class);
       when(socket.getInputStream()).thenReturn(request);
       when(socket.getOutputStream()).thenReturn(result);
       ApplicationRequestJob app = new ApplicationRequestJob(context, socket);
       app.run();
-      return new String(result.toByteArray()).split("\r\n");
+      return result.toByteArray();
+   }
+
+   private static String[] getHead(byte[] response) {
+      String result = new String(response, StandardCharsets.ISO_8859_1);
+      return result.substring(0, result.indexOf("\r\n\r\n")).split("\r\n");
+   }
+
+   private static InputStream getBody(byte[] response) {
+      String result = new String(response, StandardCharsets.ISO_8859_1);
+      int offset = result.indexOf("\r\n\r\n") + 4;
+      return new ByteArrayInputStream(response, offset, response.length - offset);
    }
 
    public static class TestTokenManager implements ITokenManager {
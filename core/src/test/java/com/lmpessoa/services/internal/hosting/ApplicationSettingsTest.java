@@ -22,6 +22,7 @@
  */
 package com.lmpessoa.services.internal.hosting;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -29,9 +30,15 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.function.Predicate;
 
+import javax.net.ssl.SSLEngine;
+
 import org.junit.Test;
 
 import com.lmpessoa.services.hosting.IApplicationOptions;
@@ -116,6 +123,56 @@ public final class ApplicationSettingsTest {
                logResult);
    }
 
+   @Test
+   public void testBindAddresses() {
+      Property prop = new PropertyBuilder().set("server.address", "127.0.0.1, *").build();
+      ApplicationSettings settings = new ApplicationSettings(ApplicationSettingsTest.class, prop,
+               () -> null);
+      InetAddress[] result = settings.getBindAddresses();
+      assertEquals(2, result.length);
+      assertTrue(result[0].isLoopbackAddress());
+      assertTrue(result[1].isAnyLocalAddress());
+   }
+
+   @Test
+   public void testDefaultBindAddress() throws IOException {
+      ApplicationSettings settings = new ApplicationSettings(ApplicationSettingsTest.class,
+               new PropertyBuilder().build(), () -> null);
+      assertArrayEquals(new InetAddress[] { InetAddress.getLoopbackAddress() },
+               settings.getBindAddresses());
+      assertEquals(1, settings.getAcceptorCount());
+      assertFalse(settings.isTlsEnabled());
+      assertNull(settings.getTlsContext());
+   }
+
+   @Test
+   public void testTlsContext() throws IOException, URISyntaxException {
+      String keyStore = new File(ApplicationSettingsTest.class.getResource("/tls/keystore.p12")
+               .toURI()).getAbsolutePath();
+      Property prop = new PropertyBuilder() //
+               .set("server.tls.keystore", keyStore)
+               .set("server.tls.password", "changeit")
+               .set("server.tls.protocols", "TLSv1.2")
+               .build();
+      ApplicationSettings settings = new ApplicationSettings(ApplicationSettingsTest.class, prop,
+               () -> null);
+      assertTrue(settings.isTlsEnabled());
+      SSLEngine engine = settings.getTlsContext().createEngine();
+      assertFalse(engine.getUseClientMode());
+      assertArrayEquals(new String[] { "TLSv1.2" }, engine.getEnabledProtocols());
+   }
+
+   @Test(expected = IOException.class)
+   public void testTlsContextWithWrongPassword() throws IOException, URISyntaxException {
+      String keyStore = new File(ApplicationSettingsTest.class.getResource("/tls/keystore.p12")
+               .toURI()).getAbsolutePath();
+      Property prop = new PropertyBuilder() //
+               .set("server.tls.keystore", keyStore)
+               .set("server.tls.password", "wrong")
+               .build();
+      new ApplicationSettings(ApplicationSettingsTest.class, prop, () -> null).getTlsContext();
+   }
+
    public static class CommonEnv {
 
       public static void configure(IApplicationOptions app, IHostEnvironment env) {
@@ -33,27 +33,40 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.lmpessoa.services.ContentType;
+import com.lmpessoa.services.HttpInputStream;
 import com.lmpessoa.services.MethodNotAllowedException;
+import com.lmpessoa.services.NotAcceptableException;
 import com.lmpessoa.services.NotFoundException;
 import com.lmpessoa.services.Redirect;
 import com.lmpessoa.services.TooManyRequestsException;
@@ -62,9 +75,12 @@ import com.lmpessoa.services.concurrent.Async;
 import com.lmpessoa.services.concurrent.AsyncRequest;
 import com.lmpessoa.services.concurrent.IAsyncRequestMatcher;
 import com.lmpessoa.services.hosting.ConnectionInfo;
+import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.NextResponder;
+import com.lmpessoa.services.internal.ValuesMapBuilder;
 import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.concurrent.FileResultStore;
 import com.lmpessoa.services.internal.logging.Logger;
 import com.lmpessoa.services.logging.ILogger;
 import com.lmpessoa.services.logging.NullHandler;
@@ -169,6 +185,152 @@ public final class AsyncResponderTest {
       assertTrue(fresult.isDone());
    }
 
+   @Test
+   public void testCheckExecutionResultWithWait() throws NoSuchMethodException,
+      MalformedURLException, InterruptedException {
+      match = matchOfMethod("sleeper");
+
+      Object result = handler.invoke(request, match, null, connect);
+      RedirectImpl redirect = (RedirectImpl) result;
+      String url = redirect.getUrl(connect).getPath();
+
+      match = null;
+      when(request.getPath()).thenReturn(url);
+      when(request.getHeaders())
+               .thenReturn(new ValuesMapBuilder().add(Headers.PREFER, "wait=5").build());
+      result = handler.invoke(request, match, null, connect);
+      assertTrue(result instanceof SuspendedResponse);
+      SuspendedResponse suspended = (SuspendedResponse) result;
+      CountDownLatch resumed = new CountDownLatch(1);
+      ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+      try {
+         suspended.resume(timer, 5000, resumed::countDown);
+         assertTrue(resumed.await(2, TimeUnit.SECONDS));
+      } finally {
+         timer.shutdownNow();
+      }
+      result = suspended.getResult();
+      assertTrue(result instanceof Future);
+      assertTrue(((Future<?>) result).isDone());
+   }
+
+   @Test
+   public void testCheckExecutionResultWaitExpires() throws NoSuchMethodException,
+      MalformedURLException, InterruptedException {
+      match = matchOfMethod("longSleeper");
+
+      Object result = handler.invoke(request, match, null, connect);
+      RedirectImpl redirect = (RedirectImpl) result;
+      String url = redirect.getUrl(connect).getPath();
+
+      match = null;
+      when(request.getPath()).thenReturn(url);
+      when(request.getQuery()).thenReturn(new ValuesMapBuilder().add("wait", "1").build());
+      result = handler.invoke(request, match, null, connect);
+      assertTrue(result instanceof SuspendedResponse);
+      SuspendedResponse suspended = (SuspendedResponse) result;
+      CountDownLatch resumed = new CountDownLatch(1);
+      ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+      try {
+         suspended.resume(timer, 5000, resumed::countDown);
+         assertFalse(resumed.await(500, TimeUnit.MILLISECONDS));
+         assertTrue(resumed.await(2, TimeUnit.SECONDS));
+      } finally {
+         timer.shutdownNow();
+      }
+      result = suspended.getResult();
+      assertTrue(result instanceof Future);
+      Future<?> fresult = (Future<?>) result;
+      assertFalse(fresult.isDone());
+      fresult.cancel(true);
+   }
+
+   @Test
+   public void testEventStreamOfJobs()
+      throws NoSuchMethodException, MalformedURLException, InterruptedException, IOException {
+      match = matchOfMethod("asyncMethod");
+      String first = ((RedirectImpl) handler.invoke(request, match, null, connect))
+               .getUrl(connect)
+               .getPath();
+      match = matchOfMethod("sleeper");
+      String second = ((RedirectImpl) handler.invoke(request, match, null, connect))
+               .getUrl(connect)
+               .getPath();
+      String secondId = second.substring(second.lastIndexOf('/') + 1);
+
+      match = null;
+      when(request.getPath()).thenReturn(first);
+      when(request.getQuery()).thenReturn(new ValuesMapBuilder().add("job", secondId).build());
+      when(request.getHeaders()).thenReturn(
+               new ValuesMapBuilder().add(Headers.ACCEPT, ContentType.EVENT_STREAM).build());
+      Object result = handler.invoke(request, match, null, connect);
+      assertTrue(result instanceof EventStream);
+      EventStream stream = (EventStream) result;
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+      try {
+         do {
+            CountDownLatch available = new CountDownLatch(1);
+            stream.resume(timer, 5000, available::countDown);
+            assertTrue(available.await(2, TimeUnit.SECONDS));
+            stream.writeTo(output);
+         } while (!stream.isFinished());
+      } finally {
+         timer.shutdownNow();
+      }
+      String events = new String(output.toByteArray(), StandardCharsets.UTF_8);
+      String firstId = first.substring(first.lastIndexOf('/') + 1);
+      assertTrue(events.contains("event: status\ndata: {\"job\":\"" + firstId
+               + "\",\"status\":\"DONE\",\"result\":\"test\"}\n\n"));
+      assertTrue(events.contains(
+               "event: status\ndata: {\"job\":\"" + secondId + "\",\"status\":\"DONE\"}\n\n"));
+   }
+
+   @Test(expected = NotFoundException.class)
+   public void testEventStreamOfUnknownJob() {
+      when(request.getPath()).thenReturn("/feedback/" + UUID.randomUUID());
+      when(request.getHeaders()).thenReturn(
+               new ValuesMapBuilder().add(Headers.ACCEPT, ContentType.EVENT_STREAM).build());
+      handler.invoke(request, match, null, connect);
+   }
+
+   @Test
+   public void testStoredResultOnlyAsJson() throws NoSuchMethodException, MalformedURLException,
+      InterruptedException, ExecutionException, IOException {
+      File directory = Files.createTempDirectory("results").toFile();
+      FileResultStore store = new FileResultStore(directory, 0);
+      executor.setResultStore(store);
+      try {
+         match = matchOfMethod("asyncMethod");
+         String url = ((RedirectImpl) handler.invoke(request, match, null, connect))
+                  .getUrl(connect)
+                  .getPath();
+         executor.get(url.substring(url.lastIndexOf('/') + 1)).get();
+
+         match = null;
+         when(request.getPath()).thenReturn(url);
+         when(request.getHeaders()).thenReturn(
+                  new ValuesMapBuilder().add(Headers.ACCEPT, ContentType.XML).build());
+         try {
+            handler.invoke(request, match, null, connect);
+            fail();
+         } catch (NotAcceptableException e) {
+            // Stored results are only sent as JSON
+         }
+         when(request.getHeaders()).thenReturn(
+                  new ValuesMapBuilder().add(Headers.ACCEPT, "text/html, */*;q=0.8").build());
+         Object result = handler.invoke(request, match, null, connect);
+         assertTrue(result instanceof HttpInputStream);
+         try (HttpInputStream content = (HttpInputStream) result) {
+            assertEquals(ContentType.JSON, content.getType());
+         }
+      } finally {
+         executor.shutdown();
+         store.close();
+         directory.delete();
+      }
+   }
+
    @Test
    public void testCheckRedirectResult()
       throws NoSuchMethodException, InterruptedException, MalformedURLException {
@@ -415,6 +577,11 @@ public final class AsyncResponderTest {
       Thread.sleep(100);
    }
 
+   @Async
+   public void longSleeper() throws InterruptedException {
+      Thread.sleep(10000);
+   }
+
    @Async
    public Redirect redirect() {
       return Redirect.to("/test");
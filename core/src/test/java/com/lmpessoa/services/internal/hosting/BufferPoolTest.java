@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class BufferPoolTest {
+
+   private final BufferPool pool = new BufferPool(2);
+
+   @Test
+   public void testAcquireAllocatesDirectBuffer() {
+      ByteBuffer buffer = pool.acquire();
+      assertTrue(buffer.isDirect());
+      assertEquals(BufferPool.BUFFER_SIZE, buffer.remaining());
+      assertEquals(0, pool.getHitCount());
+      assertEquals(1, pool.getMissCount());
+   }
+
+   @Test
+   public void testReleasedBufferIsReused() {
+      ByteBuffer buffer = pool.acquire();
+      buffer.put((byte) 1);
+      pool.release(buffer);
+      ByteBuffer result = pool.acquire();
+      assertSame(buffer, result);
+      assertEquals(0, result.position());
+      assertEquals(1, pool.getHitCount());
+      assertEquals(1, pool.getMissCount());
+   }
+
+   @Test
+   public void testBufferReleasedByOtherThreadIsReused() throws InterruptedException {
+      List<ByteBuffer> buffers = new ArrayList<>();
+      for (int i = 0; i < 6; ++i) {
+         buffers.add(pool.acquire());
+      }
+      Thread thread = new Thread(() -> buffers.forEach(pool::release));
+      thread.start();
+      thread.join();
+      assertEquals(2, pool.getPooledCount());
+      assertTrue(buffers.contains(pool.acquire()));
+      assertEquals(1, pool.getPooledCount());
+      assertEquals(1, pool.getHitCount());
+   }
+
+   @Test
+   public void testPoolKeepsAtMostCapacity() {
+      List<ByteBuffer> buffers = new ArrayList<>();
+      for (int i = 0; i < 10; ++i) {
+         buffers.add(pool.acquire());
+      }
+      buffers.forEach(pool::release);
+      assertEquals(2, pool.getPooledCount());
+   }
+
+   @Test
+   public void testForeignBufferIsIgnored() {
+      pool.release(ByteBuffer.allocate(BufferPool.BUFFER_SIZE));
+      pool.release(ByteBuffer.allocateDirect(16));
+      pool.acquire();
+      assertEquals(0, pool.getHitCount());
+      assertEquals(0, pool.getPooledCount());
+   }
+}
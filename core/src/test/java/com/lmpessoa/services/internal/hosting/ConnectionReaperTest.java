@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmpessoa.services.internal.hosting.ConnectionReaper.Phase;
+
+public final class ConnectionReaperTest {
+
+   private final ConnectionReaper reaper = new ConnectionReaper(1, 1, 1, 1);
+   private final AtomicInteger expired = new AtomicInteger();
+   private final TestConnection connection = new TestConnection();
+
+   @After
+   public void teardown() throws InterruptedException {
+      reaper.stop();
+   }
+
+   @Test
+   public void testTransferWithProgressIsNotExpired() throws InterruptedException {
+      connection.watch(Phase.WRITE);
+      for (int i = 0; i < 8; ++i) {
+         Thread.sleep(250);
+         connection.progressed();
+      }
+      assertEquals(0, expired.get());
+      Thread.sleep(1500);
+      assertEquals(1, expired.get());
+   }
+
+   @Test
+   public void testHeaderWithProgressIsExpired() throws InterruptedException {
+      connection.watch(Phase.HEADER);
+      for (int i = 0; i < 6; ++i) {
+         Thread.sleep(250);
+         connection.progressed();
+      }
+      assertEquals(1, expired.get());
+   }
+
+   private class TestConnection extends ClientConnection {
+
+      TestConnection() {
+         super(reaper);
+      }
+
+      @Override
+      public void close() {
+         unwatch();
+      }
+
+      @Override
+      Socket getSocket() {
+         return null;
+      }
+
+      @Override
+      HttpRequestImpl readRequest() {
+         return null;
+      }
+
+      @Override
+      OutputStream getOutputStream() {
+         return null;
+      }
+
+      @Override
+      boolean hasPendingRequest() {
+         return false;
+      }
+
+      @Override
+      void release() {
+         // Test connections are never released
+      }
+
+      @Override
+      void expire(Phase phase) {
+         if (isOverdue()) {
+            expired.incrementAndGet();
+         }
+      }
+   }
+}
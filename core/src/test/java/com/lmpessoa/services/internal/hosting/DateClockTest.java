@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+public final class DateClockTest {
+
+   @Test
+   public void testFormatInstant() {
+      assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateClock.format(Instant.EPOCH));
+   }
+
+   @Test
+   public void testFormatConvertsToGmt() {
+      ZonedDateTime date = LocalDateTime.of(2018, 6, 5, 9, 30).atZone(ZoneOffset.ofHours(-3));
+      assertEquals("Tue, 05 Jun 2018 12:30:00 GMT", DateClock.format(date));
+   }
+
+   @Test
+   public void testNowIsReused() {
+      String first;
+      String second;
+      do {
+         first = DateClock.now();
+         second = DateClock.now();
+      } while (!first.equals(second));
+      assertTrue(first == second);
+   }
+
+   @Test
+   public void testHeaderLine() {
+      String now = DateClock.now();
+      byte[] line = DateClock.getHeaderLine(now);
+      if (line != null) {
+         assertEquals("Date: " + now + "\r\n", new String(line, StandardCharsets.US_ASCII));
+      }
+      assertNull(DateClock.getHeaderLine(new String(now)));
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class EventStreamTest {
+
+   private ScheduledExecutorService timer;
+   private EventStream stream;
+
+   @Before
+   public void setup() {
+      timer = Executors.newSingleThreadScheduledExecutor();
+      stream = new EventStream();
+   }
+
+   @After
+   public void teardown() {
+      timer.shutdownNow();
+   }
+
+   @Test
+   public void testKeyedEventsAreReplaced() throws IOException {
+      stream.send("progress", "job", () -> "0.1");
+      stream.send("status", () -> "RUNNING");
+      stream.send("progress", "job", () -> "0.2");
+      stream.send("progress", "job", () -> "0.3");
+      assertEquals("event: progress\ndata: 0.3\n\nevent: status\ndata: RUNNING\n\n", drain());
+      stream.send("progress", "job", () -> "0.4");
+      assertEquals("event: progress\ndata: 0.4\n\n", drain());
+   }
+
+   @Test
+   public void testStreamClosedWhenTooFarBehind() throws IOException {
+      for (int i = 0; i <= EventStream.MAX_PENDING; ++i) {
+         stream.send("status", () -> "RUNNING");
+      }
+      assertFalse(stream.isFinished());
+      drain();
+      assertTrue(stream.isFinished());
+   }
+
+   @Test
+   public void testHeartbeatWhileIdle() throws InterruptedException, IOException {
+      CountDownLatch resumed = new CountDownLatch(1);
+      stream.resume(timer, 100, resumed::countDown);
+      assertTrue(resumed.await(2, TimeUnit.SECONDS));
+      assertEquals(":\n\n", drain());
+      assertFalse(stream.isFinished());
+   }
+
+   @Test
+   public void testNoHeartbeatAfterEvent() throws InterruptedException, IOException {
+      CountDownLatch resumed = new CountDownLatch(2);
+      stream.resume(timer, 100, resumed::countDown);
+      stream.send("status", () -> "DONE");
+      assertFalse(resumed.await(300, TimeUnit.MILLISECONDS));
+      assertEquals("event: status\ndata: DONE\n\n", drain());
+   }
+
+   private String drain() throws IOException {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      stream.writeTo(output);
+      return new String(output.toByteArray(), StandardCharsets.UTF_8);
+   }
+}
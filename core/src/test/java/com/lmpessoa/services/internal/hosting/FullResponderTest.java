@@ -26,6 +26,7 @@ import static com.lmpessoa.services.routing.HttpMethod.GET;
 import static com.lmpessoa.services.routing.HttpMethod.PATCH;
 import static com.lmpessoa.services.services.Reuse.ALWAYS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -45,6 +46,14 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -69,6 +78,7 @@ import com.lmpessoa.services.hosting.Headers;
 import com.lmpessoa.services.hosting.HttpRequest;
 import com.lmpessoa.services.hosting.HttpResponse;
 import com.lmpessoa.services.hosting.IApplicationInfo;
+import com.lmpessoa.services.hosting.NextResponder;
 import com.lmpessoa.services.internal.logging.Logger;
 import com.lmpessoa.services.internal.routing.MatchedRouteBridge;
 import com.lmpessoa.services.internal.routing.RouteTable;
@@ -170,6 +180,44 @@ public final class FullResponderTest {
       assertEquals("{\"id\":12,\"message\":\"Test\"}", content);
    }
 
+   @Test
+   public void testMediatorWithCompletionStage() throws IOException, InterruptedException {
+      HttpResponse result = resume(perform("/test/later"));
+      assertEquals(200, result.getStatusCode());
+      assertNotNull(result.getContentBody());
+      assertEquals(ContentType.JSON, result.getContentBody().getType());
+      String content = readAll(result.getContentBody());
+      assertEquals("{\"id\":12,\"message\":\"Test\"}", content);
+   }
+
+   @Test
+   public void testMediatorWithFailedFuture() throws IOException, InterruptedException {
+      HttpResponse result = resume(perform("/test/failed"));
+      assertEquals(500, result.getStatusCode());
+      HttpInputStream is = result.getContentBody();
+      assertEquals(ContentType.TEXT, is.getType());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      is.sendTo(out);
+      assertEquals("java.lang.IllegalStateException: Test",
+               new String(out.toByteArray(), is.getEncoding()));
+   }
+
+   @Test
+   public void testMediatorWithCompletionStageAndResponder()
+      throws IOException, InterruptedException {
+      app.useResponder(PassThroughResponder.class);
+      HttpResponse result = resume(perform("/test/later"));
+      assertEquals(200, result.getStatusCode());
+      String content = readAll(result.getContentBody());
+      assertEquals("{\"id\":12,\"message\":\"Test\"}", content);
+   }
+
+   @Test
+   public void testMediatorWithIncompleteStage() throws InterruptedException {
+      HttpResponse result = resume(perform("/test/never"), 100);
+      assertEquals(504, result.getStatusCode());
+   }
+
    @Test
    public void testMediatorWithObjectPost() throws IOException, NoSuchMethodException {
       HttpResponse result = performFile("/http/multi_post_request.txt");
@@ -371,7 +419,8 @@ public final class FullResponderTest {
       assertEquals(StandardCharsets.UTF_8, result.getContentBody().getEncoding());
       String content = readAll(result.getContentBody());
       assertTrue(content.matches(
-               "\\{\"app\":\"fullResponderTest\",\"status\":\"OK\",\"uptime\":\\d+,\"memory\":\\d+}"));
+               "\\{\"app\":\"fullResponderTest\",\"status\":\"OK\",\"uptime\":\\d+,\"memory\":\\d+,"
+               + "\"timeouts\":\\{\"header\":0,\"body\":0,\"idle\":0,\"write\":0}}"));
    }
 
    @Test
@@ -387,7 +436,11 @@ public final class FullResponderTest {
          assertEquals(StandardCharsets.UTF_8, result.getContentBody().getEncoding());
          String content = readAll(result.getContentBody());
          assertTrue(content.matches(
-                  "<\\?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"\\?>\\n<appInfo>\\n  <name>fullResponderTest</name>\\n  <status>OK</status>\\n  <services>\\n    <service name=\"db\" status=\"OK\"/>\\n  </services>\\n  <uptime>\\d+</uptime>\\n  <memory>\\d+</memory>\\n</appInfo>\\n"));
+                  "<\\?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"\\?>\\n<appInfo>\\n  <name>fullResponderTest</name>\\n  <status>OK</status>\\n  <services>\\n    <service name=\"db\" status=\"OK\"/>\\n  </services>\\n  <uptime>\\d+</uptime>\\n  <memory>\\d+</memory>\\n"
+                           + "  <timeouts>\\n    <timeout phase=\"header\" count=\"0\"/>\\n"
+                           + "    <timeout phase=\"body\" count=\"0\"/>\\n"
+                           + "    <timeout phase=\"idle\" count=\"0\"/>\\n"
+                           + "    <timeout phase=\"write\" count=\"0\"/>\\n  </timeouts>\\n</appInfo>\\n"));
       } finally {
          Serializer.enableXml(false);
       }
@@ -404,7 +457,8 @@ public final class FullResponderTest {
       assertEquals(StandardCharsets.UTF_8, result.getContentBody().getEncoding());
       String content = readAll(result.getContentBody());
       assertTrue(content.matches(
-               "\\{\"app\":\"fullResponderTest\",\"status\":\"OK\",\"services\":\\{\"db\":\"OK\"},\"uptime\":\\d+,\"memory\":\\d+}"));
+               "\\{\"app\":\"fullResponderTest\",\"status\":\"OK\",\"services\":\\{\"db\":\"OK\"},\"uptime\":\\d+,\"memory\":\\d+,"
+               + "\"timeouts\":\\{\"header\":0,\"body\":0,\"idle\":0,\"write\":0}}"));
    }
 
    @Test
@@ -418,7 +472,8 @@ public final class FullResponderTest {
       assertEquals(StandardCharsets.UTF_8, result.getContentBody().getEncoding());
       String content = readAll(result.getContentBody());
       assertTrue(content.matches(
-               "\\{\"app\":\"fullResponderTest\",\"status\":\"PARTIAL\",\"services\":\\{\"db\":\"FAILED\"},\"uptime\":\\d+,\"memory\":\\d+}"));
+               "\\{\"app\":\"fullResponderTest\",\"status\":\"PARTIAL\",\"services\":\\{\"db\":\"FAILED\"},\"uptime\":\\d+,\"memory\":\\d+,"
+               + "\"timeouts\":\\{\"header\":0,\"body\":0,\"idle\":0,\"write\":0}}"));
    }
 
    @Test
@@ -458,15 +513,49 @@ public final class FullResponderTest {
       return result;
    }
 
+   private HttpResponse resume(HttpResponse result) throws InterruptedException {
+      return resume(result, 5000);
+   }
+
+   private HttpResponse resume(HttpResponse result, long defaultTimeout)
+      throws InterruptedException {
+      assertTrue(result instanceof SuspendedResponse);
+      SuspendedResponse suspended = (SuspendedResponse) result;
+      CountDownLatch resumed = new CountDownLatch(1);
+      ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+      try {
+         suspended.resume(timer, defaultTimeout, resumed::countDown);
+         assertTrue(resumed.await(2, TimeUnit.SECONDS));
+      } finally {
+         timer.shutdownNow();
+      }
+      return (HttpResponse) suspended.getResult();
+   }
+
    private HttpResponse performFile(String resource) throws IOException {
       try (InputStream res = FullResponderTest.class.getResourceAsStream(resource)) {
-         request = new HttpRequestImpl(res, 1);
+         request = new HttpRequestImpl(res);
          services.putSupplier(HttpRequest.class, () -> request);
          route = routes.matches(request);
          return (HttpResponse) app.getFirstResponder().invoke();
       }
    }
 
+   public static class PassThroughResponder {
+
+      private final NextResponder next;
+
+      public PassThroughResponder(NextResponder next) {
+         this.next = next;
+      }
+
+      public Object invoke() {
+         Object result = next.invoke();
+         assertFalse(result instanceof SuspendedResponse);
+         return result;
+      }
+   }
+
    public static class TestObject {
 
       public int id;
@@ -511,6 +600,22 @@ public final class FullResponderTest {
          return new TestObject(12, "Test");
       }
 
+      public CompletionStage<TestObject> later() {
+         return CompletableFuture.supplyAsync(() -> new TestObject(12, "Test"));
+      }
+
+      public CompletionStage<String> never() {
+         return new CompletableFuture<>();
+      }
+
+      public Future<String> failed() {
+         FutureTask<String> result = new FutureTask<>(() -> {
+            throw new IllegalStateException("Test");
+         });
+         new Thread(result).start();
+         return result;
+      }
+
       @Post
       public int object(TestObject value) {
          return value.id;
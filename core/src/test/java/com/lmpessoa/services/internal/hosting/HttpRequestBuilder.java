@@ -112,6 +112,6 @@ public final class HttpRequestBuilder {
    }
 
    public HttpRequest build() throws IOException {
-      return new HttpRequestImpl(buildAsStream(), 1);
+      return new HttpRequestImpl(buildAsStream());
    }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static com.lmpessoa.services.routing.HttpMethod.GET;
+import static com.lmpessoa.services.routing.HttpMethod.POST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.lmpessoa.services.BadRequestException;
+import com.lmpessoa.services.NotImplementedException;
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpRequest;
+
+public final class HttpRequestParserTest {
+
+   @Rule
+   public ExpectedException thrown = ExpectedException.none();
+
+   private HttpRequestParser parser;
+
+   @Before
+   public void setup() {
+      parser = new HttpRequestParser(256, 16);
+   }
+
+   @Test
+   public void testRequestParsedAtOnce() throws IOException {
+      ByteBuffer data = bufferOf("GET /test?id=7 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertTrue(parser.parse(data));
+      assertFalse(data.hasRemaining());
+      HttpRequest request = getRequest();
+      assertEquals(GET, request.getMethod());
+      assertEquals("/test", request.getPath());
+      assertEquals("id=7", request.getQueryString());
+      assertEquals("HTTP/1.1", request.getProtocol());
+      assertEquals("localhost", request.getHeaders().get(Headers.HOST));
+   }
+
+   @Test
+   public void testRequestParsedByteByByte() throws IOException {
+      byte[] data = ("POST /test HTTP/1.1\r\nhost: localhost\r\ncontent-type: text/plain\r\n"
+               + "Content-Length: 4\r\n\r\nTest").getBytes(StandardCharsets.UTF_8);
+      int i = 0;
+      while (!parser.parse(ByteBuffer.wrap(data, i, 1))) {
+         i += 1;
+      }
+      assertEquals(data.length - 5, i);
+      HttpRequest request = parser.getRequest(new ByteArrayInputStream(data, i + 1, 4));
+      assertEquals(POST, request.getMethod());
+      assertEquals("localhost", request.getHeaders().get(Headers.HOST));
+      assertEquals("text/plain", request.getContentType());
+      assertEquals(4, request.getContentBody().available());
+   }
+
+   @Test
+   public void testPipelinedRequests() throws IOException {
+      ByteBuffer data = bufferOf("GET /first HTTP/1.1\r\n\r\nGET /second HTTP/1.1\r\n\r\n");
+      assertTrue(parser.parse(data));
+      assertEquals("/first", getRequest().getPath());
+      assertTrue(data.hasRemaining());
+      parser.reset();
+      assertTrue(parser.parse(data));
+      assertEquals("/second", getRequest().getPath());
+      assertFalse(data.hasRemaining());
+   }
+
+   @Test
+   public void testRequestWithoutEmptyLine() throws IOException {
+      assertFalse(parser.parse(bufferOf("GET /test HTTP/1.1\r\nHost: localhost\r\n")));
+      assertTrue(parser.endOfInput());
+      assertEquals("localhost", getRequest().getHeaders().get(Headers.HOST));
+   }
+
+   @Test
+   public void testIncompleteRequest() throws IOException {
+      parser.parse(bufferOf("GET /test HTTP/1.1\r\nHost: loc"));
+      thrown.expect(EOFException.class);
+      parser.endOfInput();
+   }
+
+   @Test
+   public void testHeaderTooLarge() throws IOException {
+      StringBuilder request = new StringBuilder("GET /test HTTP/1.1\r\nX-Filler: ");
+      while (request.length() < 300) {
+         request.append("filler");
+      }
+      request.append("\r\n\r\n");
+      assertTrue(parser.parse(bufferOf(request.toString())));
+      thrown.expect(RequestHeaderTooLargeException.class);
+      getRequest();
+   }
+
+   @Test
+   public void testIllegalHeaderLine() throws IOException {
+      assertTrue(parser.parse(bufferOf("GET /test HTTP/1.1\r\nIllegal header\r\n\r\n")));
+      thrown.expect(BadRequestException.class);
+      getRequest();
+   }
+
+   @Test
+   public void testIllegalRequestLine() throws IOException {
+      assertTrue(parser.parse(bufferOf("GET\r\n\r\n")));
+      thrown.expect(BadRequestException.class);
+      getRequest();
+   }
+
+   @Test
+   public void testAbsoluteTargetWithoutPath() throws IOException {
+      assertTrue(parser.parse(bufferOf("GET http://localhost:8080 HTTP/1.1\r\n\r\n")));
+      HttpRequest request = getRequest();
+      assertEquals("/", request.getPath());
+      assertEquals("http://localhost:8080", request.getHeaders().get(Headers.HOST));
+   }
+
+   @Test
+   public void testChunkedContentBody() throws IOException {
+      assertTrue(parser.parse(bufferOf("POST /test HTTP/1.1\r\nTransfer-Encoding: chunked\r\n"
+               + "Content-Type: text/plain\r\n\r\n")));
+      assertEquals(-1, parser.getContentLength());
+      InputStream content = new ByteArrayInputStream(("4;name=value\r\nWiki\r\n"
+               + "12\r\npedia in\r\n\r\nchunks\r\n0\r\nExpires: never\r\n\r\n"
+               + "GET /next HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+      HttpRequest request = parser.getRequest(content);
+      assertEquals("Wikipedia in\r\n\r\nchunks", readAll(request.getContentBody()));
+      assertEquals("GET /next HTTP/1.1\r\n\r\n", readAll(content));
+   }
+
+   @Test
+   public void testMalformedChunkRejected() throws IOException {
+      assertTrue(parser.parse(bufferOf("POST /test HTTP/1.1\r\nTransfer-Encoding: chunked\r\n"
+               + "Content-Type: text/plain\r\n\r\n")));
+      HttpRequest request = parser.getRequest(new ByteArrayInputStream(
+               "4\r\nTest\r\nnot a size\r\n\r\n".getBytes(StandardCharsets.UTF_8)));
+      thrown.expect(BadRequestException.class);
+      readAll(request.getContentBody());
+   }
+
+   @Test
+   public void testUnsupportedTransferEncodingRejected() throws IOException {
+      assertTrue(parser.parse(bufferOf("POST /test HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n"
+               + "\r\n")));
+      thrown.expect(NotImplementedException.class);
+      getRequest();
+   }
+
+   @Test
+   public void testTransferEncodingWithContentLengthRejected() throws IOException {
+      assertTrue(parser.parse(bufferOf("POST /test HTTP/1.1\r\nTransfer-Encoding: chunked\r\n"
+               + "Content-Length: 4\r\n\r\n4\r\nTest\r\n0\r\n\r\n")));
+      thrown.expect(BadRequestException.class);
+      getRequest();
+   }
+
+   @Test
+   public void testRepeatedContentLength() throws IOException {
+      assertTrue(parser.parse(bufferOf(
+               "POST /test HTTP/1.1\r\nContent-Length: 4\r\nContent-Length: 40\r\n\r\n")));
+      thrown.expect(BadRequestException.class);
+      getRequest();
+   }
+
+   private HttpRequest getRequest() {
+      return parser.getRequest(new ByteArrayInputStream(new byte[0]));
+   }
+
+   private static String readAll(InputStream input) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[5];
+      int read;
+      while ((read = input.read(buffer)) >= 0) {
+         result.write(buffer, 0, read);
+      }
+      return new String(result.toByteArray(), StandardCharsets.UTF_8);
+   }
+
+   private static ByteBuffer bufferOf(String data) {
+      return ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+   }
+}
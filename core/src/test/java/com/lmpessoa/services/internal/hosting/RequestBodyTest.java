@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public final class RequestBodyTest {
+
+   private static final byte[] CONTENT = "Test content body".getBytes(StandardCharsets.UTF_8);
+
+   @Test
+   public void testSmallBodyReadMoreThanOnce() throws IOException {
+      RequestBody body = new RequestBody(sourceWithNext(), CONTENT.length, 1024);
+      assertArrayEquals(CONTENT, readAll(body.open()));
+      assertArrayEquals(CONTENT, readAll(body.open()));
+   }
+
+   @Test
+   public void testLargeBodyStreamed() throws IOException {
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      InputStream stream = body.open();
+      assertSame(stream, body.open());
+      assertArrayEquals(CONTENT, readAll(stream));
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testLargeBodySpilledOnDetach() throws IOException {
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      InputStream stream = body.open();
+      byte[] start = new byte[5];
+      assertEquals(5, stream.read(start));
+      body.detach(true);
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+      assertEquals("content body", new String(readAll(stream), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testUnreadBodyDiscardedOnDetach() throws IOException {
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      body.detach(true);
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testClosedBodyDiscardedOnDetach() throws IOException {
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      InputStream stream = body.open();
+      assertEquals(5, stream.read(new byte[5]));
+      stream.close();
+      body.detach(true);
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+   }
+
+   @Test(expected = IOException.class)
+   public void testSpilledBodyClosedWhenRequestIsOver() throws IOException {
+      RequestBody body = new RequestBody(sourceWithNext(), CONTENT.length, 4);
+      InputStream stream = body.open();
+      assertEquals(5, stream.read(new byte[5]));
+      body.detach(true);
+      body.requestOver();
+      stream.read();
+   }
+
+   @Test
+   public void testRetainedBodyReadAfterRequestIsOver() throws IOException {
+      RequestBody body = new RequestBody(sourceWithNext(), CONTENT.length, 4);
+      InputStream stream = body.open();
+      assertEquals(5, stream.read(new byte[5]));
+      body.retain();
+      body.detach(false);
+      body.requestOver();
+      assertEquals("content body", new String(readAll(stream), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testRetainedUnreadBodyKeptOnDetach() throws IOException {
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      body.retain();
+      body.detach(false);
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+      assertArrayEquals(CONTENT, readAll(body.open()));
+   }
+
+   @Test
+   public void testNoSpillForSynchronousResponse() throws IOException {
+      int spilled = countSpillFiles();
+      InputStream source = sourceWithNext();
+      RequestBody body = new RequestBody(source, CONTENT.length, 4);
+      InputStream stream = body.open();
+      assertEquals(5, stream.read(new byte[5]));
+      body.detach(false);
+      assertEquals(spilled, countSpillFiles());
+      assertEquals("NEXT", new String(readAll(source), StandardCharsets.UTF_8));
+      assertEquals(-1, stream.read());
+   }
+
+   private static int countSpillFiles() {
+      File directory = new File(System.getProperty("java.io.tmpdir"));
+      String[] files = directory.list((dir, name) -> name.startsWith("request")
+               && name.endsWith(".body"));
+      return files != null ? files.length : 0;
+   }
+
+   private static InputStream sourceWithNext() {
+      byte[] data = new byte[CONTENT.length + 4];
+      System.arraycopy(CONTENT, 0, data, 0, CONTENT.length);
+      System.arraycopy("NEXT".getBytes(StandardCharsets.UTF_8), 0, data, CONTENT.length, 4);
+      return new ByteArrayInputStream(data);
+   }
+
+   private static byte[] readAll(InputStream input) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[3];
+      int len;
+      while ((len = input.read(buffer)) != -1) {
+         result.write(buffer, 0, len);
+      }
+      return result.toByteArray();
+   }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public final class RequestDeadlineTest {
+
+   private final TimerWheel timer = new TimerWheel("deadline-test", 10, TimeUnit.MILLISECONDS, 64);
+
+   @After
+   public void teardown() throws InterruptedException {
+      timer.stop();
+   }
+
+   @Test
+   public void testUnlimitedDeadline() {
+      RequestDeadline deadline = new RequestDeadline(0, () -> timer);
+      assertFalse(deadline.isLimited());
+      assertFalse(deadline.isExpired());
+      assertEquals(Long.MAX_VALUE, deadline.getRemainingTime());
+   }
+
+   @Test
+   public void testLimitedDeadline() {
+      RequestDeadline deadline = new RequestDeadline(10, () -> timer);
+      assertTrue(deadline.isLimited());
+      assertFalse(deadline.isExpired());
+      assertTrue(deadline.getRemainingTime() > 9000);
+      assertTrue(deadline.getRemainingTime() <= 10000);
+   }
+
+   @Test
+   public void testCurrentDeadline() {
+      RequestDeadline deadline = new RequestDeadline(10, () -> timer);
+      deadline.arm();
+      try {
+         assertSame(deadline, RequestDeadline.current());
+      } finally {
+         deadline.disarm();
+      }
+      assertNull(RequestDeadline.current());
+   }
+
+   @Test
+   public void testExpiredDeadlineInterrupts() {
+      RequestDeadline deadline = new RequestDeadline(1, () -> timer);
+      deadline.arm();
+      try {
+         Thread.sleep(5000);
+         fail();
+      } catch (InterruptedException e) {
+         assertTrue(deadline.isExpired());
+      } finally {
+         deadline.disarm();
+      }
+      assertFalse(Thread.currentThread().isInterrupted());
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lmpessoa.services.ContentType;
+import com.lmpessoa.services.HttpInputStream;
+
+public final class ResponseCompressorTest {
+
+   private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+   private final ResponseCompressor compressor = new ResponseCompressor(16);
+   private File file;
+
+   @Before
+   public void setup() throws IOException {
+      file = File.createTempFile("test", ".txt");
+      Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+   }
+
+   @After
+   public void cleanup() {
+      file.delete();
+   }
+
+   @Test
+   public void testSelectEncoding() {
+      assertNull(ResponseCompressor.selectEncoding(null));
+      assertEquals("gzip", ResponseCompressor.selectEncoding(new String[] { "gzip, deflate" }));
+      assertEquals("deflate",
+               ResponseCompressor.selectEncoding(new String[] { "gzip;q=0.5, deflate" }));
+      assertEquals("gzip", ResponseCompressor.selectEncoding(new String[] { "*" }));
+      assertNull(ResponseCompressor.selectEncoding(new String[] { "br" }));
+      assertNull(ResponseCompressor.selectEncoding(new String[] { "gzip;q=0, *;q=0" }));
+   }
+
+   @Test
+   public void testCompressibleContent() {
+      byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+      assertTrue(compressor.isCompressible(new HttpInputStream(content, ContentType.JSON)));
+      assertFalse(compressor.isCompressible(new HttpInputStream(content, ContentType.BINARY)));
+      byte[] small = "Test".getBytes(StandardCharsets.UTF_8);
+      assertFalse(compressor.isCompressible(new HttpInputStream(small, ContentType.TEXT)));
+   }
+
+   @Test
+   public void testCompressBytes() throws IOException {
+      byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+      try (HttpInputStream result = compressor
+               .compress(new HttpInputStream(content, ContentType.TEXT), "deflate")) {
+         assertEquals(ContentType.TEXT, result.getType());
+         assertTrue(result.getContentLength() > 0);
+         assertArrayEquals(content, readAll(new InflaterInputStream(result)));
+      }
+   }
+
+   @Test
+   public void testCompressLargeBytesWhileSent() throws IOException {
+      StringBuilder text = new StringBuilder();
+      while (text.length() <= 65536) {
+         text.append(CONTENT).append('\n');
+      }
+      byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+      try (HttpInputStream result = compressor
+               .compress(new HttpInputStream(content, ContentType.TEXT), "gzip")) {
+         assertEquals(-1, result.getContentLength());
+         assertArrayEquals(content, readAll(new GZIPInputStream(result)));
+      }
+   }
+
+   @Test
+   public void testCompressFileOnce() throws IOException {
+      byte[] first;
+      try (HttpInputStream result = compressor.compress(new HttpInputStream(file), "gzip")) {
+         assertTrue(result.getContentLength() > 0);
+         first = readAll(result);
+      }
+      byte[] second;
+      try (HttpInputStream result = compressor.compress(new HttpInputStream(file), "gzip")) {
+         second = readAll(result);
+      }
+      assertArrayEquals(first, second);
+      InputStream decompressed = new GZIPInputStream(new ByteArrayInputStream(first));
+      assertEquals(CONTENT, new String(readAll(decompressed), StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testCompressFileOnceForConcurrentRequests()
+      throws InterruptedException, ExecutionException {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<File>> results = new ArrayList<>();
+         for (int i = 0; i < 4; ++i) {
+            results.add(executor.submit(() -> {
+               try (HttpInputStream result = compressor.compress(new HttpInputStream(file),
+                        "gzip")) {
+                  // Compressed files are sent just like the original file
+                  assertNotNull(result.getChannel());
+                  return result.getFile();
+               }
+            }));
+         }
+         File variant = results.get(0).get();
+         assertNotNull(variant);
+         for (Future<File> result : results) {
+            assertEquals(variant, result.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testCompressChangedFile() throws IOException {
+      try (HttpInputStream result = compressor.compress(new HttpInputStream(file), "gzip")) {
+         readAll(result);
+      }
+      String changed = CONTENT + " again";
+      Files.write(file.toPath(), changed.getBytes(StandardCharsets.UTF_8));
+      try (HttpInputStream result = compressor.compress(new HttpInputStream(file), "gzip")) {
+         assertEquals(changed,
+                  new String(readAll(new GZIPInputStream(result)), StandardCharsets.UTF_8));
+      }
+   }
+
+   private static byte[] readAll(InputStream input) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[256];
+      int len;
+      while ((len = input.read(buffer)) != -1) {
+         result.write(buffer, 0, len);
+      }
+      return result.toByteArray();
+   }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpResponse;
+
+public final class ResponseHeadEncoderTest {
+
+   private final ResponseHeadEncoder encoder = new ResponseHeadEncoder();
+
+   @Test
+   public void testKnownStatus() {
+      encoder.status((HttpResponse) () -> 404);
+      encoder.end();
+      assertEquals("HTTP/1.1 404 Not Found\r\n\r\n", getResult());
+   }
+
+   @Test
+   public void testCustomStatusLabel() {
+      encoder.status(new HttpResponse() {
+
+         @Override
+         public int getStatusCode() {
+            return 200;
+         }
+
+         @Override
+         public String getStatusLabel() {
+            return "Fine";
+         }
+      });
+      assertEquals("HTTP/1.1 200 Fine\r\n", getResult());
+   }
+
+   @Test
+   public void testHeaders() {
+      encoder.header(Headers.CONTENT_LENGTH, 1234567890L);
+      encoder.header("x-custom", "value");
+      encoder.name(Headers.CONTENT_TYPE);
+      encoder.value("text/plain");
+      encoder.value("; charset=\"utf-8\"");
+      encoder.endHeader();
+      assertEquals("Content-Length: 1234567890\r\nx-custom: value\r\n"
+               + "Content-Type: text/plain; charset=\"utf-8\"\r\n", getResult());
+   }
+
+   @Test
+   public void testNonAsciiValue() {
+      encoder.header("X-Name", "Jo\u00e3o");
+      assertEquals("X-Name: Jo\u00e3o\r\n", getResult());
+   }
+
+   @Test
+   public void testReset() {
+      encoder.header(Headers.CONNECTION, "close");
+      encoder.reset();
+      encoder.header(Headers.CONTENT_LENGTH, 0);
+      assertEquals("Content-Length: 0\r\n", getResult());
+   }
+
+   private String getResult() {
+      return new String(encoder.toByteArray(), StandardCharsets.UTF_8);
+   }
+}
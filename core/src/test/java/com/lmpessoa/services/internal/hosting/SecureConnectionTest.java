@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lmpessoa.services.internal.concurrent.ExecutionService;
+import com.lmpessoa.services.internal.logging.Logger;
+import com.lmpessoa.services.internal.routing.RouteTable;
+import com.lmpessoa.services.logging.NullHandler;
+import com.lmpessoa.services.routing.IRouteTable;
+
+public final class SecureConnectionTest {
+
+   private static final int PORT = 5619;
+
+   private Logger log = new Logger(new NullHandler());
+   private ApplicationContext context;
+   private ConnectionReaper reaper;
+   private SSLContext client;
+   private Thread thread;
+
+   @Before
+   public void setup() throws IOException, URISyntaxException, GeneralSecurityException {
+      ApplicationSettings settings = mock(ApplicationSettings.class);
+      when(settings.getStartupClass()).then(n -> SecureConnectionTest.class);
+      when(settings.getEnvironment()).thenReturn(() -> "Development");
+      when(settings.getLogger()).thenReturn(log);
+      when(settings.getJobExecutor()).thenReturn(new ExecutionService(0, log));
+      when(settings.getMainExecutor()).thenReturn(new ExecutionService(0, log));
+      when(settings.getReservedExecutor()).thenReturn(new ExecutionService(0, log));
+      when(settings.getValidationService()).thenCallRealMethod();
+      when(settings.getBindAddresses())
+               .thenReturn(new InetAddress[] { InetAddress.getLoopbackAddress() });
+      when(settings.getAcceptQueueSize()).thenReturn(50);
+      when(settings.getAcceptorCount()).thenReturn(1);
+      when(settings.getIoThreadCount()).thenReturn(2);
+      when(settings.getRequestTimeout()).thenReturn(1);
+      when(settings.getKeepAliveTimeout()).thenReturn(1);
+      when(settings.getMaxKeepAliveRequests()).thenReturn(3);
+      when(settings.getMaxHeaderSize()).thenReturn(8192);
+      when(settings.getShutdownGracePeriod()).thenReturn(2);
+      when(settings.getContentMemoryLimit()).thenReturn(65536);
+      when(settings.getCompressor()).thenReturn(new ResponseCompressor(1024));
+      when(settings.getBufferPool()).thenReturn(new BufferPool(16));
+      reaper = new ConnectionReaper(1, 1, 1, 1);
+      when(settings.getConnectionReaper()).thenReturn(reaper);
+      File keyStore = new File(SecureConnectionTest.class.getResource("/tls/keystore.p12").toURI());
+      TlsContext tls = new TlsContext(
+               TlsContext.createContext(keyStore, null, "changeit".toCharArray(), null),
+               new String[] { "TLSv1.3", "TLSv1.2" }, null);
+      tls.setSessionCache(100, 3600);
+      when(settings.getTlsContext()).thenReturn(tls);
+      ApplicationServerImpl server = new ApplicationServerImpl(settings);
+      RouteTable routes = server.getOptions().getRoutes();
+      routes.put("", ApplicationResponseTest.TestResource.class);
+      server.getOptions().getServices().putRequestValue(IRouteTable.class, routes);
+      context = new ApplicationContext(server, PORT, "https", routes);
+      thread = new Thread(context);
+      thread.start();
+      client = SSLContext.getInstance("TLS");
+      client.init(null, new TrustManager[] { new TrustAllManager() }, null);
+      waitForContext();
+   }
+
+   @After
+   public void teardown() throws InterruptedException {
+      context.stop();
+      thread.join(1000);
+      reaper.stop();
+   }
+
+   @Test
+   public void testSecureRequest() throws IOException {
+      try (SSLSocket socket = connect("TLSv1.3", "TLSv1.2")) {
+         String[] result = send(socket,
+                  "GET /test HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+         assertEquals("HTTP/1.1 200 OK", result[0]);
+         assertEquals("Test", result[result.length - 1]);
+      }
+   }
+
+   @Test
+   public void testSecurePipelinedRequests() throws IOException {
+      try (SSLSocket socket = connect("TLSv1.3", "TLSv1.2")) {
+         String[] result = send(socket, "GET /test HTTP/1.1\r\n\r\nGET /test HTTP/1.1\r\n\r\n",
+                  "GET /test/empty HTTP/1.1\r\nConnection: close\r\n\r\n");
+         long count = Arrays.stream(result).filter(s -> s.contains("HTTP/1.1 200 OK")).count();
+         assertEquals(2, count);
+         assertTrue(result[result.length - 1].startsWith("Connection: close"));
+      }
+   }
+
+   @Test
+   public void testSessionIsResumed() throws IOException {
+      byte[] sessionId;
+      try (SSLSocket socket = connect("TLSv1.2")) {
+         send(socket, "GET /test/empty HTTP/1.1\r\nConnection: close\r\n\r\n");
+         sessionId = socket.getSession().getId();
+      }
+      try (SSLSocket socket = connect("TLSv1.2")) {
+         String[] result = send(socket, "GET /test HTTP/1.1\r\nConnection: close\r\n\r\n");
+         assertEquals("HTTP/1.1 200 OK", result[0]);
+         assertArrayEquals(sessionId, socket.getSession().getId());
+      }
+   }
+
+   @Test
+   public void testApplicationProtocolIsNegotiated()
+      throws IOException, ReflectiveOperationException {
+      Assume.assumeTrue(TlsContext.isAlpnSupported());
+      try (SSLSocket socket = connect("TLSv1.3", "TLSv1.2")) {
+         SSLParameters params = socket.getSSLParameters();
+         SSLParameters.class.getMethod("setApplicationProtocols", String[].class).invoke(params,
+                  (Object) new String[] { "h2", "http/1.1" });
+         socket.setSSLParameters(params);
+         String[] result = send(socket, "GET /test HTTP/1.1\r\nConnection: close\r\n\r\n");
+         assertEquals("HTTP/1.1 200 OK", result[0]);
+         assertEquals("http/1.1",
+                  SSLSocket.class.getMethod("getApplicationProtocol").invoke(socket));
+      }
+   }
+
+   private SSLSocket connect(String... protocols) throws IOException {
+      SSLSocket socket = (SSLSocket) client.getSocketFactory()
+               .createSocket(InetAddress.getLoopbackAddress(), PORT);
+      socket.setEnabledProtocols(protocols);
+      return socket;
+   }
+
+   private String[] send(Socket socket, String... parts) throws IOException {
+      OutputStream output = socket.getOutputStream();
+      for (String part : parts) {
+         output.write(part.getBytes(StandardCharsets.UTF_8));
+         output.flush();
+         sleep(50);
+      }
+      InputStream input = socket.getInputStream();
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int len;
+      while ((len = input.read(buffer)) != -1) {
+         result.write(buffer, 0, len);
+      }
+      return new String(result.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+   }
+
+   private void waitForContext() {
+      for (int i = 0; i < 50; ++i) {
+         try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), PORT)) {
+            assertTrue(socket.isConnected());
+            return;
+         } catch (IOException e) {
+            sleep(20);
+         }
+      }
+   }
+
+   private static void sleep(long millis) {
+      try {
+         Thread.sleep(millis);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private static class TrustAllManager implements X509TrustManager {
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+         // Test only connects to the server
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+         // Test server uses a self-signed certificate
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+         return new X509Certificate[0];
+      }
+   }
+}
@@ -25,6 +25,7 @@ package com.lmpessoa.services.internal.hosting;
 import static com.lmpessoa.services.routing.HttpMethod.GET;
 import static com.lmpessoa.services.routing.HttpMethod.POST;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -80,6 +81,8 @@ public class StaticResponderTest {
       assertTrue(result instanceof HttpInputStream);
       try (HttpInputStream stream = (HttpInputStream) result) {
          assertEquals(ContentType.PNG, stream.getType());
+         assertNotNull(stream.getChannel());
+         assertEquals(82, stream.getContentLength());
       }
    }
 
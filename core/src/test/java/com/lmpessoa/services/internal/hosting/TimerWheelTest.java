@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.hosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public final class TimerWheelTest {
+
+   private final TimerWheel wheel = new TimerWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 8);
+
+   @After
+   public void teardown() throws InterruptedException {
+      wheel.stop();
+   }
+
+   @Test
+   public void testTaskRunsAfterDelay() throws InterruptedException {
+      CountDownLatch latch = new CountDownLatch(1);
+      long start = System.nanoTime();
+      TimerWheel.Timeout timeout = wheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+      assertTrue(timeout.isExpired());
+      assertFalse(timeout.cancel());
+   }
+
+   @Test
+   public void testTaskRunsAfterMoreThanOneRound() throws InterruptedException {
+      // The wheel of this test completes a round every 80ms
+      CountDownLatch latch = new CountDownLatch(1);
+      long start = System.nanoTime();
+      wheel.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+   }
+
+   @Test
+   public void testCancelledTaskDoesNotRun() throws InterruptedException {
+      AtomicInteger count = new AtomicInteger();
+      TimerWheel.Timeout timeout = wheel.schedule(count::incrementAndGet, 50,
+               TimeUnit.MILLISECONDS);
+      assertTrue(timeout.cancel());
+      assertTrue(timeout.isCancelled());
+      Thread.sleep(150);
+      assertEquals(0, count.get());
+      assertFalse(timeout.isExpired());
+   }
+
+   @Test
+   public void testTaskScheduledAfterStopNeverRuns() throws InterruptedException {
+      wheel.stop();
+      AtomicInteger count = new AtomicInteger();
+      TimerWheel.Timeout timeout = wheel.schedule(count::incrementAndGet, 0,
+               TimeUnit.MILLISECONDS);
+      Thread.sleep(50);
+      assertEquals(0, count.get());
+      assertFalse(timeout.isExpired());
+   }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018 Leonardo Pessoa
+ * https://github.com/lmpessoa/java-services
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lmpessoa.services.internal.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lmpessoa.services.hosting.Headers;
+import com.lmpessoa.services.hosting.HttpRequest;
+import com.lmpessoa.services.internal.ValuesMapBuilder;
+import com.lmpessoa.services.routing.HttpMethod;
+
+public final class AccessLogTest {
+
+   private static final String TIME = "05/Jun/2018:12:30:00 -0300";
+
+   private AccessLogEntry entry;
+
+   @Before
+   public void setup() {
+      HttpRequest request = mock(HttpRequest.class);
+      when(request.getMethod()).thenReturn(HttpMethod.GET);
+      when(request.getPath()).thenReturn("/index.html");
+      when(request.getQueryString()).thenReturn("q=\"a\"");
+      when(request.getProtocol()).thenReturn("HTTP/1.1");
+      when(request.getHeaders()).thenReturn(new ValuesMapBuilder() //
+               .add(Headers.USER_AGENT, "curl/7.58")
+               .build());
+      entry = new AccessLogEntry(0, InetAddress.getLoopbackAddress(), request, 200, 2326,
+               TimeUnit.MICROSECONDS.toNanos(1250), TimeUnit.MICROSECONDS.toNanos(1830));
+   }
+
+   @Test
+   public void testCommonFormat() {
+      StringBuilder line = new StringBuilder();
+      AccessLogFormat.COMMON.append(line, entry, TIME);
+      assertEquals("127.0.0.1 - - [05/Jun/2018:12:30:00 -0300] "
+               + "\"GET /index.html?q=\\\"a\\\" HTTP/1.1\" 200 2326", line.toString());
+   }
+
+   @Test
+   public void testCombinedFormat() {
+      StringBuilder line = new StringBuilder();
+      AccessLogFormat.COMBINED.append(line, entry, TIME);
+      assertEquals("127.0.0.1 - - [05/Jun/2018:12:30:00 -0300] "
+               + "\"GET /index.html?q=\\\"a\\\" HTTP/1.1\" 200 2326 \"-\" \"curl/7.58\"",
+               line.toString());
+   }
+
+   @Test
+   public void testJsonFormat() {
+      StringBuilder line = new StringBuilder();
+      AccessLogFormat.JSON.append(line, entry, "2018-06-05T12:30:00-03:00");
+      assertEquals("{\"time\":\"2018-06-05T12:30:00-03:00\",\"remote\":\"127.0.0.1\","
+               + "\"method\":\"GET\",\"path\":\"/index.html\",\"query\":\"q=\\\"a\\\"\","
+               + "\"protocol\":\"HTTP/1.1\",\"status\":200,\"length\":2326,\"referer\":null,"
+               + "\"userAgent\":\"curl/7.58\",\"handlingMicros\":1250,\"totalMicros\":1830}",
+               line.toString());
+   }
+
+   @Test
+   public void testWriteToFile() throws IOException, InterruptedException {
+      File file = File.createTempFile("access", ".log");
+      file.deleteOnExit();
+      AccessLog log = new AccessLog(file, AccessLogFormat.COMMON, 16);
+      assertTrue(log.log(entry));
+      assertTrue(log.log(entry));
+      log.close();
+      assertFalse(log.log(entry));
+      assertEquals(1, log.getDroppedCount());
+
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      assertEquals(2, lines.size());
+      assertTrue(lines.get(0).startsWith("127.0.0.1 - - ["));
+      assertTrue(lines.get(0).endsWith("] \"GET /index.html?q=\\\"a\\\" HTTP/1.1\" 200 2326"));
+   }
+
+   @Test
+   public void testRingBuffer() {
+      RingBuffer<Integer> buffer = new RingBuffer<>(3);
+      assertEquals(4, buffer.capacity());
+      assertTrue(buffer.isEmpty());
+      for (int i = 0; i < 4; ++i) {
+         assertTrue(buffer.offer(i));
+      }
+      assertFalse(buffer.offer(4));
+      assertEquals(Integer.valueOf(0), buffer.poll());
+      assertTrue(buffer.offer(4));
+      for (int i = 1; i < 5; ++i) {
+         assertEquals(Integer.valueOf(i), buffer.poll());
+      }
+      assertNull(buffer.poll());
+      assertTrue(buffer.isEmpty());
+   }
+}